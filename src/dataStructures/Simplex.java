@@ -0,0 +1,87 @@
+package dataStructures;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * @class Simplex
+ * @brief Euclidean projections on the simplex {x >= 0, sum x = 1}
+ * @details The functions work in place on the block [begin, begin + length)
+ *          of an array so that a control made of several split ratio
+ *          vectors can be projected block by block.
+ */
+public class Simplex {
+
+  /**
+   * @brief Replaces the block by its Euclidean projection on the simplex
+   * @details The projection is max(v - tau, 0) where tau is found after
+   *          sorting the block in O(length * log(length))
+   */
+  static public void project(double[] v, int begin, int length) {
+    double[] sorted = Arrays.copyOfRange(v, begin, begin + length);
+    Arrays.sort(sorted);
+
+    /* tau is given by the largest values whose shifted value stay positive */
+    double sum = 0, tau = 0;
+    for (int j = length - 1; j >= 0; j--) {
+      sum += sorted[j];
+      tau = (sum - 1) / (length - j);
+      if (j == 0 || sorted[j - 1] <= tau)
+        break;
+    }
+
+    for (int i = begin; i < begin + length; i++)
+      v[i] = Math.max(v[i] - tau, 0);
+  }
+
+  /**
+   * @brief Projects a gradient at a point of the simplex
+   * @details -result is the Euclidean projection of -gradient on the cone of
+   *          the feasible directions at point: the directions d with sum d = 0
+   *          and d_i >= 0 when point_i = 0. The components of the free
+   *          coordinates are gradient_i - mu where mu is the average of the
+   *          gradient on the free coordinates. The coordinates at 0 whose
+   *          gradient is larger than mu are fixed to 0 in decreasing order of
+   *          their gradient.
+   *          Without active bound, it is the gradient minus its average.
+   * @param result
+   *          The array that will contain the projected gradient. It can be
+   *          gradient itself
+   */
+  static public void projectGradient(double[] result, double[] gradient,
+      double[] point, int begin, int length) {
+
+    /* Coordinates at 0, sorted by decreasing gradient */
+    Integer[] bounded = new Integer[length];
+    int nb_bounded = 0;
+    double sum = 0;
+    for (int i = begin; i < begin + length; i++) {
+      sum += gradient[i];
+      if (point[i] <= 0)
+        bounded[nb_bounded++] = i;
+    }
+    final double[] g = gradient;
+    Arrays.sort(bounded, 0, nb_bounded, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Double.compare(g[b], g[a]);
+      }
+    });
+
+    int nb_free = length;
+    int nb_fixed = 0;
+    double mu = sum / nb_free;
+    while (nb_fixed < nb_bounded && nb_free > 1
+        && gradient[bounded[nb_fixed]] > mu) {
+      sum -= gradient[bounded[nb_fixed]];
+      nb_free--;
+      nb_fixed++;
+      mu = sum / nb_free;
+    }
+
+    for (int i = begin; i < begin + length; i++)
+      result[i] = gradient[i] - mu;
+    for (int i = 0; i < nb_fixed; i++)
+      result[bounded[i]] = 0;
+  }
+}
@@ -0,0 +1,164 @@
+package dataStructures;
+
+import java.util.Arrays;
+
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_util;
+
+/**
+ * @class SparseMatrixBuilder
+ * @brief Assembles a compressed-column sparse matrix from a list of triplets
+ * @details The entries are given with set(i, j, value) between a call to
+ *          begin() and a call to build(). As with setQuick, the last value
+ *          set for an entry is kept. The triplets are compressed in bulk.
+ *          The structure of the last compressed matrix is kept: if the next
+ *          assembly sets exactly the same entries in the same order, only the
+ *          values are refilled. Otherwise the new structure is compressed and
+ *          replaces the old one.
+ */
+public class SparseMatrixBuilder {
+
+  private int rows;
+  private int columns;
+
+  /* Triplets of the current assembly */
+  private int size = 0;
+  private int[] row_indexes = new int[16];
+  private int[] column_indexes = new int[16];
+  private double[] values = new double[16];
+
+  /* Structure of the last compressed assembly */
+  private int pattern_size = -1;
+  private int[] pattern_rows;
+  private int[] pattern_columns;
+  /* positions[t] is the index in the compressed values of the t-th triplet */
+  private int[] positions;
+  private int[] column_pointers;
+  private int[] compressed_rows;
+  /* True while the current assembly follows the stored structure */
+  private boolean same_pattern = false;
+
+  private int nb_compressions = 0;
+
+  public SparseMatrixBuilder(int rows, int columns) {
+    this.rows = rows;
+    this.columns = columns;
+  }
+
+  /**
+   * @brief Starts a new assembly
+   */
+  public void begin() {
+    size = 0;
+    same_pattern = pattern_size >= 0;
+  }
+
+  /**
+   * @brief Sets the entry (i, j) to value
+   * @details An explicit zero is kept in the structure
+   */
+  public void set(int i, int j, double value) {
+    assert i >= 0 && i < rows && j >= 0 && j < columns : "Entry (" + i
+        + ", " + j + ") out of a " + rows + "x" + columns + " matrix";
+
+    if (same_pattern
+        && (size >= pattern_size || pattern_rows[size] != i
+        || pattern_columns[size] != j))
+      same_pattern = false;
+
+    if (size == values.length) {
+      int capacity = 2 * size;
+      row_indexes = Arrays.copyOf(row_indexes, capacity);
+      column_indexes = Arrays.copyOf(column_indexes, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    row_indexes[size] = i;
+    column_indexes[size] = j;
+    values[size] = value;
+    size++;
+  }
+
+  /**
+   * @return The matrix containing the entries set since the last begin()
+   */
+  public SparseCCDoubleMatrix2D build() {
+    if (!same_pattern || size != pattern_size)
+      compress();
+
+    int nnz = column_pointers[columns];
+    double[] compressed_values = new double[nnz];
+    /* The triplets are in the order of the calls, so the last one wins */
+    for (int t = 0; t < size; t++)
+      compressed_values[positions[t]] = values[t];
+
+    Dcs dcs = Dcs_util.cs_spalloc(rows, columns, Math.max(nnz, 1), true,
+        false);
+    dcs.p = Arrays.copyOf(column_pointers, columns + 1);
+    dcs.i = Arrays.copyOf(compressed_rows, Math.max(nnz, 1));
+    dcs.x = Arrays.copyOf(compressed_values, Math.max(nnz, 1));
+    return new SparseCCDoubleMatrix2D(dcs);
+  }
+
+  /*
+   * Computes the structure of the current triplets: the entries are sorted
+   * by column, then by row, and the duplicates share the same position
+   */
+  private void compress() {
+    nb_compressions++;
+
+    /* Counting sort of the triplets by column */
+    int[] column_start = new int[columns + 1];
+    for (int t = 0; t < size; t++)
+      column_start[column_indexes[t] + 1]++;
+    for (int j = 0; j < columns; j++)
+      column_start[j + 1] += column_start[j];
+
+    /* Inside a column, the triplets are sorted by row then by order */
+    long[] keys = new long[size];
+    int[] next = Arrays.copyOf(column_start, columns);
+    for (int t = 0; t < size; t++)
+      keys[next[column_indexes[t]]++] = (long) row_indexes[t] * size + t;
+
+    positions = new int[size];
+    column_pointers = new int[columns + 1];
+    compressed_rows = new int[size];
+    int nnz = 0;
+    for (int j = 0; j < columns; j++) {
+      column_pointers[j] = nnz;
+      Arrays.sort(keys, column_start[j], column_start[j + 1]);
+      int previous_row = -1;
+      for (int index = column_start[j]; index < column_start[j + 1]; index++) {
+        int row = (int) (keys[index] / size);
+        int t = (int) (keys[index] % size);
+        if (row != previous_row) {
+          compressed_rows[nnz] = row;
+          nnz++;
+          previous_row = row;
+        }
+        positions[t] = nnz - 1;
+      }
+    }
+    column_pointers[columns] = nnz;
+
+    pattern_size = size;
+    pattern_rows = Arrays.copyOf(row_indexes, size);
+    pattern_columns = Arrays.copyOf(column_indexes, size);
+    same_pattern = true;
+  }
+
+  /**
+   * @return The number of times the structure has been computed
+   */
+  public int getNb_compressions() {
+    return nb_compressions;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+}
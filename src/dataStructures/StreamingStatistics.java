@@ -0,0 +1,184 @@
+package dataStructures;
+
+import java.util.Arrays;
+
+/**
+ * @class StreamingStatistics
+ * @brief Mean, variance, extrema and quantiles of a stream of values in
+ *        constant memory
+ * @details The mean and the variance are updated with Welford's algorithm.
+ *          Every quantile is estimated with the P-square algorithm of Jain
+ *          and Chlamtac: five markers follow the minimum, the quantile p/2,
+ *          the quantile p, the quantile (1+p)/2 and the maximum, and their
+ *          heights are adjusted with a parabolic interpolation. The
+ *          quantiles are exact for the first five values.
+ *          The result depends on the order of the values.
+ */
+public class StreamingStatistics {
+
+  private double[] probabilities;
+
+  private int count = 0;
+  private double mean = 0;
+  /* Sum of the squares of the differences to the mean */
+  private double m2 = 0;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+
+  /* The first five values, used to initialize the markers */
+  private double[] first = new double[5];
+  /* heights[q][i] and positions[q][i] of the marker i of the quantile q */
+  private double[][] heights;
+  private int[][] positions;
+  /* Desired positions of the markers */
+  private double[][] desired;
+
+  /**
+   * @param probabilities
+   *          The probabilities of the quantiles to estimate, in [0, 1]
+   */
+  public StreamingStatistics(double[] probabilities) {
+    for (int q = 0; q < probabilities.length; q++)
+      assert probabilities[q] >= 0 && probabilities[q] <= 1;
+    this.probabilities = probabilities.clone();
+    heights = new double[probabilities.length][5];
+    positions = new int[probabilities.length][5];
+    desired = new double[probabilities.length][5];
+  }
+
+  public void add(double value) {
+    count++;
+    double delta = value - mean;
+    mean += delta / count;
+    m2 += delta * (value - mean);
+    if (count == 1 || value < min)
+      min = value;
+    if (count == 1 || value > max)
+      max = value;
+
+    if (count < 5) {
+      first[count - 1] = value;
+      return;
+    }
+    if (count == 5) {
+      first[4] = value;
+      double[] sorted = first.clone();
+      Arrays.sort(sorted);
+      for (int q = 0; q < probabilities.length; q++) {
+        double p = probabilities[q];
+        for (int i = 0; i < 5; i++) {
+          heights[q][i] = sorted[i];
+          positions[q][i] = i + 1;
+        }
+        desired[q][0] = 1;
+        desired[q][1] = 1 + 2 * p;
+        desired[q][2] = 1 + 4 * p;
+        desired[q][3] = 3 + 2 * p;
+        desired[q][4] = 5;
+      }
+      return;
+    }
+
+    for (int q = 0; q < probabilities.length; q++)
+      addToMarkers(q, value);
+  }
+
+  private void addToMarkers(int q, double value) {
+    double p = probabilities[q];
+    double[] h = heights[q];
+    int[] n = positions[q];
+    double[] d = desired[q];
+
+    /* Cell of the value between the markers */
+    int cell;
+    if (value < h[0]) {
+      h[0] = value;
+      cell = 0;
+    } else if (value >= h[4]) {
+      h[4] = value;
+      cell = 3;
+    } else {
+      cell = 0;
+      while (value >= h[cell + 1])
+        cell++;
+    }
+    for (int i = cell + 1; i < 5; i++)
+      n[i]++;
+    d[1] += p / 2;
+    d[2] += p;
+    d[3] += (1 + p) / 2;
+    d[4] += 1;
+
+    /* Moves the middle markers to their desired positions */
+    for (int i = 1; i < 4; i++) {
+      double shift = d[i] - n[i];
+      if ((shift >= 1 && n[i + 1] - n[i] > 1)
+          || (shift <= -1 && n[i - 1] - n[i] < -1)) {
+        int s = shift > 0 ? 1 : -1;
+        double parabolic = h[i] + (double) s / (n[i + 1] - n[i - 1])
+            * ((n[i] - n[i - 1] + s) * (h[i + 1] - h[i]) / (n[i + 1] - n[i])
+            + (n[i + 1] - n[i] - s) * (h[i] - h[i - 1]) / (n[i] - n[i - 1]));
+        if (h[i - 1] < parabolic && parabolic < h[i + 1])
+          h[i] = parabolic;
+        else
+          h[i] += s * (h[i + s] - h[i]) / (n[i + s] - n[i]);
+        n[i] += s;
+      }
+    }
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * @return The mean of the values. NaN if there is none
+   */
+  public double getMean() {
+    if (count == 0)
+      return Double.NaN;
+    return mean;
+  }
+
+  /**
+   * @return The unbiased variance of the values. NaN if there are less than
+   *         two values
+   */
+  public double getVariance() {
+    if (count < 2)
+      return Double.NaN;
+    return m2 / (count - 1);
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public double[] getProbabilities() {
+    return probabilities.clone();
+  }
+
+  /**
+   * @return The estimation of the quantile of probabilities[q]. NaN if there
+   *         is no value
+   */
+  public double getQuantile(int q) {
+    if (count == 0)
+      return Double.NaN;
+    if (count > 5)
+      return heights[q][2];
+
+    /* Linear interpolation between the sorted values */
+    double[] sorted = Arrays.copyOf(first, count);
+    Arrays.sort(sorted);
+    double position = probabilities[q] * (count - 1);
+    int below = (int) Math.floor(position);
+    int above = Math.min(below + 1, count - 1);
+    return sorted[below] + (position - below)
+        * (sorted[above] - sorted[below]);
+  }
+}
@@ -0,0 +1,209 @@
+package dataStructures;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @class WorkerPool
+ * @brief Pool of threads shared by all the parallel computations
+ * @details The threads are daemon threads created on the first parallel
+ *          call. Tasks submitted from a thread of the pool are run
+ *          sequentially in the calling thread so that nested parallel loops
+ *          never wait for each other.
+ *          Every running invokeAll() holds its executor, so that changing
+ *          the number of threads during a parallel call only retires the
+ *          executor: it is shut down when the last call using it returns.
+ */
+public final class WorkerPool {
+
+  /*
+   * Minimum number of items (cells, junctions...) given to a task. Smaller
+   * loops are run sequentially
+   */
+  private static int min_items_per_task = 64;
+
+  private static int nb_threads = Runtime.getRuntime().availableProcessors();
+  private static ExecutorService executor = null;
+  /* Number of running invokeAll() using every executor */
+  private static IdentityHashMap<ExecutorService, Integer> nb_users =
+      new IdentityHashMap<ExecutorService, Integer>();
+
+  /**
+   * @class RangeTask
+   * @brief Work done on the items [begin, end) by the task number task
+   */
+  public interface RangeTask {
+    public void run(int task, int begin, int end);
+  }
+
+  private static class Worker extends Thread {
+    Worker(Runnable runnable) {
+      super(runnable, "WorkerPool");
+      setDaemon(true);
+    }
+  }
+
+  private WorkerPool() {
+  }
+
+  public static synchronized int getNb_threads() {
+    return nb_threads;
+  }
+
+  /**
+   * @brief Sets the number of threads of the pool
+   * @details The current pool is shut down once the parallel calls using it
+   *          are done, and the next calls use a new pool. 1 disables all the
+   *          parallel computations.
+   */
+  public static synchronized void setNb_threads(int nb) {
+    assert nb > 0;
+    nb_threads = nb;
+    if (executor != null) {
+      if (!nb_users.containsKey(executor))
+        executor.shutdown();
+      executor = null;
+    }
+  }
+
+  public static synchronized int getMin_items_per_task() {
+    return min_items_per_task;
+  }
+
+  public static synchronized void setMin_items_per_task(int nb) {
+    assert nb > 0;
+    min_items_per_task = nb;
+  }
+
+  /**
+   * @return The current executor, that must be given back to releaseExecutor()
+   */
+  private static synchronized ExecutorService acquireExecutor() {
+    if (executor == null)
+      executor = Executors.newFixedThreadPool(nb_threads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          return new Worker(runnable);
+        }
+      });
+    Integer users = nb_users.get(executor);
+    nb_users.put(executor, users == null ? 1 : users + 1);
+    return executor;
+  }
+
+  /* Shuts down a retired executor when its last user releases it */
+  private static synchronized void releaseExecutor(ExecutorService used) {
+    int users = nb_users.get(used) - 1;
+    if (users > 0) {
+      nb_users.put(used, users);
+      return;
+    }
+    nb_users.remove(used);
+    if (used != executor)
+      used.shutdown();
+  }
+
+  /**
+   * @return True if the current thread is a thread of the pool
+   */
+  public static boolean inWorker() {
+    return Thread.currentThread() instanceof Worker;
+  }
+
+  /**
+   * @return The number of tasks in which a loop over nb_items items should be
+   *         split. It is 1 when called from a thread of the pool.
+   */
+  public static int nbTasks(int nb_items) {
+    if (inWorker())
+      return 1;
+    return Math.max(1, Math.min(getNb_threads(),
+        nb_items / getMin_items_per_task()));
+  }
+
+  /**
+   * @brief Runs task on nb_tasks contiguous ranges covering [0, nb_items)
+   * @details The ranges are ordered: the task number t gets the items
+   *          [t * nb_items / nb_tasks, (t+1) * nb_items / nb_tasks). The call
+   *          returns when all the tasks are done.
+   */
+  public static void run(int nb_tasks, final int nb_items,
+      final RangeTask task) {
+    if (nb_tasks <= 1) {
+      task.run(0, 0, nb_items);
+      return;
+    }
+
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nb_tasks);
+    for (int t = 0; t < nb_tasks; t++) {
+      final int task_id = t;
+      final int begin = (int) ((long) t * nb_items / nb_tasks);
+      final int end = (int) ((long) (t + 1) * nb_items / nb_tasks);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          task.run(task_id, begin, end);
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+  }
+
+  /**
+   * @brief Runs all the tasks and waits for them
+   * @details An exception or error thrown by a task is rethrown in the
+   *          calling thread.
+   * @return The results in the order of the tasks
+   */
+  public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+    List<T> results = new ArrayList<T>(tasks.size());
+
+    if (tasks.size() <= 1 || inWorker() || getNb_threads() <= 1) {
+      for (Callable<T> task : tasks) {
+        try {
+          results.add(task.call());
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return results;
+    }
+
+    List<Future<T>> futures;
+    ExecutorService used = acquireExecutor();
+    try {
+      futures = used.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      releaseExecutor(used);
+    }
+    for (Future<T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw new RuntimeException(cause);
+      }
+    }
+    return results;
+  }
+}
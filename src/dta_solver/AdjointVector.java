@@ -0,0 +1,147 @@
+package dta_solver;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+
+/**
+ * @class AdjointVector
+ * @brief Compact storage of the adjoint variables lambda
+ * @details Only the blocks used by the backward sweep of SOPC_Optimizer are
+ *          stored: the partial densities, the out-flows and the in-flows. The
+ *          demand/supply and aggregate split ratios blocks of the state vector
+ *          X are never written by the sweep and are omitted.
+ *          For a given time step, the block is composed of the densities,
+ *          then the out-flows and then the in-flows. Each of them contains
+ *          (C+1) values per cell as in the state vector X.
+ *          The vector can also be stored on a given number of time slices
+ *          only: time step k is then stored in the slice k modulo the number
+ *          of slices, and the slice has to be cleared before being reused.
+ */
+public class AdjointVector {
+
+  /* Number of time steps */
+  private int T;
+  /* Number of time steps actually stored */
+  private int nb_slices;
+  /* Number of cells */
+  private int nb_cells;
+  /* Number of commodities (the non-compliant one and the C compliant ones) */
+  private int nb_commodities;
+  /* Size of a block describing all the variables for a given time step */
+  private int block_size;
+  private int f_out_position;
+  private int f_in_position;
+
+  private double[] values;
+
+  /**
+   * @brief Creates a zero adjoint vector for all time steps
+   * @param T
+   *          The number of time steps
+   * @param nb_cells
+   *          The number of cells in the network
+   * @param C
+   *          The number of compliant commodities
+   */
+  public AdjointVector(int T, int nb_cells, int C) {
+    this(T, T, nb_cells, C);
+  }
+
+  private AdjointVector(int T, int nb_slices, int nb_cells, int C) {
+    this.T = T;
+    this.nb_slices = nb_slices;
+    this.nb_cells = nb_cells;
+    nb_commodities = C + 1;
+
+    int size_density_block = nb_cells * nb_commodities;
+    f_out_position = size_density_block;
+    f_in_position = 2 * size_density_block;
+    block_size = 3 * size_density_block;
+
+    values = new double[nb_slices * block_size];
+  }
+
+  /**
+   * @brief Creates a zero adjoint vector storing only two time steps
+   * @details It is enough for the backward sweep, which only reads lambda at
+   *          time steps k and k+1 while solving time step k
+   */
+  public static AdjointVector twoSlices(int T, int nb_cells, int C) {
+    return new AdjointVector(T, Math.min(2, T), nb_cells, C);
+  }
+
+  /* Returns the position of the block of time step k */
+  private int slice(int k) {
+    assert k >= 0 && k < T;
+    return (k % nb_slices) * block_size;
+  }
+
+  /* Returns the position of rho(i, c)(k) */
+  public int rho(int k, int i, int c) {
+    return slice(k) + nb_commodities * i + c;
+  }
+
+  /* Returns the position of f_in(i, c)(k) */
+  public int f_in(int k, int i, int c) {
+    return slice(k) + f_in_position + nb_commodities * i + c;
+  }
+
+  /* Returns the position of f_out(i, c)(k) */
+  public int f_out(int k, int i, int c) {
+    return slice(k) + f_out_position + nb_commodities * i + c;
+  }
+
+  public double get(int index) {
+    return values[index];
+  }
+
+  public void set(int index, double value) {
+    values[index] = value;
+  }
+
+  /**
+   * @brief Set to zero all the values of the slice storing time step k
+   */
+  public void clear(int k) {
+    int begin = slice(k);
+    for (int index = begin; index < begin + block_size; index++)
+      values[index] = 0;
+  }
+
+  /**
+   * @return The number of stored values
+   */
+  public int size() {
+    return values.length;
+  }
+
+  /**
+   * @brief Expand the compact vector in the layout of the state vector X
+   * @details The entries of the demand/supply and aggregate split ratios blocks
+   *          are set to zero.
+   * @param x_block_size
+   *          Total size of the description of a profile for a given time step
+   * @param x_f_out_position
+   *          Position of the out-flows block in a block of X
+   * @param x_f_in_position
+   *          Position of the in-flows block in a block of X
+   * @return The vector of size T * x_block_size
+   */
+  public DoubleMatrix1D toStateLayout(int x_block_size, int x_f_out_position,
+      int x_f_in_position) {
+    assert nb_slices == T : "Only the last time steps are stored";
+    DoubleMatrix1D result = new DenseDoubleMatrix1D(T * x_block_size);
+    int size_density_block = nb_cells * nb_commodities;
+    for (int k = 0; k < T; k++) {
+      for (int index = 0; index < size_density_block; index++) {
+        result.setQuick(k * x_block_size + index,
+            values[k * block_size + index]);
+        result.setQuick(k * x_block_size + x_f_out_position + index,
+            values[k * block_size + f_out_position + index]);
+        result.setQuick(k * x_block_size + x_f_in_position + index,
+            values[k * block_size + f_in_position + index]);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,202 @@
+package dta_solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import dataStructures.WorkerPool;
+
+/**
+ * @class AlphaSweepOptimizer
+ * @brief Computes the system optimum for several shares of compliant flow
+ *        on one network
+ * @details The network is loaded once and every share alpha has its own
+ *          simulator on it and its own SOPC_Optimizer. The sorted values of
+ *          alpha are cut into nb_chains chains of neighbouring values. The
+ *          chains are solved concurrently on the WorkerPool and the values of
+ *          a chain one after the other: the first one starts from the default
+ *          split ratios and the next ones start from the solution of the
+ *          previous value. The controls do not depend on alpha (they are the
+ *          shares of the compliant flow) so a solution is a valid starting
+ *          point for any other alpha.
+ *          By default, there is one chain per thread of the WorkerPool, with
+ *          at least two values in every chain so that they all use a warm
+ *          start. For a given number of chains, the results do not depend on
+ *          the number of threads. They are given to the listener as soon as
+ *          they are computed.
+ */
+public class AlphaSweepOptimizer {
+
+  /**
+   * @class Result
+   * @brief The solution for one share of compliant flow
+   */
+  public static class Result {
+    public final double alpha;
+    /** The cost of the best feasible control found */
+    public final double cost;
+    public final double[] control;
+    /**
+     * Number of gradients computed by the descent. It is larger than its
+     * number of iterations when the line search computes gradients
+     */
+    public final int nb_gradients;
+    /** Number of forward simulations done */
+    public final int nb_simulations;
+
+    Result(double alpha, double cost, double[] control, int nb_gradients,
+        int nb_simulations) {
+      this.alpha = alpha;
+      this.cost = cost;
+      this.control = control;
+      this.nb_gradients = nb_gradients;
+      this.nb_simulations = nb_simulations;
+    }
+  }
+
+  /**
+   * @class ResultListener
+   * @brief Receives the results as they are computed
+   * @details It is called from the threads of the WorkerPool, but never by two
+   *          threads at the same time
+   */
+  public interface ResultListener {
+    public void solved(Result result);
+  }
+
+  private Network network;
+  private MultiStartOptimizer.DescentFactory factory;
+  private double[] alphas;
+
+  /*
+   * Number of chains of neighbouring alphas solved concurrently. If it is 0,
+   * there is one chain per thread of the WorkerPool and every chain has at
+   * least two values
+   */
+  private int nb_chains = 0;
+  private ResultListener listener = null;
+
+  /* Results of the last call to optimize(), in the order of alphas */
+  private Result[] results;
+
+  /**
+   * @param network
+   *          The network. It must have its non-compliant split ratios if one
+   *          of the values of alpha is not 1
+   * @param alphas
+   *          The shares of compliant flow, in ]0, 1]
+   */
+  public AlphaSweepOptimizer(Network network,
+      MultiStartOptimizer.DescentFactory factory, double[] alphas) {
+    assert alphas.length > 0 : "There must be at least one value of alpha";
+    for (int i = 0; i < alphas.length; i++) {
+      assert alphas[i] > 0 && alphas[i] <= 1 : "alpha must be in ]0, 1]";
+      assert alphas[i] == 1 || network.hasNonCompliantSplitRatios() : "The"
+          + " network has been loaded without the non-compliant split ratios";
+    }
+    this.network = network;
+    this.factory = factory;
+    this.alphas = alphas.clone();
+  }
+
+  /**
+   * @return The results for every alpha, in the order of the values given to
+   *         the constructor
+   */
+  public Result[] optimize() {
+    final int nb_alphas = alphas.length;
+    Integer[] sorted = new Integer[nb_alphas];
+    for (int i = 0; i < nb_alphas; i++)
+      sorted[i] = i;
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Double.compare(alphas[a], alphas[b]);
+      }
+    });
+
+    results = new Result[nb_alphas];
+    int chains = nb_chains;
+    if (chains == 0)
+      chains = Math.max(1, Math.min(WorkerPool.getNb_threads(),
+          nb_alphas / 2));
+    chains = Math.min(chains, nb_alphas);
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int c = 0; c < chains; c++) {
+      final Integer[] chain = Arrays.copyOfRange(sorted,
+          c * nb_alphas / chains, (c + 1) * nb_alphas / chains);
+      tasks.add(new Callable<Object>() {
+        @Override
+        public Object call() {
+          double[] start = null;
+          for (int i = 0; i < chain.length; i++) {
+            Result result = solve(alphas[chain[i]], start);
+            results[chain[i]] = result;
+            publish(result);
+            start = result.control;
+          }
+          return null;
+        }
+      });
+    }
+    WorkerPool.invokeAll(tasks);
+    return results;
+  }
+
+  /**
+   * @param start
+   *          The starting point. If null, the default split ratios are used
+   */
+  private Result solve(double alpha, double[] start) {
+    SOPC_Optimizer optimizer =
+        new SOPC_Optimizer(new Simulator(network, alpha));
+    if (start != null)
+      optimizer.setStartingPoint(start);
+    AnytimeOptimizer descent =
+        new AnytimeOptimizer(optimizer, factory.newDescent());
+    double[] control = descent.optimize(new Budget(0, 0));
+    return new Result(alpha, descent.getBest_cost(), control,
+        descent.getNb_gradients(), descent.getNb_simulations());
+  }
+
+  private void publish(Result result) {
+    if (listener == null)
+      return;
+    synchronized (listener) {
+      listener.solved(result);
+    }
+  }
+
+  /**
+   * @return The results of the last optimization, in the order of the values
+   *         of alpha given to the constructor
+   */
+  public Result[] getResults() {
+    return results;
+  }
+
+  public int getNb_chains() {
+    return nb_chains;
+  }
+
+  /**
+   * @brief Sets the number of chains of neighbouring alphas
+   * @details More chains use more threads, but fewer solutions start from the
+   *          solution of a neighbour. 0 gives one chain per thread with at
+   *          least two values in every chain
+   */
+  public void setNb_chains(int nb_chains) {
+    assert nb_chains >= 0;
+    this.nb_chains = nb_chains;
+  }
+
+  public ResultListener getListener() {
+    return listener;
+  }
+
+  public void setListener(ResultListener listener) {
+    this.listener = listener;
+  }
+}
@@ -0,0 +1,252 @@
+package dta_solver;
+
+import java.util.Arrays;
+
+import optimization.GradientDescentMethod;
+import dta_solver.adjointMethod.BatchGradientDescentOptimizer;
+import dta_solver.adjointMethod.FusedGradientDescentOptimizer;
+import dta_solver.adjointMethod.SimplexGradientDescentOptimizer;
+
+/**
+ * @class AnytimeOptimizer
+ * @brief Runs a gradient descent within a Budget and returns the best
+ *        feasible control found so far
+ * @details The descent works on a function that gives every evaluation to
+ *          the SOPC_Optimizer and keeps the feasible control with the lowest
+ *          cost. The budget is set to the SOPC_Optimizer during the descent,
+ *          so that the descent is stopped before a forward simulation or an
+ *          adjoint sweep once the budget is exhausted. The descent can also
+ *          stop by itself, on its number of iterations or its own stopping
+ *          conditions.
+ *          How close the run got to convergence is given by the norm of the
+ *          projected gradient at the best control, which is 0 at a
+ *          stationary point, compared to its norm at the first gradient
+ *          computed.
+ */
+public class AnytimeOptimizer {
+
+  private SOPC_Optimizer optimizer;
+  private GradientDescentMethod descent;
+
+  /* A control is feasible if its blocks sum to 1 up to this tolerance */
+  private double feasibility_tolerance = 1E-9;
+
+  /* Results of the last call to optimize() */
+  private double[] best_control;
+  private double best_cost;
+  /* Norm of the projected gradient at best_control. NaN if unknown */
+  private double gradient_norm;
+  private double initial_gradient_norm;
+  private Budget.StopReason stop_reason;
+  private int nb_simulations;
+  private int nb_gradients;
+  private long elapsed_time;
+
+  /**
+   * @class RecordingFunction
+   * @brief The cost function of the optimizer, that records the best feasible
+   *        control evaluated
+   */
+  private class RecordingFunction implements FusedGradientDescentOptimizer,
+      SimplexGradientDescentOptimizer, BatchGradientDescentOptimizer {
+
+    @Override
+    public double objective(double[] control) {
+      double cost = optimizer.objective(control);
+      record(control, cost, null);
+      return cost;
+    }
+
+    @Override
+    public void gradient(double[] gradient_f, double[] control) {
+      optimizer.gradient(gradient_f, control);
+      nb_gradients++;
+      recordGradient(control, gradient_f);
+    }
+
+    @Override
+    public double objectiveAndGradient(double[] gradient_f, double[] control) {
+      double cost = optimizer.objectiveAndGradient(gradient_f, control);
+      nb_gradients++;
+      record(control, cost, gradient_f);
+      return cost;
+    }
+
+    @Override
+    public double[] objectives(double[][] controls) {
+      double[] costs = optimizer.objectives(controls);
+      for (int i = 0; i < controls.length; i++)
+        record(controls[i], costs[i], null);
+      return costs;
+    }
+
+    @Override
+    public double[] getStartingPoint() {
+      return optimizer.getStartingPoint();
+    }
+
+    @Override
+    public void projectControl(double[] control) {
+      optimizer.projectControl(control);
+    }
+
+    @Override
+    public int[][] getSimplexBlocks() {
+      return optimizer.getSimplexBlocks();
+    }
+  }
+
+  public AnytimeOptimizer(SOPC_Optimizer optimizer,
+      GradientDescentMethod descent) {
+    this.optimizer = optimizer;
+    this.descent = descent;
+  }
+
+  /**
+   * @brief Runs the descent until it stops or the budget is exhausted
+   * @details The budget is started again. If it is exhausted before any
+   *          evaluation, the starting point is returned and its cost is NaN
+   * @return The best feasible control evaluated
+   */
+  public double[] optimize(Budget budget) {
+    best_control = optimizer.getStartingPoint();
+    best_cost = Double.NaN;
+    gradient_norm = Double.NaN;
+    initial_gradient_norm = Double.NaN;
+    stop_reason = Budget.StopReason.FINISHED;
+    nb_gradients = 0;
+
+    RecordingFunction function = new RecordingFunction();
+    budget.start();
+    optimizer.setBudget(budget);
+    double[] result = null;
+    try {
+      result = descent.solve(function);
+      /* The descents return their best point or their last point */
+      function.objective(result);
+    } catch (Budget.Exhausted e) {
+      if (result == null)
+        stop_reason = e.getReason();
+    } finally {
+      optimizer.setBudget(null);
+    }
+    nb_simulations = budget.getNb_simulations();
+    elapsed_time = budget.getElapsed_time();
+    return best_control;
+  }
+
+  /**
+   * @brief Keeps the control if it is feasible and better than the best one
+   * @param gradient
+   *          The projected gradient at control or null if it is unknown
+   */
+  private void record(double[] control, double cost, double[] gradient) {
+    if (gradient != null && Double.isNaN(initial_gradient_norm))
+      initial_gradient_norm = norm(gradient);
+    if (!isFeasible(control))
+      return;
+
+    if (Double.isNaN(best_cost) || cost < best_cost) {
+      best_cost = cost;
+      best_control = control.clone();
+      gradient_norm = Double.NaN;
+    }
+    recordGradient(control, gradient);
+  }
+
+  /**
+   * @brief Keeps the norm of the gradient if it is the one at the best
+   *        control
+   */
+  private void recordGradient(double[] control, double[] gradient) {
+    if (gradient != null && Arrays.equals(control, best_control))
+      gradient_norm = norm(gradient);
+  }
+
+  private boolean isFeasible(double[] control) {
+    for (int i = 0; i < control.length; i++)
+      if (control[i] < 0)
+        return false;
+
+    int[][] blocks = optimizer.getSimplexBlocks();
+    for (int b = 0; b < blocks.length; b++) {
+      double sum = 0;
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+        sum += control[i];
+      if (Math.abs(sum - 1) > feasibility_tolerance)
+        return false;
+    }
+    return true;
+  }
+
+  private static double norm(double[] vector) {
+    double result = 0;
+    for (int i = 0; i < vector.length; i++)
+      result += vector[i] * vector[i];
+    return Math.sqrt(result);
+  }
+
+  /**
+   * @return The best feasible control found by the last optimization
+   */
+  public double[] getBest_control() {
+    return best_control;
+  }
+
+  /**
+   * @return The cost of the best control. NaN if nothing has been evaluated
+   */
+  public double getBest_cost() {
+    return best_cost;
+  }
+
+  /**
+   * @return The norm of the projected gradient at the best control. NaN if
+   *         the gradient has not been computed there
+   */
+  public double getGradient_norm() {
+    return gradient_norm;
+  }
+
+  /**
+   * @return The norm of the first projected gradient computed
+   */
+  public double getInitial_gradient_norm() {
+    return initial_gradient_norm;
+  }
+
+  /**
+   * @return The ratio of the norm of the projected gradient at the best
+   *         control to the norm of the first gradient computed. It decreases
+   *         to 0 when the descent converges
+   */
+  public double getConvergence() {
+    return gradient_norm / initial_gradient_norm;
+  }
+
+  public Budget.StopReason getStop_reason() {
+    return stop_reason;
+  }
+
+  /**
+   * @return The number of forward simulations done by the last optimization
+   */
+  public int getNb_simulations() {
+    return nb_simulations;
+  }
+
+  /**
+   * @return The number of gradients computed by the last optimization. The
+   *         descents compute one gradient per iteration
+   */
+  public int getNb_gradients() {
+    return nb_gradients;
+  }
+
+  /**
+   * @return The wall-clock time of the last optimization in milliseconds
+   */
+  public long getElapsed_time() {
+    return elapsed_time;
+  }
+}
@@ -0,0 +1,196 @@
+package dta_solver;
+
+import generalNetwork.state.State;
+import optimization.GradientDescentMethod;
+import dta_solver.adjointMethod.FusedGradientDescentOptimizer;
+import dta_solver.adjointMethod.SimplexGradientDescentOptimizer;
+
+/**
+ * @class BlockCoordinateOptimizer
+ * @brief Optimizes the control one time window at a time
+ * @details The horizon is cut in windows of window_size time steps. A sweep
+ *          optimizes the windows from the last to the first with the given
+ *          gradient descent, the control of the other time steps being fixed.
+ *          The control of a window only changes the simulation from the first
+ *          time step of the window, so every evaluation only simulates from
+ *          there, starting from the state of the current control. The
+ *          adjoint sweep also stops at the first time step of the window.
+ */
+public class BlockCoordinateOptimizer {
+
+  private SOPC_Optimizer optimizer;
+  private GradientDescentMethod descent;
+  /* Number of time steps of a window */
+  private int window_size;
+  /* Number of iterations of the descent on one window */
+  private int window_iterations = 10;
+  /* Number of sweeps over all the windows */
+  private int nb_sweeps = 1;
+
+  /* Number of optimizations of windows done by the last call to optimize */
+  private int nb_windows_optimized;
+
+  /**
+   * @class WindowFunction
+   * @brief The cost as a function of the control of one window
+   * @details The control of the window is the block [first_step * C,
+   *          end_step * C) of the full control
+   */
+  private class WindowFunction implements FusedGradientDescentOptimizer,
+      SimplexGradientDescentOptimizer {
+
+    private double[] control;
+    private int first_step, end_step, block_size;
+    /* State of control, from which the simulations begin */
+    private State prefix;
+
+    WindowFunction(double[] control, int first_step, int end_step) {
+      this.control = control;
+      this.first_step = first_step;
+      this.end_step = end_step;
+      this.block_size = control.length / optimizer.T;
+      this.prefix = optimizer.forwardSimulate(control);
+    }
+
+    /* The full control with the given window */
+    private double[] fullControl(double[] window) {
+      double[] result = control.clone();
+      System.arraycopy(window, 0, result, first_step * block_size,
+          window.length);
+      return result;
+    }
+
+    @Override
+    public double objective(double[] window) {
+      double[] full = fullControl(window);
+      return optimizer.objective(
+          optimizer.forwardSimulateFrom(prefix, first_step, full), full);
+    }
+
+    @Override
+    public void gradient(double[] gradient_f, double[] window) {
+      objectiveAndGradient(gradient_f, window);
+    }
+
+    @Override
+    public double objectiveAndGradient(double[] gradient_f, double[] window) {
+      double[] full = fullControl(window);
+      State state = optimizer.forwardSimulateFrom(prefix, first_step, full);
+      double[] gradient = optimizer.gradientByAdjointMethod(state, full,
+          first_step);
+      optimizer.projectGradient(gradient, gradient, full);
+      System.arraycopy(gradient, first_step * block_size, gradient_f, 0,
+          gradient_f.length);
+      return optimizer.objective(state, full);
+    }
+
+    @Override
+    public double[] getStartingPoint() {
+      double[] result = new double[(end_step - first_step) * block_size];
+      System.arraycopy(control, first_step * block_size, result, 0,
+          result.length);
+      return result;
+    }
+
+    @Override
+    public void projectControl(double[] window) {
+      double[] full = fullControl(window);
+      optimizer.projectControl(full);
+      System.arraycopy(full, first_step * block_size, window, 0,
+          window.length);
+    }
+
+    @Override
+    public int[][] getSimplexBlocks() {
+      int[][] blocks = optimizer.getSimplexBlocks();
+      int nb_blocks = 0;
+      for (int b = 0; b < blocks.length; b++)
+        if (inWindow(blocks[b][0]))
+          nb_blocks++;
+
+      int[][] result = new int[nb_blocks][];
+      nb_blocks = 0;
+      for (int b = 0; b < blocks.length; b++)
+        if (inWindow(blocks[b][0]))
+          result[nb_blocks++] = new int[] {
+              blocks[b][0] - first_step * block_size, blocks[b][1] };
+      return result;
+    }
+
+    private boolean inWindow(int index) {
+      return index >= first_step * block_size
+          && index < end_step * block_size;
+    }
+  }
+
+  public BlockCoordinateOptimizer(SOPC_Optimizer optimizer,
+      GradientDescentMethod descent, int window_size) {
+    this.optimizer = optimizer;
+    this.descent = descent;
+    setWindow_size(window_size);
+  }
+
+  /**
+   * @details The maximum number of iterations of the descent is
+   *          window_iterations during the sweeps and is restored afterwards
+   * @return The control after nb_sweeps sweeps from the starting point of the
+   *         optimizer
+   */
+  public double[] optimize() {
+    double[] control = optimizer.getStartingPoint();
+    int T = optimizer.T;
+    nb_windows_optimized = 0;
+    int max_iterations = descent.getMaxIterations();
+    descent.setMaxIterations(window_iterations);
+
+    try {
+      for (int sweep = 0; sweep < nb_sweeps; sweep++) {
+        for (int end_step = T; end_step > 0; end_step -= window_size) {
+          int first_step = Math.max(0, end_step - window_size);
+          WindowFunction window = new WindowFunction(control, first_step,
+              end_step);
+          double[] result = descent.solve(window);
+          /* The descents return their best point or their last point */
+          if (window.objective(result) <= window.objective(
+              window.getStartingPoint()))
+            control = window.fullControl(result);
+          nb_windows_optimized++;
+        }
+      }
+    } finally {
+      descent.setMaxIterations(max_iterations);
+    }
+    return control;
+  }
+
+  public int getNb_windows_optimized() {
+    return nb_windows_optimized;
+  }
+
+  public int getWindow_size() {
+    return window_size;
+  }
+
+  public void setWindow_size(int window_size) {
+    assert window_size > 0;
+    this.window_size = window_size;
+  }
+
+  public int getWindow_iterations() {
+    return window_iterations;
+  }
+
+  public void setWindow_iterations(int window_iterations) {
+    assert window_iterations > 0;
+    this.window_iterations = window_iterations;
+  }
+
+  public int getNb_sweeps() {
+    return nb_sweeps;
+  }
+
+  public void setNb_sweeps(int nb_sweeps) {
+    assert nb_sweeps > 0;
+    this.nb_sweeps = nb_sweeps;
+  }
+}
@@ -0,0 +1,137 @@
+package dta_solver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @class Budget
+ * @brief Limits of an optimization in wall-clock time and in number of
+ *        simulations, with a cooperative cancellation
+ * @details The SOPC_Optimizer given the budget calls simulation() before
+ *          every forward simulation that is not in the StateCache and check()
+ *          before every adjoint sweep. When a limit is reached or when
+ *          cancel() has been called, they throw an Exhausted exception that
+ *          stops the current descent. cancel() can be called from any thread.
+ *          A limit <= 0 means no limit.
+ */
+public class Budget {
+
+  /**
+   * @brief Reason of the end of an optimization
+   */
+  public enum StopReason {
+    /* The descent stopped by itself */
+    FINISHED,
+    DEADLINE,
+    SIMULATIONS,
+    CANCELLED
+  }
+
+  /**
+   * @class Exhausted
+   * @brief Thrown when the budget does not allow any more computation
+   */
+  public static class Exhausted extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private StopReason reason;
+
+    Exhausted(StopReason reason) {
+      super("Budget exhausted: " + reason);
+      this.reason = reason;
+    }
+
+    public StopReason getReason() {
+      return reason;
+    }
+  }
+
+  /* Maximum wall-clock time in milliseconds */
+  private long max_time;
+  /* Maximum number of forward simulations */
+  private int max_simulations;
+
+  private long start_time;
+  private AtomicInteger nb_simulations = new AtomicInteger(0);
+  private volatile boolean cancelled = false;
+
+  /**
+   * @param max_time
+   *          Maximum wall-clock time in milliseconds
+   * @param max_simulations
+   *          Maximum number of forward simulations
+   */
+  public Budget(long max_time, int max_simulations) {
+    this.max_time = max_time;
+    this.max_simulations = max_simulations;
+    start();
+  }
+
+  /**
+   * @brief Starts the clock and the count of simulations again. A
+   *        cancellation is kept
+   */
+  public void start() {
+    start_time = System.nanoTime();
+    nb_simulations.set(0);
+  }
+
+  /**
+   * @brief Asks the optimization to stop at the next simulation or adjoint
+   *        sweep
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * @brief Throws an Exhausted exception if the time is over or if the
+   *        optimization has been cancelled
+   */
+  public void check() {
+    if (cancelled)
+      throw new Exhausted(StopReason.CANCELLED);
+    if (max_time > 0 && getElapsed_time() >= max_time)
+      throw new Exhausted(StopReason.DEADLINE);
+  }
+
+  /**
+   * @brief Counts nb forward simulations about to be done
+   * @details Throws an Exhausted exception without counting them if they
+   *          would exceed the maximum number of simulations
+   */
+  public void simulations(int nb) {
+    check();
+    if (nb == 0)
+      return;
+    if (nb_simulations.addAndGet(nb) > max_simulations
+        && max_simulations > 0) {
+      nb_simulations.addAndGet(-nb);
+      throw new Exhausted(StopReason.SIMULATIONS);
+    }
+  }
+
+  /**
+   * @return The time elapsed since the start in milliseconds
+   */
+  public long getElapsed_time() {
+    return (System.nanoTime() - start_time) / 1000000;
+  }
+
+  /**
+   * @return The number of forward simulations counted since the start
+   */
+  public int getNb_simulations() {
+    return nb_simulations.get();
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  public long getMax_time() {
+    return max_time;
+  }
+
+  public int getMax_simulations() {
+    return max_simulations;
+  }
+}
@@ -0,0 +1,200 @@
+package dta_solver;
+
+import java.util.Random;
+
+import generalLWRNetwork.Origin;
+import generalNetwork.data.demand.Demands;
+import generalNetwork.state.Profile;
+import generalNetwork.state.State;
+import dataStructures.StreamingStatistics;
+
+/**
+ * @class DemandEnsemble
+ * @brief Monte Carlo evaluation of a fixed control under perturbed demands
+ * @details Every member of the ensemble has the demands of the simulator of
+ *          the optimizer shifted by a random number of time steps, uniform in
+ *          [-max_shift, max_shift], and multiplied by independent log-normal
+ *          factors of mean 1 and log standard deviation noise at every origin
+ *          and every time step.
+ *          The members are simulated by batches on the WorkerPool with
+ *          SOPC_Optimizer.simulate(), that shares the network between the
+ *          threads and does not modify the optimizer. After every batch, the
+ *          objectives and the total densities of every cell at every time step
+ *          are added to streaming statistics and the states are dropped, so
+ *          the memory does not depend on the number of members.
+ *          The member m uses the random generator of seed seed + m and the
+ *          members are added to the statistics in their order, so the
+ *          results do not depend on the number of threads.
+ */
+public class DemandEnsemble {
+
+  private SOPC_Optimizer optimizer;
+  private double[] control;
+
+  /* Standard deviation of the logarithm of the multiplicative noise */
+  private double noise = 0.1;
+  /* Maximum absolute shift of the demands in time steps */
+  private int max_shift = 0;
+  private long seed = 0;
+  /* Number of members simulated before the statistics are updated */
+  private int batch_size = 16;
+  private double[] probabilities = { 0.05, 0.5, 0.95 };
+
+  /* Statistics of the members added so far */
+  private int nb_members;
+  private StreamingStatistics objective;
+  /* density[k][c] is the total density of the cell c at the time step k */
+  private StreamingStatistics[][] density;
+
+  /**
+   * @param optimizer
+   *          Gives the network, the nominal demands and the split ratios
+   * @param control
+   *          The control evaluated. It is not modified
+   */
+  public DemandEnsemble(SOPC_Optimizer optimizer, double[] control) {
+    this.optimizer = optimizer;
+    this.control = control.clone();
+    clear();
+  }
+
+  /**
+   * @brief Removes all the members from the statistics
+   */
+  public void clear() {
+    nb_members = 0;
+    objective = new StreamingStatistics(probabilities);
+    int nb_steps = optimizer.simulator.time_discretization.getNb_steps();
+    int nb_cells = optimizer.simulator.lwr_network.getNb_Cells();
+    density = new StreamingStatistics[nb_steps][nb_cells];
+    for (int k = 0; k < nb_steps; k++)
+      for (int c = 0; c < nb_cells; c++)
+        density[k][c] = new StreamingStatistics(probabilities);
+  }
+
+  /**
+   * @brief Simulates nb new members and adds them to the statistics
+   * @return The statistics of the objective of all the members
+   */
+  public StreamingStatistics run(int nb) {
+    int nb_steps = density.length;
+    int nb_cells = density[0].length;
+    int end = nb_members + nb;
+    while (nb_members < end) {
+      int size = Math.min(batch_size, end - nb_members);
+      double[][] controls = new double[size][];
+      Demands[] demands = new Demands[size];
+      for (int i = 0; i < size; i++) {
+        controls[i] = control;
+        demands[i] = memberDemands(nb_members + i);
+      }
+
+      State[] states = optimizer.simulate(controls, demands);
+      for (int i = 0; i < size; i++) {
+        objective.add(optimizer.objective(states[i], control));
+        for (int k = 0; k < nb_steps; k++) {
+          Profile profile = states[i].profiles[k];
+          for (int c = 0; c < nb_cells; c++)
+            density[k][c].add(profile.getCell(c).total_density);
+        }
+      }
+      nb_members += size;
+    }
+    return objective;
+  }
+
+  /**
+   * @return The demands of the member m
+   */
+  public Demands memberDemands(int m) {
+    Random random = new Random(seed + m);
+    Demands nominal = optimizer.simulator.origin_demands;
+    int shift = max_shift - random.nextInt(2 * max_shift + 1);
+    Demands shifted = nominal.shift(shift);
+
+    /* The origins are in a fixed order for the draws to be reproducible */
+    Origin[] sources = optimizer.simulator.lwr_network.getSources();
+    Demands result = new Demands(sources.length);
+    for (int o = 0; o < sources.length; o++) {
+      double[] demand = shifted.get(sources[o]);
+      if (demand == null)
+        continue;
+      double[] perturbed = new double[demand.length];
+      for (int k = 0; k < demand.length; k++)
+        perturbed[k] = demand[k]
+            * Math.exp(noise * random.nextGaussian() - noise * noise / 2);
+      result.put(sources[o], perturbed);
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of members in the statistics
+   */
+  public int getNb_members() {
+    return nb_members;
+  }
+
+  /**
+   * @return The statistics of the objective
+   */
+  public StreamingStatistics getObjective() {
+    return objective;
+  }
+
+  /**
+   * @return The statistics of the total density of the cell at the time step
+   *         k
+   */
+  public StreamingStatistics getDensity(int k, int cell) {
+    return density[k][cell];
+  }
+
+  public double getNoise() {
+    return noise;
+  }
+
+  public void setNoise(double noise) {
+    assert noise >= 0;
+    this.noise = noise;
+  }
+
+  public int getMax_shift() {
+    return max_shift;
+  }
+
+  public void setMax_shift(int max_shift) {
+    assert max_shift >= 0;
+    this.max_shift = max_shift;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  public int getBatch_size() {
+    return batch_size;
+  }
+
+  /**
+   * @brief Sets the number of members simulated at the same time
+   * @details It should be larger than the number of threads of the
+   *          WorkerPool. The memory used grows with it
+   */
+  public void setBatch_size(int batch_size) {
+    assert batch_size > 0;
+    this.batch_size = batch_size;
+  }
+
+  /**
+   * @brief Sets the probabilities of the quantiles and clears the statistics
+   */
+  public void setProbabilities(double[] probabilities) {
+    this.probabilities = probabilities.clone();
+    clear();
+  }
+}
@@ -0,0 +1,94 @@
+package dta_solver;
+
+import java.util.Arrays;
+
+/**
+ * @class JunctionDerivatives
+ * @brief List of partial derivatives d f_out(j, c') / d rho(i, c) of the
+ *        junctions at one time step
+ * @details Each entry (i, c, j, c', value) stands for the term
+ *          lambda_rho(i, c) += value * lambda_f_out(j, c') of the adjoint
+ *          equations. The entries are kept in the order they were added so
+ *          that the sums are always done in the same order.
+ */
+class JunctionDerivatives {
+
+  private int size = 0;
+  private int[] rho_cells = new int[16];
+  private int[] rho_commodities = new int[16];
+  private int[] f_out_cells = new int[16];
+  private int[] f_out_commodities = new int[16];
+  private double[] values = new double[16];
+
+  void add(int rho_cell, int rho_commodity, int f_out_cell,
+      int f_out_commodity, double value) {
+    if (size == values.length) {
+      int capacity = 2 * size;
+      rho_cells = Arrays.copyOf(rho_cells, capacity);
+      rho_commodities = Arrays.copyOf(rho_commodities, capacity);
+      f_out_cells = Arrays.copyOf(f_out_cells, capacity);
+      f_out_commodities = Arrays.copyOf(f_out_commodities, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    rho_cells[size] = rho_cell;
+    rho_commodities[size] = rho_commodity;
+    f_out_cells[size] = f_out_cell;
+    f_out_commodities[size] = f_out_commodity;
+    values[size] = value;
+    size++;
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  int rhoCell(int i) {
+    return rho_cells[i];
+  }
+
+  int rhoCommodity(int i) {
+    return rho_commodities[i];
+  }
+
+  int fOutCell(int i) {
+    return f_out_cells[i];
+  }
+
+  int fOutCommodity(int i) {
+    return f_out_commodities[i];
+  }
+
+  double value(int i) {
+    return values[i];
+  }
+
+  /**
+   * @brief Adds all the terms to lambda(rho(k))
+   * @details lambda(f_out(k)) must already be solved
+   */
+  void addAdjointTerms(AdjointVector lambda, int k) {
+    for (int i = 0; i < size; i++) {
+      int index = lambda.rho(k, rho_cells[i], rho_commodities[i]);
+      lambda.set(index, lambda.get(index) + values[i]
+          * lambda.get(lambda.f_out(k, f_out_cells[i], f_out_commodities[i])));
+    }
+  }
+
+  /**
+   * @brief Adds all the terms to the perturbation of f_out(k) in the
+   *        tangent-linear model:
+   *        delta(f_out(j, c')) += value * delta(rho(i, c))
+   * @details delta(rho(k)) must already be computed
+   */
+  void addTangentTerms(AdjointVector delta, int k) {
+    for (int i = 0; i < size; i++) {
+      int index = delta.f_out(k, f_out_cells[i], f_out_commodities[i]);
+      delta.set(index, delta.get(index) + values[i]
+          * delta.get(delta.rho(k, rho_cells[i], rho_commodities[i])));
+    }
+  }
+}
@@ -0,0 +1,384 @@
+package dta_solver;
+
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+
+import optimization.GradientDescentMethod;
+import dataStructures.WorkerPool;
+
+/**
+ * @class MultiStartOptimizer
+ * @brief Runs several gradient descents from different starting points
+ * @details Every start has its own workspace of the simulator (its own split
+ *          ratios at the origins) and its own SOPC_Optimizer, and they share
+ *          the network. The starts are:
+ *          - the uniform split ratios,
+ *          - the shortest free-flow paths mixed with the uniform split ratios,
+ *          - random points of the simplices for the others.
+ *          Every start runs one descent of max_iterations iterations with an
+ *          AnytimeOptimizer, so that its history (quasi-Newton pairs,
+ *          momentum, step) is kept during the whole optimization. The starts
+ *          are compared after every round of round_iterations gradients: a
+ *          start waits until all the running starts have finished the round.
+ *          The starts whose best cost is larger than (1 + cut_tolerance)
+ *          times the best cost of all the starts are stopped by cancelling
+ *          their Budget.
+ *          The descents are run on their own threads because they wait for
+ *          each other, and at most WorkerPool.getNb_threads() of them compute
+ *          at the same time. The starts are only compared at the end of the
+ *          rounds, so the results do not depend on the number of threads.
+ */
+public class MultiStartOptimizer {
+
+  /**
+   * @class DescentFactory
+   * @brief Creates the gradient descent used by one start
+   */
+  public interface DescentFactory {
+    public GradientDescentMethod newDescent();
+  }
+
+  private Simulator simulator;
+  private DescentFactory factory;
+  private int nb_starts;
+
+  /* Number of iterations of the descent of a start that is never stopped */
+  private int max_iterations = 100;
+  /* Number of gradients between two comparisons of the starts */
+  private int round_iterations = 10;
+  /* Relative gap to the best cost above which a start is stopped */
+  private double cut_tolerance = 0.05;
+  /* Share of the uniform split ratios in the free-flow start */
+  private double free_flow_mix = 0.1;
+  /* Seed of the random starts */
+  private long seed = 0;
+
+  /* Results of the last call to optimize() */
+  private double[][] controls;
+  private double[] costs;
+  /* Number of gradients computed by every start */
+  private int[] iterations;
+  private int best_start;
+
+  /*
+   * Synchronization of the starts at the end of the rounds. All the fields
+   * below are guarded by lock
+   */
+  private final Object lock = new Object();
+  private int round;
+  private int nb_running;
+  private int nb_waiting;
+  private boolean[] running;
+  private boolean[] waiting;
+  /* Best cost of every start at the end of its last round */
+  private double[] round_costs;
+  private Budget[] budgets;
+  /* Limits the number of descents computing at the same time */
+  private Semaphore permits;
+
+  /**
+   * @class StartOptimizer
+   * @brief SOPC_Optimizer of a start that keeps its best cost and ends a
+   *        round every round_iterations gradients
+   */
+  private class StartOptimizer extends SOPC_Optimizer {
+    private int start;
+    private double best_cost = Double.POSITIVE_INFINITY;
+    private int nb_gradients = 0;
+
+    StartOptimizer(Simulator simulator, int start) {
+      super(simulator);
+      this.start = start;
+    }
+
+    private double record(double cost) {
+      best_cost = Math.min(best_cost, cost);
+      return cost;
+    }
+
+    @Override
+    public double objective(double[] control) {
+      return record(super.objective(control));
+    }
+
+    @Override
+    public double[] objectives(double[][] controls) {
+      double[] result = super.objectives(controls);
+      for (int i = 0; i < result.length; i++)
+        record(result[i]);
+      return result;
+    }
+
+    @Override
+    public void gradient(double[] gradient_f, double[] control) {
+      super.gradient(gradient_f, control);
+      gradientDone();
+    }
+
+    @Override
+    public double objectiveAndGradient(double[] gradient_f, double[] control) {
+      double cost = record(super.objectiveAndGradient(gradient_f, control));
+      gradientDone();
+      return cost;
+    }
+
+    private void gradientDone() {
+      nb_gradients++;
+      if (nb_gradients % round_iterations == 0)
+        endOfRound(start, best_cost);
+    }
+  }
+
+  public MultiStartOptimizer(Simulator simulator, DescentFactory factory,
+      int nb_starts) {
+    assert nb_starts > 0 : "There must be at least one start";
+    this.simulator = simulator;
+    this.factory = factory;
+    this.nb_starts = nb_starts;
+  }
+
+  /**
+   * @return The best control found by all the starts
+   */
+  public double[] optimize() {
+    final StartOptimizer[] optimizers = new StartOptimizer[nb_starts];
+    for (int s = 0; s < nb_starts; s++)
+      optimizers[s] = new StartOptimizer(simulator.workspace(), s);
+
+    controls = startingPoints(optimizers[0]);
+    costs = new double[nb_starts];
+    iterations = new int[nb_starts];
+
+    round = 0;
+    nb_running = nb_starts;
+    nb_waiting = 0;
+    running = new boolean[nb_starts];
+    waiting = new boolean[nb_starts];
+    round_costs = new double[nb_starts];
+    budgets = new Budget[nb_starts];
+    for (int s = 0; s < nb_starts; s++) {
+      running[s] = true;
+      round_costs[s] = Double.POSITIVE_INFINITY;
+      budgets[s] = new Budget(0, 0);
+    }
+    permits = new Semaphore(WorkerPool.getNb_threads());
+
+    final AnytimeOptimizer[] descents = new AnytimeOptimizer[nb_starts];
+    final Throwable[] failures = new Throwable[nb_starts];
+    Thread[] threads = new Thread[nb_starts];
+    for (int s = 0; s < nb_starts; s++) {
+      final int start = s;
+      optimizers[s].setStartingPoint(controls[s]);
+      GradientDescentMethod descent = factory.newDescent();
+      descent.setMaxIterations(max_iterations);
+      descents[s] = new AnytimeOptimizer(optimizers[s], descent);
+      threads[s] = new Thread("MultiStart " + s) {
+        @Override
+        public void run() {
+          permits.acquireUninterruptibly();
+          try {
+            descents[start].optimize(budgets[start]);
+          } catch (Throwable e) {
+            failures[start] = e;
+          } finally {
+            finish(start, optimizers[start].best_cost);
+          }
+        }
+      };
+      threads[s].start();
+    }
+
+    for (int s = 0; s < nb_starts; s++) {
+      try {
+        threads[s].join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      if (failures[s] instanceof RuntimeException)
+        throw (RuntimeException) failures[s];
+      if (failures[s] instanceof Error)
+        throw (Error) failures[s];
+    }
+
+    for (int s = 0; s < nb_starts; s++) {
+      controls[s] = descents[s].getBest_control();
+      costs[s] = descents[s].getBest_cost();
+      iterations[s] = optimizers[s].nb_gradients;
+    }
+    best_start = 0;
+    for (int s = 1; s < nb_starts; s++)
+      if (costs[s] < costs[best_start])
+        best_start = s;
+    return controls[best_start];
+  }
+
+  /**
+   * @brief Called by a start at the end of a round. It returns when all the
+   *        running starts have finished the round
+   */
+  private void endOfRound(int start, double cost) {
+    synchronized (lock) {
+      if (!running[start])
+        return;
+      round_costs[start] = cost;
+      waiting[start] = true;
+      nb_waiting++;
+      permits.release();
+      int current_round = round;
+      if (nb_waiting == nb_running)
+        compareStarts();
+      while (round == current_round) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+      }
+    }
+    permits.acquireUninterruptibly();
+  }
+
+  /**
+   * @brief Called by a start when its descent has stopped
+   */
+  private void finish(int start, double cost) {
+    synchronized (lock) {
+      if (running[start]) {
+        round_costs[start] = cost;
+        running[start] = false;
+        nb_running--;
+        if (nb_waiting > 0 && nb_waiting == nb_running)
+          compareStarts();
+      }
+    }
+    permits.release();
+  }
+
+  /**
+   * @brief Stops the waiting starts that are too far from the best cost and
+   *        lets the others begin the next round. lock must be held
+   */
+  private void compareStarts() {
+    double best_cost = Double.POSITIVE_INFINITY;
+    for (int s = 0; s < nb_starts; s++)
+      best_cost = Math.min(best_cost, round_costs[s]);
+
+    for (int s = 0; s < nb_starts; s++) {
+      if (!waiting[s])
+        continue;
+      waiting[s] = false;
+      if (round_costs[s] > (1 + cut_tolerance) * best_cost) {
+        budgets[s].cancel();
+        running[s] = false;
+        nb_running--;
+      }
+    }
+    nb_waiting = 0;
+    round++;
+    lock.notifyAll();
+  }
+
+  /**
+   * @return The starting points: uniform, free-flow paths and random points
+   *         of the simplices
+   */
+  private double[][] startingPoints(SOPC_Optimizer optimizer) {
+    int[][] blocks = optimizer.getSimplexBlocks();
+    int n = optimizer.getControl().length;
+    double[][] result = new double[nb_starts][];
+
+    double[] uniform = new double[n];
+    for (int b = 0; b < blocks.length; b++)
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+        uniform[i] = 1.0 / blocks[b][1];
+    result[0] = uniform;
+
+    if (nb_starts > 1) {
+      double[] free_flow = optimizer.freeFlowControl();
+      for (int i = 0; i < n; i++)
+        free_flow[i] = (1 - free_flow_mix) * free_flow[i]
+            + free_flow_mix * uniform[i];
+      result[1] = free_flow;
+    }
+
+    /* Uniform sampling of the simplices */
+    Random random = new Random(seed);
+    for (int s = 2; s < nb_starts; s++) {
+      result[s] = new double[n];
+      for (int b = 0; b < blocks.length; b++) {
+        double sum = 0;
+        for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+          result[s][i] = -Math.log(1 - random.nextDouble());
+          sum += result[s][i];
+        }
+        for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+          result[s][i] /= sum;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The costs reached by every start in the last optimization
+   */
+  public double[] getCosts() {
+    return costs;
+  }
+
+  /**
+   * @return The controls reached by every start in the last optimization
+   */
+  public double[][] getControls() {
+    return controls;
+  }
+
+  /**
+   * @return The number of gradients computed by every start in the last
+   *         optimization. The descents compute about one gradient per
+   *         iteration. It is smaller for the stopped starts
+   */
+  public int[] getIterations() {
+    return iterations;
+  }
+
+  public int getBest_start() {
+    return best_start;
+  }
+
+  public int getMax_iterations() {
+    return max_iterations;
+  }
+
+  public void setMax_iterations(int max_iterations) {
+    assert max_iterations > 0;
+    this.max_iterations = max_iterations;
+  }
+
+  public int getRound_iterations() {
+    return round_iterations;
+  }
+
+  public void setRound_iterations(int round_iterations) {
+    assert round_iterations > 0;
+    this.round_iterations = round_iterations;
+  }
+
+  public double getCut_tolerance() {
+    return cut_tolerance;
+  }
+
+  public void setCut_tolerance(double cut_tolerance) {
+    assert cut_tolerance >= 0;
+    this.cut_tolerance = cut_tolerance;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+}
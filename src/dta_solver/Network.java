@@ -0,0 +1,194 @@
+package dta_solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import generalLWRNetwork.DiscretizedGraph;
+import generalLWRNetwork.LWR_network;
+import generalNetwork.data.Json_data;
+import generalNetwork.data.demand.Demands;
+import generalNetwork.data.demand.DemandsFactory;
+import generalNetwork.graph.Graph;
+import generalNetwork.graph.json.JsonFactory;
+import generalNetwork.state.externalSplitRatios.IntertemporalOriginsSplitRatios;
+import dataStructures.WorkerPool;
+
+/**
+ * @class Network
+ * @brief The compiled network of a DTA problem, shared by the simulators
+ * @details It contains the discretized graph, its compact form, the time
+ *          discretization, the non-compliant split ratios and the demands of
+ *          the data file. It is not modified after its construction: the
+ *          simulations write only in the profiles they create, so one network
+ *          can be read by any number of simulators and threads at the same
+ *          time. Every Simulator built on it is a workspace with its own split
+ *          ratios at the origins, demands and initial profiles.
+ */
+public class Network {
+
+  /** The discretized version of the graph */
+  private final DiscretizedGraph discretized_graph;
+  /** The compact form of the graph */
+  private final LWR_network lwr_network;
+  /** The time discretization (delta t and number of time steps) */
+  private final Discretization time_discretization;
+  /** The demands of the data file. It must not be modified */
+  private final Demands demands;
+  /** Share of the compliant flow */
+  private final double alpha;
+
+  /**
+   * @brief Loads and compiles a network
+   * @param network_file
+   *          File containing the description of the network
+   * @param data_file
+   *          File containing the demands and non-compliant split ratios
+   * @param alpha
+   *          Share of the compliant-flow
+   * @param debug
+   *          True will enable debug mode and debug printing
+   */
+  public Network(String network_file, String data_file, double alpha,
+      boolean debug) {
+    this.alpha = alpha;
+
+    JsonFactory json = new JsonFactory(debug);
+
+    /* Loading the graph description */
+    System.out.print("Loading the graph from JSON...");
+    Graph json_graph = json.graphFromFile(network_file);
+    System.out.println("Done");
+
+    /* Loading the data from the json file */
+    System.out.print("Loading the data from JSON...");
+    Json_data data = json.dataFromFile(data_file);
+    System.out.println("Done");
+
+    /* Time discretization from the data */
+    time_discretization = new Discretization(data.delta_t, data.max_time_step);
+
+    int nb_steps = time_discretization.getNb_steps();
+    double delta_t = time_discretization.getDelta_t();
+    /* Creation of the network */
+    System.out.print("Discretization of the graph...");
+    discretized_graph = new DiscretizedGraph(json_graph, delta_t, nb_steps);
+    System.out.println("Done");
+
+    /* Creation of the demands */
+    System.out.print("Loading demands from JSON...");
+    demands = new DemandsFactory(time_discretization,
+        delta_t, data.demands, discretized_graph.node_to_origin)
+        .buildDemands();
+    System.out.println("Done");
+
+    if (debug)
+      System.out.println(demands.toString());
+
+    /* Creation of the non-compliant split-ratios */
+    if (alpha != 1) {
+      System.out.print("Loading non compliant split-ratios from JSON...");
+      discretized_graph.split_ratios.addNonCompliantSplitRatios(
+          discretized_graph,
+          data.non_compliant_split_ratios,
+          discretized_graph.node_to_origin);
+      System.out.println("Done");
+    } else {
+      System.out.println("Full System Optimal detected.");
+    }
+
+    /* Building compact form in LWR_network */
+    System.out.print("Creating the compact representation...");
+    lwr_network = new LWR_network(discretized_graph);
+    System.out.println("Done");
+
+    /* Checking the requirements on the network */
+    System.out
+        .print("Checking that the network respect needed requirements...");
+    lwr_network.checkConstraints(delta_t);
+    System.out.println("Done");
+
+    if (debug) {
+      System.out.println("Printing the compact form");
+      lwr_network.print();
+      lwr_network.printInternalSplitRatios();
+    }
+  }
+
+  /**
+   * @brief Loads and compiles several networks concurrently on the WorkerPool
+   * @details Every network numbers its cells and junctions with its own
+   *          NetworkUIDFactory, so the networks are the same as the ones loaded
+   *          one after the other
+   * @return The network of network_files[i] with the data of data_files[i]
+   */
+  public static Network[] loadAll(String[] network_files,
+      String[] data_files, final double alpha) {
+    assert network_files.length == data_files.length : "Every network needs"
+        + " a data file";
+    List<Callable<Network>> tasks = new ArrayList<Callable<Network>>();
+    for (int i = 0; i < network_files.length; i++) {
+      final String network_file = network_files[i];
+      final String data_file = data_files[i];
+      tasks.add(new Callable<Network>() {
+        @Override
+        public Network call() {
+          return new Network(network_file, data_file, alpha, false);
+        }
+      });
+    }
+    return WorkerPool.invokeAll(tasks).toArray(
+        new Network[network_files.length]);
+  }
+
+  /**
+   * @return New physical split ratios at the origins, with equally likely
+   *         compliant flows representing alpha of the total flow
+   */
+  public IntertemporalOriginsSplitRatios newSplitRatios() {
+    return newSplitRatios(alpha);
+  }
+
+  /**
+   * @return New physical split ratios at the origins, with equally likely
+   *         compliant flows representing the given share of the total flow
+   */
+  public IntertemporalOriginsSplitRatios newSplitRatios(double alpha) {
+    assert alpha == 1 || hasNonCompliantSplitRatios() : "The network has "
+        + "been loaded without the non-compliant split ratios";
+    return IntertemporalOriginsSplitRatios.defaultPhysicalSplitRatios(
+        time_discretization.getNb_steps(), discretized_graph.sources, alpha);
+  }
+
+  /**
+   * @return True if the non-compliant split ratios of the data file have been
+   *         loaded, that is to say if the network can be simulated with any
+   *         share of compliant flow and not only with alpha = 1
+   */
+  public boolean hasNonCompliantSplitRatios() {
+    return alpha != 1;
+  }
+
+  public DiscretizedGraph getDiscretized_graph() {
+    return discretized_graph;
+  }
+
+  public LWR_network getLwr_network() {
+    return lwr_network;
+  }
+
+  public Discretization getTime_discretization() {
+    return time_discretization;
+  }
+
+  /**
+   * @return The demands of the data file. They must not be modified
+   */
+  public Demands getDemands() {
+    return demands;
+  }
+
+  public double getAlpha() {
+    return alpha;
+  }
+}
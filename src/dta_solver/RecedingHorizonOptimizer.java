@@ -0,0 +1,138 @@
+package dta_solver;
+
+import generalNetwork.data.demand.Demands;
+import generalNetwork.state.State;
+import optimization.GradientDescentMethod;
+
+/**
+ * @class RecedingHorizonOptimizer
+ * @brief Re-optimizes the control on a rolling horizon
+ * @details A cycle optimizes the control over the T time steps of the
+ *          simulator. When elapsed time steps have been applied, the next
+ *          cycle starts from the state of the network reached at that time
+ *          with the last optimal control, with the new demand forecast. The
+ *          previous optimal control is shifted by elapsed blocks and is used
+ *          as the starting point of the descent. The last block is repeated
+ *          at the end of the horizon.
+ *          The number of iterations of a cycle is bounded by
+ *          max_iterations_per_cycle.
+ */
+public class RecedingHorizonOptimizer {
+
+  private Simulator simulator;
+  private SOPC_Optimizer optimizer;
+  private GradientDescentMethod descent;
+  /* Maximum number of iterations of the descent in one cycle */
+  private int max_iterations_per_cycle;
+
+  /* Optimal control of the last cycle and its state */
+  private double[] control = null;
+  private State state = null;
+  /* Number of cycles done */
+  private int nb_cycles = 0;
+
+  public RecedingHorizonOptimizer(Simulator simulator,
+      GradientDescentMethod descent, int max_iterations_per_cycle) {
+    this.simulator = simulator;
+    this.optimizer = new SOPC_Optimizer(simulator);
+    this.descent = descent;
+    setMax_iterations_per_cycle(max_iterations_per_cycle);
+  }
+
+  /**
+   * @brief Optimizes the control from the current initial state of the
+   *        simulator
+   * @return The optimal control of the cycle
+   */
+  public double[] optimize() {
+    descent.setMaxIterations(max_iterations_per_cycle);
+    control = descent.solve(optimizer);
+    state = optimizer.forwardSimulate(control);
+    nb_cycles++;
+    return control;
+  }
+
+  /**
+   * @brief Moves the horizon forward and optimizes again
+   * @details The network starts from the state reached after elapsed time
+   *          steps with the last optimal control. The cached states are
+   *          cleared since the simulations are not the same anymore.
+   * @param elapsed
+   *          The number of time steps applied since the last cycle. It must be
+   *          in [1, T - 1]
+   * @param forecast
+   *          The demands for the new horizon. If it is null, the demands of
+   *          the last cycle are shifted by elapsed time steps
+   * @return The optimal control of the new cycle
+   * @throws IllegalStateException
+   *           If optimize() has not been called before
+   * @throws IllegalArgumentException
+   *           If elapsed is not in [1, T - 1]
+   */
+  public double[] advance(int elapsed, Demands forecast) {
+    if (control == null)
+      throw new IllegalStateException("[RecedingHorizonOptimizer] "
+          + "optimize() must be called before advance()");
+    int T = simulator.time_discretization.getNb_steps();
+    if (elapsed < 1 || elapsed >= T)
+      throw new IllegalArgumentException("[RecedingHorizonOptimizer] The "
+          + "elapsed time steps (" + elapsed + ") must be in [1, " + (T - 1)
+          + "]");
+
+    simulator.setInitialProfiles(state.profiles[elapsed - 1],
+        state.profiles[elapsed]);
+    if (forecast == null)
+      forecast = simulator.origin_demands.shift(elapsed);
+    simulator.origin_demands = forecast;
+    optimizer.getStateCache().clear();
+
+    optimizer.setStartingPoint(shift(control, elapsed, T));
+    return optimize();
+  }
+
+  /**
+   * @return The control shifted by elapsed blocks of time steps. The last
+   *         block is repeated at the end
+   */
+  private static double[] shift(double[] control, int elapsed, int T) {
+    int block_size = control.length / T;
+    double[] result = new double[control.length];
+    for (int k = 0; k < T; k++) {
+      int previous_k = Math.min(k + elapsed, T - 1);
+      System.arraycopy(control, previous_k * block_size, result,
+          k * block_size, block_size);
+    }
+    return result;
+  }
+
+  /**
+   * @return The optimal control of the last cycle
+   */
+  public double[] getControl() {
+    return control;
+  }
+
+  /**
+   * @return The state given by the optimal control of the last cycle
+   */
+  public State getState() {
+    return state;
+  }
+
+  public SOPC_Optimizer getOptimizer() {
+    return optimizer;
+  }
+
+  public int getNb_cycles() {
+    return nb_cycles;
+  }
+
+  public int getMax_iterations_per_cycle() {
+    return max_iterations_per_cycle;
+  }
+
+  public void setMax_iterations_per_cycle(int max_iterations_per_cycle) {
+    assert max_iterations_per_cycle > 0;
+    this.max_iterations_per_cycle = max_iterations_per_cycle;
+  }
+}
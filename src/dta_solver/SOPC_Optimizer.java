@@ -6,6 +6,7 @@ import generalLWRNetwork.Cell;
 import generalLWRNetwork.Destination;
 import generalLWRNetwork.Junction;
 import generalLWRNetwork.Origin;
+import generalNetwork.data.demand.Demands;
 import generalNetwork.state.CellInfo;
 import generalNetwork.state.JunctionInfo;
 import generalNetwork.state.State;
@@ -14,14 +15,18 @@ import generalNetwork.state.internalSplitRatios.IntertemporalSplitRatios;
 import generalNetwork.state.internalSplitRatios.JunctionSplitRatios;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleFactory1D;
-import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
-import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
 import dataStructures.Numerical;
 import dataStructures.Preprocessor;
-import dta_solver.adjointMethod.GradientDescentOptimizer;
+import dataStructures.Simplex;
+import dataStructures.SparseMatrixBuilder;
+import dataStructures.WorkerPool;
+import dta_solver.adjointMethod.BatchGradientDescentOptimizer;
+import dta_solver.adjointMethod.FusedGradientDescentOptimizer;
+import dta_solver.adjointMethod.SimplexGradientDescentOptimizer;
 
-public class SOPC_Optimizer implements GradientDescentOptimizer {
+public class SOPC_Optimizer implements FusedGradientDescentOptimizer,
+    SimplexGradientDescentOptimizer, BatchGradientDescentOptimizer {
 
   protected Simulator simulator;
 
@@ -60,6 +65,39 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
   protected int f_out_position;
   protected int f_in_position;
 
+  /*
+   * If true, the gradient is computed with an adjoint stored on two time
+   * slices only
+   */
+  private boolean two_slice_adjoint = true;
+
+  /*
+   * States of the last simulated controls. It is cleared when the version or
+   * the demands of the simulator change, and has to be cleared if the
+   * demands are modified in place
+   */
+  private StateCache state_cache = new StateCache(64L * 1024 * 1024);
+  /* Version and demands of the simulator when the states were stored */
+  private int cache_version;
+  private Demands cache_demands;
+
+  /* If not null, the starting point of the gradient descents */
+  private double[] starting_point = null;
+  /*
+   * If not null, it is told about every forward simulation and adjoint sweep
+   * and it can stop them
+   */
+  private Budget budget = null;
+
+  /*
+   * Split ratios at the origins copied by the simulations that do not use the
+   * ones of the simulator. It is never modified
+   */
+  private IntertemporalOriginsSplitRatios split_ratios_template;
+
+  /* Assembler of dH/du keeping its sparsity structure */
+  private SparseMatrixBuilder dhdu_builder;
+
   public SOPC_Optimizer(Simulator simulator) {
     this.simulator = simulator;
 
@@ -103,14 +141,21 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
         aggregate_split_ratios_position + size_aggregate_split_ratios;
     f_in_position = f_out_position + size_f_out_block;
 
+    /* The structure of dH/du is computed once and reused */
+    dhdu_builder = new SparseMatrixBuilder(x_block_size * T,
+        temporal_control_block_size * T);
+
     simulator.initializSplitRatios();
+    split_ratios_template = simulator.splits.copy();
   }
 
   /**
    * @brief Forward simulate after having loaded the external split ratios for
    *        compliant commodities
    * @details For now we even put the zero split ratios because we never clear
-   *          the split ratios
+   *          the split ratios.
+   *          If the control has already been simulated, the state stored in
+   *          the StateCache is returned. It must not be modified.
    */
   public State forwardSimulate(double[] control) {
     return forwardSimulate(control, false);
@@ -118,7 +163,147 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
 
   public State forwardSimulate(double[] control, boolean debug) {
 
-    IntertemporalOriginsSplitRatios splits = simulator.splits;
+    double[][] sum_of_split_ratios = loadControl(control, simulator.splits);
+
+    /* The split ratios are loaded even for a cached state */
+    if (!debug) {
+      State state = validStateCache().get(control);
+      if (state != null)
+        return state;
+    }
+
+    if (budget != null)
+      budget.simulations(1);
+    State state = simulator.run(debug);
+    /* At the end we add the sum of the split ratios at the state */
+    state.sum_of_split_ratios = sum_of_split_ratios;
+    state_cache.put(control, state);
+
+    return state;
+  }
+
+  /**
+   * @brief Forward simulate only from first_step on
+   * @details The control must be the one of prefix before first_step. The
+   *          state is the same as the one given by forwardSimulate(control)
+   *          and it is stored in the StateCache.
+   * @see Simulator#runFrom
+   */
+  public State forwardSimulateFrom(State prefix, int first_step,
+      double[] control) {
+    double[][] sum_of_split_ratios = loadControl(control, simulator.splits);
+
+    State state = validStateCache().get(control);
+    if (state != null)
+      return state;
+
+    if (budget != null)
+      budget.simulations(1);
+    state = simulator.runFrom(prefix, first_step, simulator.splits);
+    state.sum_of_split_ratios = sum_of_split_ratios;
+    state_cache.put(control, state);
+
+    return state;
+  }
+
+  /**
+   * @brief Evaluates the objective at several controls with concurrent
+   *        forward simulations
+   * @details The controls that are not in the StateCache are split among the
+   *          threads of the WorkerPool. Every task simulates with its own
+   *          copy of the split ratios at the origins, and the network is only
+   *          read. The simulated states are stored in the StateCache so that
+   *          the gradient at the chosen control does not simulate again.
+   */
+  @Override
+  public double[] objectives(final double[][] controls) {
+    final double[] result = new double[controls.length];
+    final State[] states = new State[controls.length];
+    final int[] missing = new int[controls.length];
+    int nb_missing = 0;
+    validStateCache();
+    for (int i = 0; i < controls.length; i++) {
+      states[i] = state_cache.get(controls[i]);
+      if (states[i] == null)
+        missing[nb_missing++] = i;
+    }
+
+    if (budget != null)
+      budget.simulations(nb_missing);
+    final Demands demands = simulator.origin_demands;
+    int nb_tasks = Math.min(WorkerPool.getNb_threads(), nb_missing);
+    WorkerPool.run(nb_tasks, nb_missing, new WorkerPool.RangeTask() {
+      @Override
+      public void run(int task, int begin, int end) {
+        /* Workspace of the task */
+        IntertemporalOriginsSplitRatios task_splits =
+            split_ratios_template.copy();
+        for (int m = begin; m < end; m++) {
+          int i = missing[m];
+          states[i] = simulate(controls[i], demands, task_splits);
+        }
+      }
+    });
+
+    for (int m = 0; m < nb_missing; m++)
+      state_cache.put(controls[missing[m]], states[missing[m]]);
+    for (int i = 0; i < controls.length; i++)
+      result[i] = objective(states[i], controls[i]);
+    return result;
+  }
+
+  /**
+   * @brief Simulates every control with its demands
+   * @details The simulations do not modify the simulator, its split ratios or
+   *          the StateCache: every task of the WorkerPool works with its own
+   *          copy of the split ratios at the origins and the network is only
+   *          read. So several threads can call it at the same time on the
+   *          same optimizer, and the scenarios share one network in memory.
+   * @param demands
+   *          The demands of every scenario. They are only read
+   * @return The state of every scenario, with the sum of the split ratios
+   */
+  public State[] simulate(final double[][] controls, final Demands[] demands) {
+    assert controls.length == demands.length : "Every control needs demands";
+    if (budget != null)
+      budget.simulations(controls.length);
+
+    final State[] states = new State[controls.length];
+    int nb_tasks = Math.min(WorkerPool.getNb_threads(), controls.length);
+    WorkerPool.run(nb_tasks, controls.length, new WorkerPool.RangeTask() {
+      @Override
+      public void run(int task, int begin, int end) {
+        /* Workspace of the task */
+        IntertemporalOriginsSplitRatios task_splits =
+            split_ratios_template.copy();
+        for (int i = begin; i < end; i++)
+          states[i] = simulate(controls[i], demands[i], task_splits);
+      }
+    });
+    return states;
+  }
+
+  /**
+   * @brief Simulates the control with the given demands in the given
+   *        workspace of split ratios
+   */
+  private State simulate(double[] control, Demands demands,
+      IntertemporalOriginsSplitRatios splits) {
+    double[][] sum_of_split_ratios = loadControl(control, splits);
+    State state = simulator.run(splits, demands, false);
+    state.sum_of_split_ratios = sum_of_split_ratios;
+    return state;
+  }
+
+  /**
+   * @brief Loads the control in the split ratios of the compliant commodities
+   * @param splits
+   *          The split ratios to modify. It can be a copy of the split ratios
+   *          of the simulator
+   * @return The sum of the split ratios at every origin for every time step
+   */
+  protected double[][] loadControl(double[] control,
+      IntertemporalOriginsSplitRatios splits) {
 
     int index_in_control = 0;
     int commodity, coordinate;
@@ -147,13 +332,30 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
         }
         index_in_control++;
       }
-
     }
-    State state = simulator.run(debug);
-    /* At the end we add the sum of the split ratios at the state */
-    state.sum_of_split_ratios = sum_of_split_ratios;
 
-    return state;
+    return sum_of_split_ratios;
+  }
+
+  /**
+   * @return The cache of the states given by forwardSimulate
+   */
+  public StateCache getStateCache() {
+    return validStateCache();
+  }
+
+  /**
+   * @return The StateCache, cleared if the initial profiles or the demands of
+   *         the simulator changed since the states were stored
+   */
+  private synchronized StateCache validStateCache() {
+    if (cache_version != simulator.getVersion()
+        || cache_demands != simulator.origin_demands) {
+      state_cache.clear();
+      cache_version = simulator.getVersion();
+      cache_demands = simulator.origin_demands;
+    }
+    return state_cache;
   }
 
   /**
@@ -206,9 +408,66 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
 
   @Override
   public double[] getStartingPoint() {
+    if (starting_point != null)
+      return starting_point.clone();
     return getControl();
   }
 
+  /**
+   * @return The control sending all the compliant flow of every origin on the
+   *         path with the smallest free-flow travel time
+   */
+  public double[] freeFlowControl() {
+    double[] control = new double[T * temporal_control_block_size];
+    int index = 0;
+    for (int o = 0; o < O; o++) {
+      int best_index = -1;
+      double best_time = Double.POSITIVE_INFINITY;
+      Iterator<Integer> it = sources[o].getCompliant_commodities().iterator();
+      while (it.hasNext()) {
+        double time = simulator.discretized_graph.getFreeFlowTravelTime(
+            it.next());
+        if (time < best_time) {
+          best_time = time;
+          best_index = index;
+        }
+        index++;
+      }
+      if (best_index != -1)
+        for (int k = 0; k < T; k++)
+          control[k * temporal_control_block_size + best_index] = 1;
+    }
+    return control;
+  }
+
+  /**
+   * @brief Sets the point where the gradient descents begin
+   * @param starting_point
+   *          The starting control. If it is null, the split ratios of the
+   *          simulator are used
+   */
+  public void setStartingPoint(double[] starting_point) {
+    if (starting_point == null) {
+      this.starting_point = null;
+      return;
+    }
+    assert starting_point.length == T * temporal_control_block_size;
+    this.starting_point = starting_point.clone();
+  }
+
+  public Budget getBudget() {
+    return budget;
+  }
+
+  /**
+   * @param budget
+   *          The budget checked before every forward simulation and adjoint
+   *          sweep. null removes it
+   */
+  public void setBudget(Budget budget) {
+    this.budget = budget;
+  }
+
   /**
    * @details This function imposes that the control is physical (every split
    *          ratio is positive)
@@ -237,480 +496,581 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
     return simulator.objective(state);
   }
 
-  /* Returns the position of rho(i, c)(k) */
-  private int rho(int k, int i, int c) {
-    return k * x_block_size + (C + 1) * i + c;
+  /**
+   * @brief Computes lambda by solving the adjoint equations
+   * @return The adjoint vector in the layout of the state vector X
+   */
+  public DoubleMatrix1D lambdaByAdjointMethod(State state, double[] control) {
+    return compactLambdaByAdjointMethod(state, control).toStateLayout(
+        x_block_size, f_out_position, f_in_position);
   }
 
-  private int f_in(int k, int i, int c) {
-    return k * x_block_size + f_in_position + (C + 1) * i + c;
+  /**
+   * @brief Computes lambda by solving the adjoint equations
+   * @details Only the densities, out-flows and in-flows blocks are stored
+   * @return The compact adjoint vector
+   */
+  public AdjointVector compactLambdaByAdjointMethod(State state,
+      double[] control) {
+
+    AdjointVector lambda = new AdjointVector(T, cells.length, C);
+    adjointSweep(state, lambda, null);
+    return lambda;
   }
 
-  private int f_out(int k, int i, int c) {
-    return k * x_block_size + f_out_position + (C + 1) * i + c;
+  /**
+   * @brief Solves the adjoint equations backward in time
+   * @details The equations at time step k only read lambda at time steps k
+   *          and k+1, so lambda can be stored on two time slices only.
+   *          Within a time step, the cells and then the junctions are solved
+   *          in parallel on the WorkerPool. The junction terms added to
+   *          lambda(rho(k)) are first stored in one JunctionDerivatives per
+   *          task and then added in the order of the junctions, so the result
+   *          does not depend on the number of tasks.
+   * @param lambda
+   *          The adjoint vector to fill in
+   * @param gradient
+   *          If not null, it is filled in with the gradient dH/dU^T * lambda
+   *          while the sweep goes on
+   */
+  private void adjointSweep(final State state, final AdjointVector lambda,
+      double[] gradient) {
+    adjointSweep(state, lambda, gradient, 0);
   }
 
-  public DoubleMatrix1D lambdaByAdjointMethod(State state, double[] control) {
+  /**
+   * @brief Solves the adjoint equations backward in time down to first_step
+   * @details lambda is only computed for the time steps from first_step on,
+   *          which is enough for the gradient with respect to the control of
+   *          these time steps
+   */
+  private void adjointSweep(final State state, final AdjointVector lambda,
+      double[] gradient, int first_step) {
 
-    DoubleMatrix1D lambda = new DenseDoubleMatrix1D(T * x_block_size);
-    double delta_t = simulator.time_discretization.getDelta_t();
-    IntertemporalSplitRatios internal_SR =
+    if (budget != null)
+      budget.check();
+    final double delta_t = simulator.time_discretization.getDelta_t();
+    final IntertemporalSplitRatios internal_SR =
         simulator.lwr_network.getInternal_split_ratios();
 
-    for (int k = T - 1; k >= 0; k--) {
+    int nb_cell_tasks = WorkerPool.nbTasks(cells.length);
+    int nb_junction_tasks = WorkerPool.nbTasks(junctions.length);
+    final JunctionDerivatives[] derivatives =
+        new JunctionDerivatives[nb_junction_tasks];
+    for (int t = 0; t < nb_junction_tasks; t++)
+      derivatives[t] = new JunctionDerivatives();
 
-      if (k < T - 1) {
-        /* We first solve f_in */
-        for (int cell_id = 0; cell_id < cells.length; cell_id++) {
-          for (int c = 0; c < (C + 1); c++) {
-            if (!cells[cell_id].isBuffer() && !cells[cell_id].isSink()) {
-              double value = delta_t / cells[cell_id].getLength()
-                  * lambda.get(rho(k + 1, cell_id, c));
-              assert Numerical.validNumber(value);
-              lambda.set(f_in(k, cell_id, c), value);
-            }
-          }
-        }
-      }
+    for (int k = T - 1; k >= first_step; k--) {
+      final int time_step = k;
 
-      /* We solve f_out */
-      for (int junction_id = 0; junction_id < junctions.length; junction_id++) {
-        Junction junction = junctions[junction_id];
+      /* The slice of time step k may still contain time step k+2 */
+      lambda.clear(k);
 
-        Cell[] in_links = junction.getPrev();
-        Cell[] out_links = junction.getNext();
-        JunctionSplitRatios junction_SR = internal_SR.get(k, junction_id);
+      WorkerPool.run(nb_cell_tasks, cells.length, new WorkerPool.RangeTask() {
+        @Override
+        public void run(int task, int begin, int end) {
+          solveCellsAdjoint(time_step, begin, end, lambda, delta_t);
+        }
+      });
+
+      WorkerPool.run(nb_junction_tasks, junctions.length,
+          new WorkerPool.RangeTask() {
+            @Override
+            public void run(int task, int begin, int end) {
+              solveOutFlowsAdjoint(time_step, begin, end, lambda,
+                  internal_SR, delta_t);
+              derivatives[task].clear();
+              if (time_step < T - 1)
+                junctionsDerivatives(time_step, begin, end, state,
+                    internal_SR, delta_t, derivatives[task]);
+            }
+          });
 
-        for (int c = 0; c < (C + 1); c++) {
-          for (int in_link = 0; in_link < in_links.length; in_link++) {
-            int in_link_id = in_links[in_link].getUniqueId();
-
-            double value = 0;
-            for (int out_link = 0; out_link < out_links.length; out_link++) {
-              int out_link_id = out_links[out_link].getUniqueId();
-
-              double beta;
-              /* For the Nx1 junctions the split ratios are always 1 */
-              if (junction.isMergingJunction()) {
-                assert junction_SR == null;
-                beta = 1;
-                /* For other junctions, it is registered except if it is 0 */
-              } else {
-                assert junction_SR != null;
-                Double beta_res = junction_SR.get(in_link_id, out_link_id, c);
+      /* Deterministic reduction of the junction terms */
+      for (int t = 0; t < nb_junction_tasks; t++)
+        derivatives[t].addAdjointTerms(lambda, k);
 
-                if (beta_res == null)
-                  continue;
-                beta = beta_res.doubleValue();
-              }
-              value += beta * lambda.get(f_in(k, out_link_id, c));
-            }
+      if (gradient != null)
+        accumulateGradient(k, lambda, gradient);
+    }
+  }
 
-            if (k < T - 1)
-              value -= delta_t / cells[in_link_id].getLength() *
-                  lambda.get(rho(k + 1, in_link_id, c));
+  /**
+   * @brief Solves f_in(k) and initializes rho(k) for the cells [begin, end)
+   */
+  private void solveCellsAdjoint(int k, int begin, int end,
+      AdjointVector lambda, double delta_t) {
 
+    if (k < T - 1) {
+      /* We first solve f_in */
+      for (int cell_id = begin; cell_id < end; cell_id++) {
+        for (int c = 0; c < (C + 1); c++) {
+          if (!cells[cell_id].isBuffer() && !cells[cell_id].isSink()) {
+            double value = delta_t / cells[cell_id].getLength()
+                * lambda.get(lambda.rho(k + 1, cell_id, c));
             assert Numerical.validNumber(value);
-            lambda.set(f_out(k, in_link_id, c), value);
+            lambda.set(lambda.f_in(k, cell_id, c), value);
           }
         }
       }
+    }
 
-      /* We solve the aggregate split ratios */
-      /*
-       * int aggregate_index = 0;
-       * for (int j_id = 0; j_id < junctions.length; j_id++) {
-       * Junction junction = junctions[j_id];
-       * JunctionInfo junction_info = state.get(k).getJunction(j_id);
-       * Cell[] in_links = junction.getPrev();
-       * Cell[] out_links = junction.getNext();
-       * int nb_prev = in_links.length;
-       * int nb_next = out_links.length;
-       * 
-       * // The split ratios are not used for Nx1 junctions
-       * if (junction.isMergingJunction())
-       * continue;
-       * 
-       * if (nb_prev != 1) {
-       * System.out.println("The (n>1)xm junctions are not implemented");
-       * System.exit(1);
-       * }
-       * assert nb_prev == 1;
-       * assert nb_next > 1;
-       * for (int in_link = 0; in_link < nb_prev; in_link++) {
-       * for (int out_link = 0; out_link < nb_next; out_link++) {
-       * int in_link_id = in_links[in_link].getUniqueId();
-       * CellInfo in_cell_info = state.get(k).getCell(in_link_id);
-       * double total_density = in_cell_info.total_density;
-       * if (total_density == 0)
-       * continue;
-       * 
-       * if (junction_info.is_supply_limited()) {
-       * assert total_density != 0;
-       * int limiting_supply = state.get(k).junction_info[j_id]
-       * .getLimiting_supply();
-       * assert limiting_supply != -1;
-       * Double beta = state.get(k).junction_info[j_id].getAggregateSR(
-       * in_link_id, limiting_supply);
-       * assert beta != null;
-       * double out_flow = state.get(k).junction_info[j_id]
-       * .getFlowOut(in_link_id);
-       * 
-       * double value = 0;
-       * for (int c = 0; c < C + 1; c++) {
-       * Double partial_density = in_cell_info.partial_densities.get(c);
-       * if (partial_density == null)
-       * continue;
-       * value -= partial_density / total_density / beta * out_flow;
-       * }
-       * lambda.set(k * x_block_size + aggregate_split_ratios_position
-       * + aggregate_index + in_link * nb_next
-       * + out_link, value);
-       * }
-       * // If it is not supply limited, the split ratios has no effect
-       * else {
-       * // lambda.set(k * x_block_size + aggregate_split_ratios_position
-       * // + aggregate_index + in_link * nb_next
-       * // + out_link, 0); // Double.NaN
-       * }
-       * }
-       * }
-       * aggregate_index += nb_prev * nb_next;
-       * }
-       */
-
-      /* We solve the partial densities */
-      for (int cell_id = 0; cell_id < cells.length; cell_id++) {
-        /* The increase of the density of a sink has no influence */
-        if (cells[cell_id].isSink())
-          continue;
-        for (int c = 0; c < (C + 1); c++) {
-          double value = cells[cell_id].getLength();
-          if (k < T - 1)
-            value += lambda.get(rho(k + 1, cell_id, c));
-          assert Numerical.validNumber(value);
-          lambda.set(rho(k, cell_id, c), value);
-        }
+    /* We solve the partial densities without the junction terms */
+    for (int cell_id = begin; cell_id < end; cell_id++) {
+      /* The increase of the density of a sink has no influence */
+      if (cells[cell_id].isSink())
+        continue;
+      for (int c = 0; c < (C + 1); c++) {
+        double value = cells[cell_id].getLength();
+        if (k < T - 1)
+          value += lambda.get(lambda.rho(k + 1, cell_id, c));
+        assert Numerical.validNumber(value);
+        lambda.set(lambda.rho(k, cell_id, c), value);
       }
+    }
+  }
 
-      if (k == T - 1)
-        continue;
+  /**
+   * @brief Solves f_out(k) for the incoming links of the junctions
+   *        [begin, end)
+   * @details f_in(k) must already be solved
+   */
+  private void solveOutFlowsAdjoint(int k, int begin, int end,
+      AdjointVector lambda, IntertemporalSplitRatios internal_SR,
+      double delta_t) {
+
+    for (int junction_id = begin; junction_id < end; junction_id++) {
+      Junction junction = junctions[junction_id];
+
+      Cell[] in_links = junction.getPrev();
+      Cell[] out_links = junction.getNext();
+      JunctionSplitRatios junction_SR = internal_SR.get(k, junction_id);
+
+      for (int c = 0; c < (C + 1); c++) {
+        for (int in_link = 0; in_link < in_links.length; in_link++) {
+          int in_link_id = in_links[in_link].getUniqueId();
+
+          double value = 0;
+          for (int out_link = 0; out_link < out_links.length; out_link++) {
+            int out_link_id = out_links[out_link].getUniqueId();
+
+            double beta;
+            /* For the Nx1 junctions the split ratios are always 1 */
+            if (junction.isMergingJunction()) {
+              assert junction_SR == null;
+              beta = 1;
+              /* For other junctions, it is registered except if it is 0 */
+            } else {
+              assert junction_SR != null;
+              Double beta_res = junction_SR.get(in_link_id, out_link_id, c);
 
-      for (int j_id = 0; j_id < junctions.length; j_id++) {
-        Junction junction = junctions[j_id];
-        JunctionInfo junction_info = state.get(k).getJunction(j_id);
-        Cell[] in_links = junction.getPrev();
-        Cell[] out_links = junction.getNext();
-        int nb_prev = in_links.length;
-        int nb_next = out_links.length;
+              if (beta_res == null)
+                continue;
+              beta = beta_res.doubleValue();
+            }
+            value += beta * lambda.get(lambda.f_in(k, out_link_id, c));
+          }
 
-        // 1xN junctions
-        if (nb_prev == 1) {
-          if (junction_info.is_demand_limited()) {
+          if (k < T - 1)
+            value -= delta_t / cells[in_link_id].getLength() *
+                lambda.get(lambda.rho(k + 1, in_link_id, c));
 
-            int limiting_demand_id = in_links[0].getUniqueId();
-            double total_density = state.get(k).getCell(limiting_demand_id).total_density;
+          assert Numerical.validNumber(value);
+          lambda.set(lambda.f_out(k, in_link_id, c), value);
+        }
+      }
+    }
+  }
 
+  /**
+   * @brief Computes the derivatives of the out-flows of the junctions
+   *        [begin, end) with respect to the partial densities at time step k
+   * @details They give the terms of the adjoint equations of the junctions:
+   *          lambda(rho(k)) += d f_out(k) / d rho(k) * lambda(f_out(k))
+   */
+  void junctionsDerivatives(int k, int begin, int end, State state,
+      IntertemporalSplitRatios internal_SR, double delta_t,
+      JunctionDerivatives derivatives) {
+
+    for (int j_id = begin; j_id < end; j_id++) {
+      Junction junction = junctions[j_id];
+      JunctionInfo junction_info = state.get(k).getJunction(j_id);
+      Cell[] in_links = junction.getPrev();
+      Cell[] out_links = junction.getNext();
+      int nb_prev = in_links.length;
+      int nb_next = out_links.length;
+
+      // 1xN junctions
+      if (nb_prev == 1) {
+        if (junction_info.is_demand_limited()) {
+
+          int limiting_demand_id = in_links[0].getUniqueId();
+          double total_density = state.get(k).getCell(limiting_demand_id).total_density;
+          double coefficient =
+              in_links[0].getDerivativeDemand(total_density, delta_t);
+          assert Numerical.validNumber(coefficient);
+
+          for (int c = 0; c < (C + 1); c++)
+            derivatives.add(limiting_demand_id, c, limiting_demand_id, c,
+                coefficient);
+
+        } else if (junction_info.is_supply_limited()) {
+          int limiting_outgoing_link_id = junction_info.getLimiting_supply();
+          Cell limiting_outgoing_link = cells[limiting_outgoing_link_id];
+
+          int in_cell_id = in_links[0].getUniqueId();
+          CellInfo in_cell = state.get(k).getCell(in_cell_id);
+          double total_density = in_cell.total_density;
+          assert total_density != 0;
+
+          Double aggr_beta = junction_info.getAggregateSR(in_cell_id,
+              limiting_outgoing_link_id);
+          assert (aggr_beta != 0 && aggr_beta != null);
+
+          double limiting_density = state
+              .get(k)
+              .getCell(limiting_outgoing_link).total_density;
+          double backspeed = limiting_outgoing_link
+              .getDerivativeSupply(limiting_density);
+
+          /* We compute the upstream effect */
+          for (int c_rho = 0; c_rho < (C + 1); c_rho++) {
             for (int c = 0; c < (C + 1); c++) {
-              double value = lambda.get(rho(k, limiting_demand_id, c))
-                  + in_links[0].getDerivativeDemand(total_density, delta_t)
-                  * lambda.get(f_out(k, limiting_demand_id, c));
+              Double partial_density = in_cell.partial_densities.get(c);
+
+              if (partial_density == null)
+                continue;
+              double value = backspeed * partial_density / total_density
+                  / aggr_beta;
               assert Numerical.validNumber(value);
-              lambda.set(rho(k, limiting_demand_id, c), value);
+              derivatives.add(limiting_outgoing_link_id, c_rho,
+                  in_cell_id, c, value);
             }
+          }
 
-          } else if (junction_info.is_supply_limited()) {
-            int limiting_outgoing_link_id = junction_info.getLimiting_supply();
-            Cell limiting_outgoing_link = cells[limiting_outgoing_link_id];
-            // 1xN junctions
-            if (nb_prev == 1) {
-
-              int in_cell_id = in_links[0].getUniqueId();
-              CellInfo in_cell = state.get(k).getCell(in_cell_id);
-              double total_density = in_cell.total_density;
-              assert total_density != 0;
-              double value = 0;
-
-              Double aggr_beta = junction_info.getAggregateSR(in_cell_id,
-                  limiting_outgoing_link_id);
-              assert (aggr_beta != 0 && aggr_beta != null);
-
-              /* We compute the upstream effect */
-              for (int c = 0; c < (C + 1); c++) {
-                Double partial_density = in_cell.partial_densities.get(c);
-
-                if (partial_density == null)
-                  continue;
-                value += partial_density / total_density / aggr_beta *
-                    lambda.get(f_out(k, in_cell_id, c));
-              }
-              double limiting_density = state
-                  .get(k)
-                  .getCell(limiting_outgoing_link).total_density;
-              double backspeed = limiting_outgoing_link
-                  .getDerivativeSupply(limiting_density);
+          /* We compute the downstream effect */
+          double supply = junction_info.getFlowOut(in_cell_id) * aggr_beta;
+          JunctionSplitRatios JSR = internal_SR.get(k, j_id);
+          /* Update of rho(k, in_cell_id, c) */
+          for (int c = 0; c < (C + 1); c++) {
+            double SR;
+            if (JSR == null) {
+              SR = 1;
+            } else {
+              Double res = JSR.get(in_cell_id, limiting_outgoing_link_id, c);
+              if (res == null)
+                SR = 0;
+              else
+                SR = res.doubleValue();
+            }
 
-              value = backspeed * value;
+            for (int c2 = 0; c2 < (C + 1); c2++) {
+              Double partial_density = in_cell.partial_densities.get(c2);
+              double tmp_value = 0;
+              if (partial_density == null)
+                partial_density = 0.0;
 
-              assert Numerical.validNumber(value);
-              for (int c = 0; c < (C + 1); c++) {
-                lambda.set(rho(k, limiting_outgoing_link_id, c),
-                    lambda.get(rho(k, limiting_outgoing_link_id, c)) + value);
+              if (c2 == c) {
+                tmp_value =
+                    (total_density * aggr_beta) - partial_density * SR;
+              } else {
+                tmp_value = -partial_density * SR;
               }
 
-              /* We compute the downstream effect */
-              double supply = junction_info.getFlowOut(in_cell_id) * aggr_beta;
-              double rho_aggrSR = total_density * aggr_beta;
-              /* Update of rho(k, in_cell_id, c) */
-              for (int c = 0; c < (C + 1); c++) {
-
-                for (int c2 = 0; c2 < (C + 1); c2++) {
-                  Double partial_density = in_cell.partial_densities.get(c2);
-                  double tmp_value = 0;
-                  if (partial_density == null)
-                    partial_density = 0.0;
-
-                  JunctionSplitRatios JSR = internal_SR.get(k, j_id);
-                  double SR;
-                  if (JSR == null) {
-                    SR = 1;
-                  } else {
-                    Double res = JSR.get(in_cell_id, limiting_outgoing_link_id,
-                        c);
-                    if (res == null)
-                      SR = 0;
-                    else
-                      SR = res.doubleValue();
-                  }
-                  if (c2 == c) {
-                    tmp_value =
-                        (total_density * aggr_beta) - partial_density * SR;
-                  } else {
-                    tmp_value = -partial_density * SR;
-                  }
-
-                  tmp_value *= supply / (total_density * aggr_beta)
-                      / (total_density * aggr_beta);
-                  assert Numerical.validNumber(tmp_value);
-                  lambda.set(rho(k, in_cell_id, c),
-                      lambda.get(rho(k, in_cell_id, c)) + tmp_value
-                          * lambda.get(f_out(k, in_cell_id, c2)));
-                }
-
-              }
-            } else {
-              System.out.println("Case not handled yet");
-              System.exit(1);
+              tmp_value *= supply / (total_density * aggr_beta)
+                  / (total_density * aggr_beta);
+              assert Numerical.validNumber(tmp_value);
+              derivatives.add(in_cell_id, c, in_cell_id, c2, tmp_value);
             }
-          } else {
-            printAlert(j_id, k);
-            // System.out.println(junction_info.toString());
           }
-          // 2x1 junctions
-        } else if (nb_prev == 2 && nb_next == 1) {
+        } else {
+          printAlert(j_id, k);
+          // System.out.println(junction_info.toString());
+        }
+        // 2x1 junctions
+      } else if (nb_prev == 2 && nb_next == 1) {
+
+        int demand_priority = junction_info.getPriority_2x1_demand();
+        int[] list = new int[] { in_links[0].getUniqueId(),
+            in_links[1].getUniqueId() };
+
+        if (junction_info.is_demand_limited()) {
+
+          // We compute the downstream cost for the links
+          for (int i = 0; i < 2; i++) {
+            int id = list[i];
+            CellInfo info = state
+                .get(k)
+                .getCell(id);
+            double total_density = info.total_density;
+            double coefficient = cells[id].getDerivativeDemand(
+                total_density,
+                delta_t);
+            if (coefficient != 0)
+              for (int c = 0; c < (C + 1); c++)
+                derivatives.add(id, c, id, c, coefficient);
+          }
 
-          int demand_priority = junction_info.getPriority_2x1_demand();
+        } else if (!junction_info.is_supply_limited()) {
+          printAlert(j_id, k);
 
           // The junction exactly respects the priority constraint
-          if (demand_priority == -1) {
-            if (junction_info.is_demand_limited()) {
-
-              int[] list = new int[] { in_links[0].getUniqueId(),
-                  in_links[1].getUniqueId() };
-              // We compute the downstream cost for the links
-              for (int i = 0; i < 2; i++) {
-                int id = list[i];
-                CellInfo info = state
-                    .get(k)
-                    .getCell(id);
-                double total_density = info.total_density;
-                double coefficient = cells[id].getDerivativeDemand(
-                    total_density,
-                    delta_t);
-                if (coefficient != 0)
-                  for (int c = 0; c < (C + 1); c++) {
-                    lambda.set(rho(k, id, c),
-                        lambda.get(rho(k, id, c)) + coefficient
-                            * lambda.get(f_out(k, id, c)));
-                  }
-              }
-
-            } else if (junction_info.is_supply_limited()) {
-
-              int[] list = new int[] { in_links[0].getUniqueId(),
-                  in_links[1].getUniqueId() };
-              // We compute the downstream cost for the incoming links
-              for (int i = 0; i < 2; i++) {
-                int id = list[i];
-                CellInfo info = state
-                    .get(k)
-                    .getCell(id);
-                double total_density = info.total_density;
-                if (total_density == 0) {
-                  System.err.println("[Critical]Junction " + j_id
-                      + " at time step " + k
-                      + " is supply limited and has zero flow");
-                  System.exit(1);
-                }
-                double flow = junction_info.getFlowOut(id);
-
-                double common_value = 0;
-                for (int c = 0; c < (C + 1); c++) {
-                  Double partial_density = info.partial_densities.get(c);
-                  if (partial_density == null || partial_density == 0)
-                    continue;
-                  common_value += partial_density / total_density
-                      * lambda.get(f_out(k, id, c));
-                }
-
-                assert Numerical.validNumber(common_value);
-                for (int c = 0; c < (C + 1); c++) {
-                  lambda.set(rho(k, id, c),
-                      lambda.get(rho(k, id, c)) +
-                          flow / total_density *
-                          (lambda.get(f_out(k, id, c)) - common_value));
-                }
-              }
-
-              // We compute the upsteam cost for the outgoing link
-              int out_id = out_links[0].getUniqueId();
-              double coefficient = cells[out_id].getDerivativeSupply(state
-                  .get(k)
-                  .getCell(out_id).total_density);
-              if (coefficient == 0)
-                continue;
-
-              double value = 0;
-              for (int i = 0; i < 2; i++) {
-                int id = list[i];
-                CellInfo info = state
-                    .get(k)
-                    .getCell(id);
-                double total_density = info.total_density;
-                Double priority = junctions[j_id].getPriority(id);
-                assert total_density != 0 && priority != 0
-                    && priority != null;
-
-                for (int c = 0; c < (C + 1); c++) {
-                  Double partial_density = info.partial_densities.get(c);
-                  if (partial_density == null || partial_density == 0)
-                    continue;
-                  value += partial_density * priority / total_density
-                      * lambda.get(f_out(k, id, c));
-                }
-              }
-              value *= coefficient;
-
-              for (int c = 0; c < (C + 1); c++) {
-                lambda.set(rho(k, out_id, c),
-                    lambda.get(rho(k, out_id, c)) + value);
-              }
-            } else {
-              printAlert(j_id, k);
+        } else if (demand_priority == -1) {
+
+          // We compute the downstream cost for the incoming links
+          for (int i = 0; i < 2; i++) {
+            int id = list[i];
+            CellInfo info = state
+                .get(k)
+                .getCell(id);
+            double total_density = info.total_density;
+            if (total_density == 0) {
+              System.err.println("[Critical]Junction " + j_id
+                  + " at time step " + k
+                  + " is supply limited and has zero flow");
+              System.exit(1);
             }
+            double flow = junction_info.getFlowOut(id);
+            double coefficient = flow / total_density;
+            assert Numerical.validNumber(coefficient);
 
-          } else {
-            // The junction does not respect the priority constraint and link
-            // demand_priority has its demand fulfilled while the other one has
-            // not
-            if (junction_info.is_demand_limited()) {
-
-              int[] list = new int[] { in_links[0].getUniqueId(),
-                  in_links[1].getUniqueId() };
-              // We compute the downstream cost for the links
-              for (int i = 0; i < 2; i++) {
-                int id = list[i];
-                CellInfo info = state
-                    .get(k)
-                    .getCell(id);
-                double total_density = info.total_density;
-                double coefficient = cells[id].getDerivativeDemand(
-                    total_density,
-                    delta_t);
-                if (coefficient != 0)
-                  for (int c = 0; c < (C + 1); c++) {
-                    lambda.set(rho(k, id, c),
-                        lambda.get(rho(k, id, c)) + coefficient
-                            * lambda.get(f_out(k, id, c)));
-                  }
-              }
-            } else if (junction_info.is_supply_limited()) {
-
-              int not_satisfied_link = -1;
-              if (demand_priority == in_links[0].getUniqueId())
-                not_satisfied_link = in_links[1].getUniqueId();
-              else if (demand_priority == in_links[1].getUniqueId())
-                not_satisfied_link = in_links[0].getUniqueId();
-              else {
-                System.out.println("Illegal not satisfied link");
-                System.exit(1);
+            for (int c = 0; c < (C + 1); c++) {
+              derivatives.add(id, c, id, c, coefficient);
+              for (int c2 = 0; c2 < (C + 1); c2++) {
+                Double partial_density = info.partial_densities.get(c2);
+                if (partial_density == null || partial_density == 0)
+                  continue;
+                derivatives.add(id, c, id, c2,
+                    -coefficient * partial_density / total_density);
               }
+            }
+          }
 
+          // We compute the upsteam cost for the outgoing link
+          int out_id = out_links[0].getUniqueId();
+          double coefficient = cells[out_id].getDerivativeSupply(state
+              .get(k)
+              .getCell(out_id).total_density);
+          if (coefficient == 0)
+            continue;
+
+          for (int c_rho = 0; c_rho < (C + 1); c_rho++) {
+            for (int i = 0; i < 2; i++) {
+              int id = list[i];
               CellInfo info = state
                   .get(k)
-                  .getCell(not_satisfied_link);
+                  .getCell(id);
               double total_density = info.total_density;
+              Double priority = junctions[j_id].getPriority(id);
+              assert total_density != 0 && priority != 0
+                  && priority != null;
 
-              if (total_density == 0) {
-                System.err.println("[Critical]Junction " + j_id
-                    + " at time step " + k
-                    + " is supply limited and has zero flow");
-                System.exit(1);
-              }
-              double value = 0;
               for (int c = 0; c < (C + 1); c++) {
                 Double partial_density = info.partial_densities.get(c);
                 if (partial_density == null || partial_density == 0)
                   continue;
-                value += partial_density / total_density
-                    * lambda.get(f_out(k, not_satisfied_link, c));
+                derivatives.add(out_id, c_rho, id, c, coefficient
+                    * partial_density * priority / total_density);
               }
+            }
+          }
 
-              // We compute the downstream cost for the incoming links
-              double coef = cells[demand_priority].getDerivativeDemand(state
-                  .get(k)
-                  .getCell(demand_priority).total_density,
-                  delta_t);
-              for (int c = 0; c < (C + 1); c++) {
-                lambda.set(rho(k, demand_priority, c),
-                    lambda.get(rho(k, demand_priority, c)) +
-                        coef
-                        * (lambda.get(f_out(k, demand_priority, c)) - value));
-              }
-              coef = junction_info.getFlowOut(not_satisfied_link) /
-                  state
-                      .get(k)
-                      .getCell(not_satisfied_link).total_density;
-              assert (Numerical.validNumber(coef));
+        } else {
+          // The junction does not respect the priority constraint and link
+          // demand_priority has its demand fulfilled while the other one has
+          // not
+          int not_satisfied_link = -1;
+          if (demand_priority == in_links[0].getUniqueId())
+            not_satisfied_link = in_links[1].getUniqueId();
+          else if (demand_priority == in_links[1].getUniqueId())
+            not_satisfied_link = in_links[0].getUniqueId();
+          else {
+            System.out.println("Illegal not satisfied link");
+            System.exit(1);
+          }
 
-              for (int c = 0; c < (C + 1); c++) {
-                lambda.set(rho(k, demand_priority, c), lambda.get(rho(k,
-                    not_satisfied_link, c))
-                    + coef
-                    * (lambda.get(f_out(k, not_satisfied_link, c)) - value));
-              }
+          CellInfo info = state
+              .get(k)
+              .getCell(not_satisfied_link);
+          double total_density = info.total_density;
 
-              // We compute the upsteam cost for the outgoing link
-              int out_id = out_links[0].getUniqueId();
+          if (total_density == 0) {
+            System.err.println("[Critical]Junction " + j_id
+                + " at time step " + k
+                + " is supply limited and has zero flow");
+            System.exit(1);
+          }
 
-              coef = cells[out_id].getDerivativeSupply(state.get(k).getCell(
-                  out_id).total_density);
-              for (int c = 0; c < (C + 1); c++) {
-                lambda.set(rho(k, out_id, c),
-                    lambda.get(rho(k, out_id, c)) + coef * value);
-              }
-            } else {
-              printAlert(j_id, k);
+          // We compute the downstream cost for the incoming links
+          double coef = cells[demand_priority].getDerivativeDemand(state
+              .get(k)
+              .getCell(demand_priority).total_density,
+              delta_t);
+          double coef_not_satisfied = junction_info
+              .getFlowOut(not_satisfied_link) / total_density;
+          assert (Numerical.validNumber(coef_not_satisfied));
+          // We compute the upsteam cost for the outgoing link
+          int out_id = out_links[0].getUniqueId();
+          double coef_out = cells[out_id].getDerivativeSupply(state
+              .get(k)
+              .getCell(out_id).total_density);
+
+          for (int c = 0; c < (C + 1); c++) {
+            derivatives.add(demand_priority, c, demand_priority, c, coef);
+            derivatives.add(not_satisfied_link, c, not_satisfied_link, c,
+                coef_not_satisfied);
+            for (int c2 = 0; c2 < (C + 1); c2++) {
+              Double partial_density = info.partial_densities.get(c2);
+              if (partial_density == null || partial_density == 0)
+                continue;
+              double share = partial_density / total_density;
+              derivatives.add(demand_priority, c, not_satisfied_link, c2,
+                  -coef * share);
+              derivatives.add(not_satisfied_link, c, not_satisfied_link, c2,
+                  -coef_not_satisfied * share);
+              derivatives.add(out_id, c, not_satisfied_link, c2,
+                  coef_out * share);
             }
           }
+        }
+        // Other NxM junctions
+      } else {
+        nxmJunctionDerivatives(k, j_id, state, internal_SR, delta_t,
+            derivatives);
+      }
+    }
+  }
+
+  /**
+   * @brief Computes the derivatives of the out-flows of a NxM junction solved
+   *        by Junction.solveNxMJunction
+   * @details f_out(i,c) = theta * g(i,c) with g(i,c) = demand(i) * rho(i,c) /
+   *          rho(i). theta is 1 when the junction is demand limited and
+   *          supply(j) / sum_i beta(i,j) demand(i) when it is limited by the
+   *          supply of j. In the last case, theta depends on the densities of
+   *          all the incoming links and of j.
+   */
+  private void nxmJunctionDerivatives(int k, int j_id, State state,
+      IntertemporalSplitRatios internal_SR, double delta_t,
+      JunctionDerivatives derivatives) {
+
+    Junction junction = junctions[j_id];
+    JunctionInfo junction_info = state.get(k).getJunction(j_id);
+    Cell[] in_links = junction.getPrev();
+    int nb_prev = in_links.length;
+
+    boolean supply_limited = junction_info.is_supply_limited();
+    if (!supply_limited && !junction_info.is_demand_limited()) {
+      printAlert(j_id, k);
+      return;
+    }
+    int limiting_id = supply_limited ? junction_info.getLimiting_supply() : -1;
+    JunctionSplitRatios JSR = internal_SR.get(k, j_id);
+
+    double[] demand = new double[nb_prev];
+    double[] derivative_demand = new double[nb_prev];
+    double[] total_density = new double[nb_prev];
+    /* share[i][c] = rho(i,c) / rho(i) */
+    double[][] share = new double[nb_prev][C + 1];
+    /* beta[i][c] = beta(i, limiting_id, c) and aggr_beta[i] = beta(i, j) */
+    double[][] beta = new double[nb_prev][C + 1];
+    double[] aggr_beta = new double[nb_prev];
+    double requested = 0;
+
+    for (int i = 0; i < nb_prev; i++) {
+      CellInfo info = state.get(k).getCell(in_links[i]);
+      demand[i] = info.demand;
+      total_density[i] = info.total_density;
+      derivative_demand[i] =
+          in_links[i].getDerivativeDemand(total_density[i], delta_t);
+
+      for (int c = 0; c < (C + 1); c++) {
+        Double partial_density = info.partial_densities.get(c);
+        if (partial_density != null && total_density[i] != 0)
+          share[i][c] = partial_density / total_density[i];
+
+        if (!supply_limited)
+          continue;
+        if (JSR == null) {
+          beta[i][c] = 1;
         } else {
-          System.out.println("Case not handled yet");
-          System.exit(1);
+          Double res = JSR.get(in_links[i].getUniqueId(), limiting_id, c);
+          if (res != null)
+            beta[i][c] = res.doubleValue();
         }
+        aggr_beta[i] += share[i][c] * beta[i][c];
       }
+      requested += aggr_beta[i] * demand[i];
     }
 
-    return lambda;
+    double theta = 1;
+    if (supply_limited) {
+      assert requested > 0;
+      theta = state.get(k).getCell(limiting_id).supply / requested;
+    }
+
+    for (int i = 0; i < nb_prev; i++) {
+      int id = in_links[i].getUniqueId();
+      for (int c = 0; c < (C + 1); c++) {
+
+        /* Derivative of theta * g(i,c2) with respect to rho(i,c) */
+        for (int c2 = 0; c2 < (C + 1); c2++) {
+          double value;
+          if (total_density[i] == 0)
+            value = (c == c2) ? derivative_demand[i] : 0;
+          else
+            value = derivative_demand[i] * share[i][c2]
+                + demand[i] / total_density[i]
+                * (((c == c2) ? 1 : 0) - share[i][c2]);
+          value *= theta;
+          assert Numerical.validNumber(value);
+          if (value != 0)
+            derivatives.add(id, c, id, c2, value);
+        }
+
+        if (!supply_limited)
+          continue;
+
+        /* Derivative of theta with respect to rho(i,c) */
+        double derivative_requested;
+        if (total_density[i] == 0)
+          derivative_requested = beta[i][c] * derivative_demand[i];
+        else
+          derivative_requested = demand[i] / total_density[i]
+              * (beta[i][c] - aggr_beta[i])
+              + aggr_beta[i] * derivative_demand[i];
+        double derivative_theta = -theta / requested * derivative_requested;
+        if (derivative_theta == 0)
+          continue;
+
+        for (int i2 = 0; i2 < nb_prev; i2++)
+          for (int c2 = 0; c2 < (C + 1); c2++) {
+            double value = derivative_theta * demand[i2] * share[i2][c2];
+            assert Numerical.validNumber(value);
+            if (value != 0)
+              derivatives.add(id, c, in_links[i2].getUniqueId(), c2, value);
+          }
+      }
+    }
+
+    if (!supply_limited)
+      return;
+
+    /* Derivative of theta with respect to the densities of limiting_id */
+    double backspeed = cells[limiting_id].getDerivativeSupply(state
+        .get(k)
+        .getCell(limiting_id).total_density);
+    if (backspeed == 0)
+      return;
+    for (int c_rho = 0; c_rho < (C + 1); c_rho++)
+      for (int i2 = 0; i2 < nb_prev; i2++)
+        for (int c2 = 0; c2 < (C + 1); c2++) {
+          double value = backspeed / requested * demand[i2] * share[i2][c2];
+          assert Numerical.validNumber(value);
+          if (value != 0)
+            derivatives.add(limiting_id, c_rho, in_links[i2].getUniqueId(),
+                c2, value);
+        }
   }
 
   private void printAlert(int j_id, int k) {
@@ -723,13 +1083,230 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
   }
 
   public double[] gradientByAdjointMethod(State state, double[] control) {
+    return gradientByAdjointMethod(state, control, 0);
+  }
+
+  /**
+   * @brief Computes the gradient with respect to the control of the time
+   *        steps from first_step on
+   * @details The adjoint sweep stops at first_step. The entries of the
+   *          previous time steps are 0
+   */
+  public double[] gradientByAdjointMethod(State state, double[] control,
+      int first_step) {
+
+    AdjointVector lambda;
+    if (two_slice_adjoint)
+      lambda = AdjointVector.twoSlices(T, cells.length, C);
+    else
+      lambda = new AdjointVector(T, cells.length, C);
+
+    double[] gradient = new double[T * temporal_control_block_size];
+    adjointSweep(state, lambda, gradient, first_step);
+
+    return gradient;
+  }
+
+  /**
+   * @brief Computes the directional derivative J'(u).d with the
+   *        tangent-linear model
+   * @details A perturbation of the state is propagated forward in time. It
+   *          uses the regimes of the junctions recorded in the state and the
+   *          same derivative terms as the adjoint, so the result is the
+   *          scalar product of the direction with the gradient given by
+   *          gradientByAdjointMethod. Only two time steps of the perturbation
+   *          are stored.
+   * @param direction
+   *          The direction d, with the same layout as the control
+   */
+  public double directionalDerivative(final State state, double[] control,
+      double[] direction) {
+    assert direction.length == T * temporal_control_block_size;
+
+    final double delta_t = simulator.time_discretization.getDelta_t();
+    final IntertemporalSplitRatios internal_SR =
+        simulator.lwr_network.getInternal_split_ratios();
+    final AdjointVector delta = AdjointVector.twoSlices(T, cells.length, C);
+
+    int nb_cell_tasks = WorkerPool.nbTasks(cells.length);
+    int nb_junction_tasks = WorkerPool.nbTasks(junctions.length);
+    final JunctionDerivatives[] derivatives =
+        new JunctionDerivatives[nb_junction_tasks];
+    for (int t = 0; t < nb_junction_tasks; t++)
+      derivatives[t] = new JunctionDerivatives();
+
+    double result = 0;
+    delta.clear(0);
+    for (int k = 0; k < T; k++) {
+      final int time_step = k;
+
+      addControlPerturbation(k, direction, delta);
+
+      /* Perturbation of the objective */
+      for (int cell_id = 0; cell_id < cells.length; cell_id++) {
+        if (cells[cell_id].isSink())
+          continue;
+        for (int c = 0; c < (C + 1); c++)
+          result += cells[cell_id].getLength()
+              * delta.get(delta.rho(k, cell_id, c));
+      }
+
+      if (k == T - 1)
+        break;
+
+      /* The slice of time step k+1 still contains time step k-1 */
+      delta.clear(k + 1);
+
+      /*
+       * The out-flows perturbed by a junction are the ones of its incoming
+       * links, and the in-flows the ones of its outgoing links
+       */
+      WorkerPool.run(nb_junction_tasks, junctions.length,
+          new WorkerPool.RangeTask() {
+            @Override
+            public void run(int task, int begin, int end) {
+              derivatives[task].clear();
+              junctionsDerivatives(time_step, begin, end, state,
+                  internal_SR, delta_t, derivatives[task]);
+              derivatives[task].addTangentTerms(delta, time_step);
+              propagateInFlowsTangent(time_step, begin, end, delta,
+                  internal_SR);
+            }
+          });
+
+      WorkerPool.run(nb_cell_tasks, cells.length, new WorkerPool.RangeTask() {
+        @Override
+        public void run(int task, int begin, int end) {
+          advanceDensitiesTangent(time_step, begin, end, delta, delta_t);
+        }
+      });
+    }
+
+    return result;
+  }
+
+  /**
+   * @brief Computes J'(u).d after a forward simulation at u
+   */
+  public double directionalDerivative(double[] control, double[] direction) {
+    return directionalDerivative(forwardSimulate(control), control,
+        direction);
+  }
+
+  /**
+   * @brief Adds the effect of the perturbation of the control at time step k
+   *        on the densities of the buffers (see dhdu)
+   */
+  private void addControlPerturbation(int k, double[] direction,
+      AdjointVector delta) {
+    int index_in_control = 0;
+    int commodity;
+    double[] origin_demands;
+    for (int orig = 0; orig < O; orig++) {
+      origin_demands = simulator.origin_demands.get(sources[orig]);
+
+      Iterator<Integer> it = sources[orig]
+          .getCompliant_commodities()
+          .iterator();
+      while (it.hasNext()) {
+        commodity = it.next();
+        int index = delta.rho(k, sources[orig].getUniqueId(), commodity);
+        delta.set(index, delta.get(index) + origin_demands[k] * alpha
+            * direction[k * temporal_control_block_size + index_in_control]);
+        index_in_control++;
+      }
+    }
+  }
+
+  /**
+   * @brief Perturbation of f_in(k) of the outgoing links of the junctions
+   *        [begin, end) given the perturbation of f_out(k)
+   */
+  private void propagateInFlowsTangent(int k, int begin, int end,
+      AdjointVector delta, IntertemporalSplitRatios internal_SR) {
+
+    for (int junction_id = begin; junction_id < end; junction_id++) {
+      Junction junction = junctions[junction_id];
+
+      Cell[] in_links = junction.getPrev();
+      Cell[] out_links = junction.getNext();
+      JunctionSplitRatios junction_SR = internal_SR.get(k, junction_id);
 
-    DoubleMatrix1D lambda = lambdaByAdjointMethod(state, control);
-    DenseDoubleAlgebra dAlg = new DenseDoubleAlgebra();
-    SparseCCDoubleMatrix2D dhduT = dhdu(state, control).getTranspose();
-    DoubleMatrix1D gradient = dAlg.mult(dhduT, lambda);
+      for (int c = 0; c < (C + 1); c++) {
+        for (int in_link = 0; in_link < in_links.length; in_link++) {
+          int in_link_id = in_links[in_link].getUniqueId();
+          double f_out = delta.get(delta.f_out(k, in_link_id, c));
 
-    return gradient.toArray();
+          for (int out_link = 0; out_link < out_links.length; out_link++) {
+            int out_link_id = out_links[out_link].getUniqueId();
+
+            double beta;
+            /* For the Nx1 junctions the split ratios are always 1 */
+            if (junction.isMergingJunction()) {
+              beta = 1;
+            } else {
+              Double beta_res = junction_SR.get(in_link_id, out_link_id, c);
+              if (beta_res == null)
+                continue;
+              beta = beta_res.doubleValue();
+            }
+            int index = delta.f_in(k, out_link_id, c);
+            delta.set(index, delta.get(index) + beta * f_out);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @brief Perturbation of rho(k+1) for the cells [begin, end) given the
+   *        perturbations of rho(k), f_in(k) and f_out(k)
+   */
+  private void advanceDensitiesTangent(int k, int begin, int end,
+      AdjointVector delta, double delta_t) {
+    for (int cell_id = begin; cell_id < end; cell_id++) {
+      Cell cell = cells[cell_id];
+      double delta_t_over_l = delta_t / cell.getLength();
+      for (int c = 0; c < (C + 1); c++) {
+        double value =
+            -delta_t_over_l * delta.get(delta.f_out(k, cell_id, c));
+        /* As in the adjoint, the densities of the sinks are not propagated */
+        if (!cell.isSink())
+          value += delta.get(delta.rho(k, cell_id, c));
+        if (!cell.isBuffer() && !cell.isSink())
+          value += delta_t_over_l * delta.get(delta.f_in(k, cell_id, c));
+        assert Numerical.validNumber(value);
+        delta.set(delta.rho(k + 1, cell_id, c), value);
+      }
+    }
+  }
+
+  /**
+   * @brief Fill in the entries of time step k of the gradient
+   * @details The gradient is dH/dU^T * lambda. The only non zero terms of
+   *          dH/dU are the derivatives of the densities of the buffers with
+   *          respect to the control (see dhdu)
+   */
+  private void accumulateGradient(int k, AdjointVector lambda,
+      double[] gradient) {
+    int index_in_control = 0;
+    int commodity;
+    double[] origin_demands;
+    for (int orig = 0; orig < O; orig++) {
+      origin_demands = simulator.origin_demands.get(sources[orig]);
+
+      Iterator<Integer> it = sources[orig]
+          .getCompliant_commodities()
+          .iterator();
+      while (it.hasNext()) {
+        commodity = it.next();
+        gradient[k * temporal_control_block_size + index_in_control] =
+            origin_demands[k] * alpha
+                * lambda.get(lambda.rho(k, sources[orig].getUniqueId(),
+                    commodity));
+        index_in_control++;
+      }
+    }
   }
 
   /**
@@ -738,14 +1315,37 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
   public void gradient(double[] gradient_f, double[] control) {
     State state = forwardSimulate(control);
     double[] g2 = gradientByAdjointMethod(state, control);
-    projectGradient(gradient_f, g2);
+    projectGradient(gradient_f, g2, control);
   }
 
-  public void projectGradient(double[] gradient_f, double[] init_gradient) {
+  /**
+   * @details Only one forward simulation is done for both evaluations
+   */
+  @Override
+  public double objectiveAndGradient(double[] gradient_f, double[] control) {
+    /* Inforces control[i] >= 0, \forall i */
+    for (int i = 0; i < control.length; i++)
+      if (control[i] < 0)
+        assert false : "Negative control " + control[i];
+
+    State state = forwardSimulate(control);
+    double[] g2 = gradientByAdjointMethod(state, control);
+    projectGradient(gradient_f, g2, control);
+    return objective(state, control);
+  }
+
+  /**
+   * @brief Projects the gradient on the feasible directions at control
+   * @details For every origin and time step, the split ratios are on a
+   *          simplex. The split ratios at 0 that the descent would make
+   *          negative are kept at 0.
+   * @see Simplex#projectGradient
+   */
+  public void projectGradient(double[] gradient_f, double[] init_gradient,
+      double[] control) {
     for (int k = 0; k < T; k++) {
       int index = 0;
       for (int o = 0; o < O; o++) {
-        double average = 0;
         int nb_commodities = sources[o].getCompliant_commodities().size();
         if (nb_commodities == 0) {
           System.out
@@ -753,14 +1353,8 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
           continue;
         }
 
-        for (int c = 0; c < nb_commodities; c++) {
-          average += init_gradient[k * C + index + c];
-        }
-        average /= nb_commodities;
-
-        for (int c = 0; c < nb_commodities; c++)
-          gradient_f[k * C + index + c] = init_gradient[k * C + index + c]
-              - average;
+        Simplex.projectGradient(gradient_f, init_gradient, control,
+            k * C + index, nb_commodities);
         index += nb_commodities;
       }
     }
@@ -783,9 +1377,8 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
    */
   public SparseCCDoubleMatrix2D dhdu(State state, double[] control) {
 
-    SparseCCDoubleMatrix2D result = new SparseCCDoubleMatrix2D(
-        x_block_size * T,
-        temporal_control_block_size * T);
+    SparseMatrixBuilder result = dhdu_builder;
+    result.begin();
 
     int i, j, index_in_control = 0;
     int commodity;
@@ -809,25 +1402,20 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
            * not multiply by the time step
            */
           double value = origin_demands[k] * alpha;
-          result.setQuick(i, j, value);
+          result.set(i, j, value);
         }
         index_in_control++;
       }
     }
 
-    return result;
+    return result.build();
   }
 
   @Override
   public void projectControl(double[] control) {
-    for (int i = 0; i < control.length; i++)
-      if (control[i] < 0)
-        control[i] = 0;
-
     for (int k = 0; k < T; k++) {
       int index = 0;
       for (int o = 0; o < O; o++) {
-        double sum = 0;
         int nb_commodities = sources[o].getCompliant_commodities().size();
         if (nb_commodities == 0) {
           System.out
@@ -835,17 +1423,51 @@ public class SOPC_Optimizer implements GradientDescentOptimizer {
           continue;
         }
 
-        for (int c = 0; c < nb_commodities; c++) {
-          sum += control[k * C + index + c];
-        }
-        assert sum > 0;
+        Simplex.project(control, k * C + index, nb_commodities);
+        index += nb_commodities;
+      }
+    }
+  }
 
-        for (int c = 0; c < nb_commodities; c++)
-          control[k * C + index + c] = control[k * C + index + c]
-              / sum;
+  /**
+   * @details There is one block per origin with compliant commodities and per
+   *          time step
+   */
+  @Override
+  public int[][] getSimplexBlocks() {
+    int nb_blocks = 0;
+    for (int o = 0; o < O; o++)
+      if (sources[o].getCompliant_commodities().size() != 0)
+        nb_blocks++;
+
+    int[][] blocks = new int[T * nb_blocks][];
+    int block = 0;
+    for (int k = 0; k < T; k++) {
+      int index = 0;
+      for (int o = 0; o < O; o++) {
+        int nb_commodities = sources[o].getCompliant_commodities().size();
+        if (nb_commodities == 0)
+          continue;
+        blocks[block++] = new int[] { k * C + index, nb_commodities };
         index += nb_commodities;
       }
     }
+    return blocks;
+  }
+
+  public boolean isTwoSliceAdjoint() {
+    return two_slice_adjoint;
+  }
+
+  /**
+   * @brief Choose how the adjoint is stored when computing the gradient
+   * @param two_slice_adjoint
+   *          If true, only two time steps of the adjoint are stored and the
+   *          gradient is accumulated during the backward sweep (O(x_block_size)
+   *          memory). Otherwise the adjoint is stored for all time steps.
+   */
+  public void setTwoSliceAdjoint(boolean two_slice_adjoint) {
+    this.two_slice_adjoint = two_slice_adjoint;
   }
 
   public void printProperties(State state) {
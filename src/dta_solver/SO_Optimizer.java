@@ -23,6 +23,8 @@ import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
 import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleFactory1D;
 import dataStructures.Numerical;
+import dataStructures.Simplex;
+import dataStructures.SparseMatrixBuilder;
 import dataStructures.Triplet;
 import dta_solver.adjointMethod.Adjoint;
 
@@ -89,6 +91,10 @@ class SO_Optimizer extends Adjoint<State> {
   /* Total size of a block of constraints for a given time step */
   // x_block_size
 
+  /* Assemblers of dH/dx and dH/du keeping their sparsity structure */
+  private SparseMatrixBuilder dhdx_builder;
+  private SparseMatrixBuilder dhdu_builder;
+
   public SO_Optimizer(int maxIter, Simulator simu) {
     super(maxIter);
     simulator = simu;
@@ -151,6 +157,11 @@ class SO_Optimizer extends Adjoint<State> {
         + size_aggregate_split_ratios;
 
     assert (H_block_size == x_block_size);
+    /* The structures of dH/dx and dH/du are computed once and reused */
+    dhdx_builder = new SparseMatrixBuilder(x_block_size * T, x_block_size * T);
+    dhdu_builder = new SparseMatrixBuilder(x_block_size * T,
+        temporal_control_block_size * T);
+
     /* Initialization of the split ratios for the Optimizer */
     simulator.initializeSplitRatiosForOptimizer();
   }
@@ -385,9 +396,8 @@ class SO_Optimizer extends Adjoint<State> {
   @Override
   public SparseCCDoubleMatrix2D dhdu(State state, double[] control) {
 
-    SparseCCDoubleMatrix2D result = new SparseCCDoubleMatrix2D(
-        x_block_size * T,
-        temporal_control_block_size * T);
+    SparseMatrixBuilder result = dhdu_builder;
+    result.begin();
 
     int i, j, index_in_control = 0;
     int commodity;
@@ -411,13 +421,21 @@ class SO_Optimizer extends Adjoint<State> {
            * not multiply by the time step
            */
           double value = origin_demands[k] * alpha;
-          result.setQuick(i, j, value);
+          result.set(i, j, value);
         }
         index_in_control++;
       }
     }
 
-    return result;
+    return result.build();
+  }
+
+  /**
+   * @details H(k) only depends on the state at time steps k and k-1
+   */
+  @Override
+  protected int nbTimeBlocks() {
+    return T;
   }
 
   @Override
@@ -426,9 +444,8 @@ class SO_Optimizer extends Adjoint<State> {
     IntertemporalSplitRatios internal_SR =
         simulator.lwr_network.getInternal_split_ratios();
 
-    SparseCCDoubleMatrix2D result = new SparseCCDoubleMatrix2D(
-        x_block_size * T,
-        x_block_size * T);
+    SparseMatrixBuilder result = dhdx_builder;
+    result.begin();
 
     double delta_t = simulator.time_discretization.getDelta_t();
     /* The diagonal terms are done at the end */
@@ -459,7 +476,7 @@ class SO_Optimizer extends Adjoint<State> {
            * We put 1 for the derivative terms of the mass conversation
            * equations (i,c,k) with respect to density(i,c,k-1) for k : [1,T-1]
            */
-          result.setQuick(i, j, 1.0);
+          result.set(i, j, 1.0);
 
           /*
            * Derivative terms with respect to flow-out(i,c,k-1) and
@@ -470,10 +487,10 @@ class SO_Optimizer extends Adjoint<State> {
           assert Numerical.validNumber(delta_t_over_l);
 
           // d \density(i, k) / d f_out(i,k-1) = - delta_t / l
-          result.setQuick(i, j + f_out_position, -delta_t_over_l);
+          result.set(i, j + f_out_position, -delta_t_over_l);
 
           // d \density(i, k) / d f_in(i,k-1) = delta_t / l
-          result.setQuick(i, j + f_in_position, delta_t_over_l);
+          result.set(i, j + f_in_position, delta_t_over_l);
         }
       }
       // For the buffers and sinks we have put a derivative term that should
@@ -483,7 +500,7 @@ class SO_Optimizer extends Adjoint<State> {
           i = block_upper_position + (C + 1) * sources[o].getUniqueId() + c;
           j = x_block_size * (k - 1) + (C + 1) * sources[o].getUniqueId() + c;
           // flow-in
-          result.setQuick(i, j + f_in_position, 0.0);
+          result.set(i, j + f_in_position, 0.0);
         }
       }
       for (int s = 0; s < S; s++) {
@@ -493,7 +510,7 @@ class SO_Optimizer extends Adjoint<State> {
           j = x_block_size * (k - 1) + (C + 1) * destinations[s].getUniqueId()
               + c;
           // flow-out
-          result.setQuick(i, j + f_out_position, 0.0);
+          result.set(i, j + f_out_position, 0.0);
         }
       }
     }
@@ -525,14 +542,14 @@ class SO_Optimizer extends Adjoint<State> {
         for (int c = 0; c < C + 1; c++) {
 
           // Demand first
-          result.setQuick(i,
+          result.set(i,
               x_block_size * k + cell_id * (C + 1) + c,
               cells[cell_id].getDerivativeDemand(total_density, delta_t));
 
           // Then supply
           /* There is no derivative term with respect to the supply for buffers */
           if (in_cell.isBuffer())
-            result.setQuick(i + 1, x_block_size * k + cell_id * (C + 1) + c,
+            result.set(i + 1, x_block_size * k + cell_id * (C + 1) + c,
                 cells[cell_id].getDerivativeSupply(total_density));
         }
       }
@@ -631,7 +648,7 @@ class SO_Optimizer extends Adjoint<State> {
                 assert Numerical.validNumber(derivative_term);
 
                 if (derivative_term != 0)
-                  result.setQuick(i, j + c, derivative_term);
+                  result.set(i, j + c, derivative_term);
               }
             }
           }
@@ -691,14 +708,14 @@ class SO_Optimizer extends Adjoint<State> {
               double value = f_out * (total_density - partial_density)
                   / (total_density * total_density);
               assert Numerical.validNumber(value);
-              result.setQuick(i, j, value);
+              result.set(i, j, value);
             } else {
               /*
                * If the density is zero, any increase of a partial density will
                * increase the corresponding flow by v_i
                */
               j = x_block_size * k + (C + 1) * prev_id + c;
-              result.setQuick(i, j, cells[prev_id].getDerivativeDemand(0,
+              result.set(i, j, cells[prev_id].getDerivativeDemand(0,
                   delta_t));
             }
 
@@ -714,7 +731,7 @@ class SO_Optimizer extends Adjoint<State> {
               else
                 value = partial_density / total_density;
               assert Numerical.validNumber(value);
-              result.setQuick(i, j, value);
+              result.set(i, j, value);
             } else if (supply < demand) {
               /* The supply is limiting the out-flow */
               if (partial_density == 0)
@@ -723,7 +740,7 @@ class SO_Optimizer extends Adjoint<State> {
               j = x_block_size * k + demand_supply_position + 2 * prev_id + 1;
               double value = partial_density / total_density;
               assert Numerical.validNumber(value);
-              result.setQuick(i, j, value);
+              result.set(i, j, value);
 
               /* Derivative term with respect to the aggregate split ratios */
               // TODO: Is this needed ?
@@ -732,7 +749,7 @@ class SO_Optimizer extends Adjoint<State> {
                * + aggregate_index;
                * value = -f_out * partial_density / total_density;
                * assert Numerical.validNumber(value);
-               * result.setQuick(i, j, value);
+               * result.set(i, j, value);
                */
             } else {
               System.out.println("[Warning] Critical point where a" +
@@ -799,7 +816,7 @@ class SO_Optimizer extends Adjoint<State> {
                 double value = flow_out * (total_density - partial_density)
                     / (total_density * total_density);
                 assert Numerical.validNumber(value);
-                result.setQuick(i, j, value);
+                result.set(i, j, value);
               }
               /*
                * Derivative with respect to supply and demand.
@@ -814,7 +831,7 @@ class SO_Optimizer extends Adjoint<State> {
                 /* Special case where the derivative is not used */
                 value = 66;
               assert Numerical.validNumber(value);
-              result.setQuick(i, j, value);
+              result.set(i, j, value);
             }
           } else if (min_supply_over_beta < demand) {
             assert total_density != 0;
@@ -832,7 +849,7 @@ class SO_Optimizer extends Adjoint<State> {
                   / (total_density * total_density);
               assert Numerical.validNumber(value);
               if (value != 0)
-                result.setQuick(i, j, value);
+                result.set(i, j, value);
 
               /*
                * Derivative with respect to supply and aggregate split ratio
@@ -847,7 +864,7 @@ class SO_Optimizer extends Adjoint<State> {
                     * 2 + 1;
                 value = partial_density / total_density / beta_at_minimum;
                 assert Numerical.validNumber(value);
-                result.setQuick(i, j, value);
+                result.set(i, j, value);
 
                 /* Derivative with respect with the aggregate split ratio */
                 /* Computation of the position of the aggregate SR */
@@ -857,7 +874,7 @@ class SO_Optimizer extends Adjoint<State> {
                     / total_density / beta_at_minimum;
                 assert Numerical.validNumber(value);
                 if (value != 0)
-                  result.setQuick(i, j, value);
+                  result.set(i, j, value);
               }
             }
           } else {
@@ -929,24 +946,24 @@ class SO_Optimizer extends Adjoint<State> {
 
               double value = f_in_1_out * (total_density1 - partial_density)
                   / (total_density1 * total_density1);
-              result.setQuick(i, j, value);
+              result.set(i, j, value);
 
               /* Derivative terms with respect to supply/demand */
               if (partial_density != 0) {
                 if (DfDdemand1 != 0) {
                   j = x_block_size * k + demand_supply_position + in_1 * 2;
                   assert Numerical.validNumber(DfDdemand1);
-                  result.setQuick(i, j, DfDdemand1);
+                  result.set(i, j, DfDdemand1);
                 }
                 if (DfDdemand2 != 0) {
                   j = x_block_size * k + demand_supply_position + in_2 * 2;
                   assert Numerical.validNumber(DfDdemand2);
-                  result.setQuick(i, j, DfDdemand2);
+                  result.set(i, j, DfDdemand2);
                 }
                 if (DfDsupply != 0) {
                   j = x_block_size * k + demand_supply_position + out * 2 + 1;
                   assert Numerical.validNumber(DfDsupply);
-                  result.setQuick(i, j, DfDsupply);
+                  result.set(i, j, DfDsupply);
                 }
               }
             }
@@ -983,24 +1000,24 @@ class SO_Optimizer extends Adjoint<State> {
 
               double value = f_in_2_out * (total_density2 - partial_density)
                   / (total_density2 * total_density2);
-              result.setQuick(i, j, value);
+              result.set(i, j, value);
 
               /* Derivative terms with respect to supply/demand */
               if (partial_density != 0) {
                 if (DfDdemand1 != 0) {
                   j = x_block_size * k + demand_supply_position + in_1 * 2;
                   assert Numerical.validNumber(DfDdemand1);
-                  result.setQuick(i, j, DfDdemand1);
+                  result.set(i, j, DfDdemand1);
                 }
                 if (DfDdemand2 != 0) {
                   j = x_block_size * k + demand_supply_position + in_2 * 2;
                   assert Numerical.validNumber(DfDdemand2);
-                  result.setQuick(i, j, DfDdemand2);
+                  result.set(i, j, DfDdemand2);
                 }
                 if (DfDsupply != 0) {
                   j = x_block_size * k + demand_supply_position + out * 2 + 1;
                   assert Numerical.validNumber(DfDsupply);
-                  result.setQuick(i, j, DfDsupply);
+                  result.set(i, j, DfDsupply);
                 }
               }
             }
@@ -1037,7 +1054,7 @@ class SO_Optimizer extends Adjoint<State> {
               i = x_block_size * k + f_in_position + out_id * (C + 1) + c;
               j = x_block_size * k + f_out_position + in_id * (C + 1) + c;
 
-              result.setQuick(i, j, 1.0);
+              result.set(i, j, 1.0);
             }
           }
         } else {
@@ -1057,7 +1074,7 @@ class SO_Optimizer extends Adjoint<State> {
             i = x_block_size * k + f_in_position + out_id * (C + 1) + commodity;
             j = x_block_size * k + f_out_position + in_id * (C + 1) + commodity;
             assert Numerical.validNumber(entry.getValue());
-            result.setQuick(i, j, entry.getValue());
+            result.set(i, j, entry.getValue());
           }
 
           iterator =
@@ -1074,7 +1091,7 @@ class SO_Optimizer extends Adjoint<State> {
             i = x_block_size * k + f_in_position + out_id * (C + 1) + commodity;
             j = x_block_size * k + f_out_position + in_id * (C + 1) + commodity;
             assert Numerical.validNumber(entry.getValue());
-            result.setQuick(i, j, entry.getValue());
+            result.set(i, j, entry.getValue());
           }
         }
       }
@@ -1086,11 +1103,11 @@ class SO_Optimizer extends Adjoint<State> {
     // System.out.print("Diagonal terms: ");
     // startTime= System.currentTimeMillis();
     for (int index = 0; index < x_block_size * T; index++)
-      result.setQuick(index, index, -1.0);
+      result.set(index, index, -1.0);
     // endTime= System.currentTimeMillis();
     // System.out.println(endTime - startTime);
 
-    return result;
+    return result.build();
   }
 
   /**
@@ -1298,14 +1315,9 @@ class SO_Optimizer extends Adjoint<State> {
 
   @Override
   public void projectControl(double[] control) {
-    for (int i = 0; i < control.length; i++)
-      if (control[i] < 0)
-        control[i] = 0;
-
     for (int k = 0; k < T; k++) {
       int index = 0;
       for (int o = 0; o < O; o++) {
-        double sum = 0;
         int nb_commodities = sources[o].getCompliant_commodities().size();
         if (nb_commodities == 0) {
           System.out
@@ -1313,14 +1325,7 @@ class SO_Optimizer extends Adjoint<State> {
           continue;
         }
 
-        for (int c = 0; c < nb_commodities; c++) {
-          sum += control[k * C + index + c];
-        }
-        assert sum > 0;
-
-        for (int c = 0; c < nb_commodities; c++)
-          control[k * C + index + c] = control[k * C + index + c]
-              / sum;
+        Simplex.project(control, k * C + index, nb_commodities);
         index += nb_commodities;
       }
     }
@@ -1,23 +1,37 @@
 package dta_solver;
 
 import generalNetwork.state.State;
+import generalNetwork.state.externalSplitRatios.IntertemporalOriginsSplitRatios;
 
 import java.util.Arrays;
 
 import org.coinor.Ipopt;
 
+import dataStructures.WorkerPool;
 import dta_solver.adjointMethod.IpOptOptimizer;
+import dta_solver.adjointMethod.LBFGSBOptimizer;
 
 public class SO_OptimizerByFiniteDifferences extends SOPC_Optimizer {
 
   /** Maximum number of iterations */
   private int maxIter = 100;
-  /** The Optimizer which has to be an IpOpt object for now */
+  /** The native Ipopt optimizer, used only if use_native_ipopt is true */
   private IpOptOptimizer ipOpt;
+  /** If false, the pure Java LBFGSBOptimizer is used instead of Ipopt */
+  private boolean use_native_ipopt = false;
+
+  /* Step of the finite differences */
+  private double deviation = 0.001;
+  /*
+   * If true, (J(u + h) - J(u - h)) / 2h is used instead of
+   * (J(u + h) - J(u)) / h
+   */
+  private boolean central_differences = false;
+  /* If true, the probes are computed in parallel */
+  private boolean parallel = true;
 
   public SO_OptimizerByFiniteDifferences(Simulator simu) {
     super(simu);
-    ipOpt = new IpOptOptimizer(this);
     simulator.initializSplitRatios();
   }
 
@@ -35,15 +49,7 @@ public class SO_OptimizerByFiniteDifferences extends SOPC_Optimizer {
   }
 
   public void notProjectedGradient(double[] gradient_f, double[] control) {
-    double deviation = 0.001;
-    double value = objective(control);
-    for (int i = 0; i < control.length; i++) {
-      double[] modified_control = Arrays.copyOf(control, control.length);
-      modified_control[i] = modified_control[i] + deviation;
-
-      double result = objective(modified_control);
-      gradient_f[i] = (result - value) / deviation;
-    }
+    finiteDifferences(gradient_f, control);
   }
 
   /**
@@ -54,49 +60,79 @@ public class SO_OptimizerByFiniteDifferences extends SOPC_Optimizer {
    *          The point where the gradient is computed
    */
   public void gradient(double[] gradient_f, double[] control) {
-    double deviation = 0.001;
-    double value = objective(control);
     double[] gradient = new double[gradient_f.length];
-    for (int i = 0; i < control.length; i++) {
-      double[] modified_control = Arrays.copyOf(control, control.length);
-      modified_control[i] = modified_control[i] + deviation;
-
-      double result = objective(modified_control);
-      gradient[i] = (result - value) / deviation;
-    }
+    finiteDifferences(gradient, control);
 
     /* We project the gradient on the feasible space */
-    projectGradient(gradient_f, gradient);
-  }
-
-  public void projectGradient(double[] gradient_f, double[] init_gradient) {
-    for (int k = 0; k < T; k++) {
-      int index = 0;
-      for (int o = 0; o < O; o++) {
-        double average = 0;
-        int nb_commodities = sources[o].getCompliant_commodities().size();
-        if (nb_commodities == 0) {
-          System.out
-              .println("[Warning] In Computation of the gradient by finite diff. 0 commodities");
-          continue;
-        }
+    projectGradient(gradient_f, gradient, control);
+  }
 
-        for (int c = 0; c < nb_commodities; c++) {
-          average += init_gradient[k * C + index + c];
+  /**
+   * @brief Computes the finite differences of the objective along every
+   *        coordinate of the control
+   * @details The probes are split among the threads of the WorkerPool. Every
+   *          task simulates with its own copy of the split ratios at the
+   *          origins, and the network is only read. The result does not
+   *          depend on the number of threads.
+   */
+  public void finiteDifferences(final double[] gradient,
+      final double[] control) {
+    final double value;
+    if (central_differences)
+      value = 0;
+    else
+      value = objective(control);
+
+    final IntertemporalOriginsSplitRatios splits = simulator.splits;
+    int nb_tasks = 1;
+    if (parallel)
+      nb_tasks = Math.min(WorkerPool.getNb_threads(), control.length);
+
+    WorkerPool.run(nb_tasks, control.length, new WorkerPool.RangeTask() {
+      @Override
+      public void run(int task, int begin, int end) {
+        /* Workspace of the task */
+        IntertemporalOriginsSplitRatios task_splits = splits.copy();
+        double[] modified_control = Arrays.copyOf(control, control.length);
+
+        for (int i = begin; i < end; i++) {
+          modified_control[i] = control[i] + deviation;
+          double result = probe(modified_control, task_splits);
+          if (central_differences) {
+            modified_control[i] = control[i] - deviation;
+            result -= probe(modified_control, task_splits);
+            gradient[i] = result / (2 * deviation);
+          } else {
+            gradient[i] = (result - value) / deviation;
+          }
+          modified_control[i] = control[i];
         }
-        average /= nb_commodities;
-
-        for (int c = 0; c < nb_commodities; c++)
-          gradient_f[k * C + index + c] = init_gradient[k * C + index + c]
-              - average;
-        index += nb_commodities;
       }
-    }
+    });
+  }
+
+  /**
+   * @brief Evaluates the objective with the given split ratios as workspace
+   */
+  private double probe(double[] control,
+      IntertemporalOriginsSplitRatios splits) {
+    loadControl(control, splits);
+    return simulator.objective(simulator.run(splits, false));
   }
 
   public double[] optimize(double[] startPoint) {
 
+    if (!use_native_ipopt) {
+      LBFGSBOptimizer optimizer = new LBFGSBOptimizer(this);
+      optimizer.setMaxIter(maxIter);
+      optimizer.OptimizeNLP();
+      return optimizer.getState();
+    }
+
     int n = getStartingPoint().length;
+    /* The native Ipopt library is only loaded when it is used */
+    if (ipOpt == null)
+      ipOpt = new IpOptOptimizer(this);
     // solver.fn = f
     // solver.u0 = startPoint
     ipOpt.create(n, 0, 0, 0, Ipopt.C_STYLE);
@@ -125,4 +161,37 @@ public class SO_OptimizerByFiniteDifferences extends SOPC_Optimizer {
   public void setMaxIter(int maxIter) {
     this.maxIter = maxIter;
   }
+
+  public boolean isUse_native_ipopt() {
+    return use_native_ipopt;
+  }
+
+  public void setUse_native_ipopt(boolean use_native_ipopt) {
+    this.use_native_ipopt = use_native_ipopt;
+  }
+
+  public double getDeviation() {
+    return deviation;
+  }
+
+  public void setDeviation(double deviation) {
+    assert deviation > 0;
+    this.deviation = deviation;
+  }
+
+  public boolean isCentral_differences() {
+    return central_differences;
+  }
+
+  public void setCentral_differences(boolean central_differences) {
+    this.central_differences = central_differences;
+  }
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
 }
\ No newline at end of file
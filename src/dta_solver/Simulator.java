@@ -9,11 +9,7 @@ import generalLWRNetwork.Destination;
 import generalLWRNetwork.DiscretizedGraph;
 import generalLWRNetwork.LWR_network;
 import generalLWRNetwork.Origin;
-import generalNetwork.data.Json_data;
 import generalNetwork.data.demand.Demands;
-import generalNetwork.data.demand.DemandsFactory;
-import generalNetwork.graph.Graph;
-import generalNetwork.graph.json.JsonFactory;
 import generalNetwork.state.Profile;
 import generalNetwork.state.State;
 import generalNetwork.state.externalSplitRatios.IntertemporalOriginsSplitRatios;
@@ -25,9 +21,14 @@ import generalNetwork.state.externalSplitRatios.IntertemporalOriginsSplitRatios;
 /**
  * @class Simulator
  * @brief Represents a simulator for a DTA problem (both graphs and conditions)
+ * @details The network is a Network shared by all the simulators built on
+ *          it. A simulator is a workspace: it has its own split ratios at the
+ *          origins, demands and initial profiles.
  */
 public class Simulator {
 
+  /** The compiled network. It is shared and not modified */
+  private Network network;
   /** The discretized version of the graph. Should not be used */
   public DiscretizedGraph discretized_graph;
   /** The compact form of the graph */
@@ -42,10 +43,81 @@ public class Simulator {
   /** Share of the compliant flow */
   private double alpha;
 
+  /*
+   * Profile of the network at the first time step and at the time step before
+   * it. If they are null, the network is empty at the beginning
+   */
+  private Profile initial_profile = null;
+  private Profile initial_previous_profile = null;
+  /* Incremented every time the initial profiles are changed */
+  private int version = 0;
+
   protected Simulator(int delta_t, int nb_steps) {
     time_discretization = new Discretization(delta_t, nb_steps);
   }
 
+  /**
+   * @brief Creates a workspace sharing the network of other
+   * @see workspace()
+   */
+  private Simulator(Simulator other) {
+    network = other.network;
+    discretized_graph = other.discretized_graph;
+    lwr_network = other.lwr_network;
+    time_discretization = other.time_discretization;
+    origin_demands = other.origin_demands;
+    splits = other.splits.copy();
+    alpha = other.alpha;
+    initial_profile = other.initial_profile;
+    initial_previous_profile = other.initial_previous_profile;
+  }
+
+  /**
+   * @brief Creates a simulator sharing the network, the time discretization,
+   *        the demands and the initial profiles of this one, with its own copy
+   *        of the split ratios at the origins
+   * @details The network is only read by the simulations so different
+   *          workspaces can be used at the same time by different threads.
+   *          The demands and the initial profiles must not be modified while
+   *          they are shared.
+   */
+  public Simulator workspace() {
+    return new Simulator(this);
+  }
+
+  /**
+   * @brief Creates a simulator on a network already loaded
+   * @details The demands are the ones of the data file of the network, the
+   *          split ratios at the origins are the default physical ones and the
+   *          network is empty at the beginning
+   */
+  public Simulator(Network network) {
+    this(network, network.getAlpha());
+  }
+
+  /**
+   * @brief Creates a simulator on a network already loaded, with its own share
+   *        of compliant flow
+   * @details Any share can be used if the network has its non-compliant split
+   *          ratios, so that several simulators with different shares can use
+   *          the same network.
+   * @see Network.hasNonCompliantSplitRatios()
+   */
+  public Simulator(Network network, double alpha) {
+    this.network = network;
+    discretized_graph = network.getDiscretized_graph();
+    lwr_network = network.getLwr_network();
+    time_discretization = network.getTime_discretization();
+    origin_demands = network.getDemands();
+    this.alpha = alpha;
+
+    /*
+     * Initialization of a physical set for the control split-ratios at the
+     * origins
+     */
+    initializSplitRatios();
+  }
+
   /**
    * @brief Creates a Dynamic Traffic Assignment with Partial Compliance
    *        simulator
@@ -63,78 +135,17 @@ public class Simulator {
       String data_file,
       double alpha,
       boolean debug) {
-    /* For now we study full compliance. TODO: modify this */
-    this.alpha = alpha;
-
-    JsonFactory json = new JsonFactory(debug);
-
-    /* Loading the graph description */
-    System.out.print("Loading the graph from JSON...");
-    Graph json_graph = json.graphFromFile(network_file);
-    System.out.println("Done");
-
-    /* Loading the data from the json file */
-    System.out.print("Loading the data from JSON...");
-    Json_data data = json.dataFromFile(data_file);
-    System.out.println("Done");
-
-    /* Time discretization from the data */
-    time_discretization = new Discretization(data.delta_t, data.max_time_step);
-
-    int nb_steps = time_discretization.getNb_steps();
-    double delta_t = time_discretization.getDelta_t();
-    /* Creation of the network */
-    System.out.print("Discretization of the graph...");
-    discretized_graph = new DiscretizedGraph(json_graph, delta_t, nb_steps);
-    System.out.println("Done");
-
-    /* Creation of the demands */
-    System.out.print("Loading demands from JSON...");
-    origin_demands = new DemandsFactory(time_discretization,
-        delta_t, data.demands, discretized_graph.node_to_origin)
-        .buildDemands();
-    System.out.println("Done");
-
-    if (debug)
-      System.out.println(origin_demands.toString());
-
-    /* Creation of the non-compliant split-ratios */
-    if (alpha != 1) {
-      System.out.print("Loading non compliant split-ratios from JSON...");
-      discretized_graph.split_ratios.addNonCompliantSplitRatios(
-          discretized_graph,
-          data.non_compliant_split_ratios,
-          discretized_graph.node_to_origin);
-      System.out.println("Done");
-    } else {
-      System.out.println("Full System Optimal detected.");
-    }
-
-    /*
-     * Initialization of a physical set for the control split-ratios at the
-     * origins
-     */
-    initializSplitRatios();
+    this(new Network(network_file, data_file, alpha, debug));
 
     if (debug)
       System.out.println(splits.toString());
+  }
 
-    /* Building compact form in LWR_network */
-    System.out.print("Creating the compact representation...");
-    lwr_network = new LWR_network(discretized_graph);
-    System.out.println("Done");
-
-    /* Checking the requirements on the network */
-    System.out
-        .print("Checking that the network respect needed requirements...");
-    lwr_network.checkConstraints(delta_t);
-    System.out.println("Done");
-
-    if (debug) {
-      System.out.println("Printing the compact form");
-      lwr_network.print();
-      lwr_network.printInternalSplitRatios();
-    }
+  /**
+   * @return The network shared by this simulator
+   */
+  public Network getNetwork() {
+    return network;
   }
 
   protected State run() {
@@ -158,29 +169,93 @@ public class Simulator {
   }
 
   protected State run(boolean print) {
+    return run(splits, print);
+  }
+
+  /**
+   * @brief Run the simulation with the given split ratios at the origins
+   * @details The simulator is not modified, so several simulations with
+   *          different split ratios can be run at the same time
+   * @param splits
+   *          The split ratios at the origins to use instead of this.splits
+   * @return The state profile after the simulation. It does not include the
+   *         sum of the split ratios at the origins.
+   */
+  public State run(IntertemporalOriginsSplitRatios splits, boolean print) {
+    return run(splits, origin_demands, print);
+  }
+
+  /**
+   * @brief Run the simulation with the given split ratios at the origins and
+   *        the given demands
+   * @details The simulator is not modified
+   * @see run(IntertemporalOriginsSplitRatios, boolean)
+   */
+  public State run(IntertemporalOriginsSplitRatios splits, Demands demands,
+      boolean print) {
     int T = time_discretization.getNb_steps();
-    double delta_t = time_discretization.getDelta_t();
     Profile[] profiles = new Profile[T];
+    profiles[0] = initialProfile(initial_profile);
+    return simulate(profiles, 1, splits, demands, print);
+  }
 
-    for (int k = 0; k < T; k++) {
-      if (k == 0) {
-        profiles[k] = lwr_network.emptyProfile();
-      } else if (k == 1) {
+  /**
+   * @brief Simulates only the time steps from first_step on
+   * @details The split ratios at the origins before first_step must be the
+   *          ones used to compute prefix. The profiles of prefix before
+   *          first_step are shared with the result and are not modified. The
+   *          result is the same as the one of run(splits, false).
+   * @param prefix
+   *          A state simulated with the same split ratios before first_step
+   * @param first_step
+   *          The first time step whose split ratios may differ
+   * @return The state profile after the simulation. It does not include the
+   *         sum of the split ratios at the origins.
+   */
+  public State runFrom(State prefix, int first_step,
+      IntertemporalOriginsSplitRatios splits) {
+    int T = time_discretization.getNb_steps();
+    assert first_step >= 0 && first_step < T;
+    if (first_step == 0)
+      return run(splits, false);
+
+    Profile[] profiles = new Profile[T];
+    for (int k = 0; k < first_step; k++)
+      profiles[k] = prefix.profiles[k];
+    /*
+     * The densities of first_step only depend on the previous time steps but
+     * its flows and its buffers are computed again
+     */
+    profiles[first_step] = prefix.profiles[first_step].copy();
+    return simulate(profiles, first_step + 1, splits, origin_demands, false);
+  }
+
+  /**
+   * @brief Computes the profiles from first_k on. The profiles before
+   *        first_k must be filled in
+   */
+  private State simulate(Profile[] profiles, int first_k,
+      IntertemporalOriginsSplitRatios splits, Demands demands, boolean print) {
+    int T = time_discretization.getNb_steps();
+    double delta_t = time_discretization.getDelta_t();
+
+    for (int k = first_k; k < T; k++) {
+      if (k == 1) {
         profiles[k] = lwr_network.simulateProfileFrom(
-            lwr_network.emptyProfile(),
+            initialProfile(initial_previous_profile),
             profiles[k - 1],
             delta_t,
-            origin_demands, splits,
+            demands, splits,
             k - 1);
       } else {
         profiles[k] = lwr_network.simulateProfileFrom(profiles[k - 2],
             profiles[k - 1],
             delta_t,
-            origin_demands, splits,
+            demands, splits,
             k - 1);
       }
 
-      if (k > 0 && print) {
+      if (print) {
         System.out.println("****** Printing profile at time step " + (k - 1)
             + "********");
         profiles[k - 1].print();
@@ -194,7 +269,7 @@ public class Simulator {
     lwr_network.simulateProfileFrom(profiles[T - 2],
         profiles[T - 1],
         delta_t,
-        origin_demands, splits,
+        demands, splits,
         T - 1);
 
     if (print) {
@@ -213,6 +288,46 @@ public class Simulator {
     return new State(profiles);
   }
 
+  /**
+   * @return A copy of the given initial profile or an empty profile if it is
+   *         null. The simulation modifies the flows of the profile
+   */
+  private Profile initialProfile(Profile profile) {
+    if (profile == null)
+      return lwr_network.emptyProfile();
+    return profile.copy();
+  }
+
+  /**
+   * @brief Sets the state of the network at the beginning of the simulations
+   * @details The densities of the cells at the first time step are the ones of
+   *          initial. The densities of the buffers at the first time step are
+   *          computed from the densities and the out-flows of previous, which
+   *          is the profile of the time step before. The profiles are copied.
+   *          Null profiles give an empty network
+   */
+  public void setInitialProfiles(Profile previous, Profile initial) {
+    assert (previous == null) == (initial == null) : "Both initial profiles"
+        + " must be given";
+    version++;
+    if (initial == null) {
+      initial_previous_profile = null;
+      initial_profile = null;
+      return;
+    }
+    initial_previous_profile = previous.copy();
+    initial_profile = initial.copy();
+  }
+
+  /**
+   * @return A number that changes every time the initial profiles are set. A
+   *         simulation of a control gives the same state as long as it and
+   *         origin_demands do not change
+   */
+  public int getVersion() {
+    return version;
+  }
+
   /**
    * @return The share of the compliant agents
    */
@@ -233,13 +348,9 @@ public class Simulator {
    */
   public void initializSplitRatios() {
 
-    int nb_steps = time_discretization.getNb_steps();
     System.out
         .print("Initializing physical split-ratios at the origins...");
-    splits =
-        IntertemporalOriginsSplitRatios.defaultPhysicalSplitRatios(
-            nb_steps,
-            discretized_graph.sources, alpha);
+    splits = network.newSplitRatios(alpha);
     System.out.println("Done");
   }
 
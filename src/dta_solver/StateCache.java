@@ -0,0 +1,193 @@
+package dta_solver;
+
+import generalNetwork.state.CellInfo;
+import generalNetwork.state.Profile;
+import generalNetwork.state.State;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * @class StateCache
+ * @brief Bounded cache of the states given by the simulation of controls
+ * @details The controls are compared exactly. When the estimated memory
+ *          footprint of the stored states is larger than the limit, the least
+ *          recently used states are removed.
+ */
+public class StateCache {
+
+  /* Estimated size of an entry of a LinkedHashMap<Integer, Double> */
+  private static final long MAP_ENTRY_BYTES = 80;
+  /* Estimated size of an empty LinkedHashMap */
+  private static final long MAP_BYTES = 64;
+  /* Estimated size of a CellInfo without its maps */
+  private static final long CELL_BYTES = 48;
+  /* Estimated size of a JunctionInfo with its maps */
+  private static final long JUNCTION_BYTES = 256;
+
+  private static class Key {
+    private double[] control;
+    private int hash_code;
+
+    Key(double[] control) {
+      this.control = control;
+      hash_code = Arrays.hashCode(control);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash_code;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key))
+        return false;
+      Key other = (Key) obj;
+      return hash_code == other.hash_code
+          && Arrays.equals(control, other.control);
+    }
+  }
+
+  private static class Value {
+    private State state;
+    private long footprint;
+
+    Value(State state, long footprint) {
+      this.state = state;
+      this.footprint = footprint;
+    }
+  }
+
+  /* Maximum estimated footprint of the stored states, in bytes */
+  private long max_footprint;
+  /* Estimated footprint of the stored states, in bytes */
+  private long footprint = 0;
+  /* The entries are ordered from the least to the most recently used */
+  private LinkedHashMap<Key, Value> states =
+      new LinkedHashMap<Key, Value>(16, 0.75f, true);
+
+  private int hits = 0;
+  private int misses = 0;
+
+  /**
+   * @param max_footprint
+   *          Maximum estimated footprint of the stored states, in bytes. 0
+   *          disables the cache
+   */
+  public StateCache(long max_footprint) {
+    assert max_footprint >= 0;
+    this.max_footprint = max_footprint;
+  }
+
+  /**
+   * @return The state stored for this control, or null if there is none
+   */
+  public synchronized State get(double[] control) {
+    Value value = states.get(new Key(control));
+    if (value == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return value.state;
+  }
+
+  /**
+   * @brief Stores the state given by the simulation of the control
+   * @details The control is copied. A state larger than the maximum footprint
+   *          is not stored.
+   */
+  public synchronized void put(double[] control, State state) {
+    long state_footprint = footprint(state) + 8 * control.length;
+    if (state_footprint > max_footprint)
+      return;
+
+    Value previous = states.put(new Key(Arrays.copyOf(control,
+        control.length)), new Value(state, state_footprint));
+    if (previous != null)
+      footprint -= previous.footprint;
+    footprint += state_footprint;
+
+    evict();
+  }
+
+  /* Removes the least recently used states until the footprint fits */
+  private void evict() {
+    Iterator<Entry<Key, Value>> it = states.entrySet().iterator();
+    while (footprint > max_footprint) {
+      footprint -= it.next().getValue().footprint;
+      it.remove();
+    }
+  }
+
+  /**
+   * @brief Removes all the stored states
+   * @details It must be called when the simulation of a given control may
+   *          have changed (demands, network...)
+   */
+  public synchronized void clear() {
+    states.clear();
+    footprint = 0;
+  }
+
+  /**
+   * @return An estimation of the memory used by the state, in bytes
+   */
+  public static long footprint(State state) {
+    long result = 0;
+    for (int k = 0; k < state.size(); k++) {
+      Profile profile = state.get(k);
+      if (profile == null)
+        continue;
+      for (int cell_id = 0; cell_id < profile.CellInfoSize(); cell_id++) {
+        CellInfo info = profile.getCell(cell_id);
+        if (info == null)
+          continue;
+        result += CELL_BYTES + mapFootprint(info.partial_densities)
+            + mapFootprint(info.in_flows) + mapFootprint(info.out_flows);
+      }
+      result += JUNCTION_BYTES * profile.JunctionsInfoSize();
+    }
+    return result;
+  }
+
+  private static long mapFootprint(LinkedHashMap<Integer, Double> map) {
+    if (map == null)
+      return 0;
+    return MAP_BYTES + MAP_ENTRY_BYTES * map.size();
+  }
+
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  public synchronized void resetCounters() {
+    hits = 0;
+    misses = 0;
+  }
+
+  public synchronized int size() {
+    return states.size();
+  }
+
+  public synchronized long getFootprint() {
+    return footprint;
+  }
+
+  public synchronized long getMax_footprint() {
+    return max_footprint;
+  }
+
+  public synchronized void setMax_footprint(long max_footprint) {
+    assert max_footprint >= 0;
+    this.max_footprint = max_footprint;
+    evict();
+  }
+}
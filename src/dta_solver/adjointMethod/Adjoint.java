@@ -21,16 +21,19 @@ public abstract class Adjoint<T extends JavaSystemState> implements
   SparseDoubleAlgebra algebra = new SparseDoubleAlgebra();
   /** Linear algebraic matrix operations operating on dense matrices */
   DenseDoubleAlgebra dAlg = new DenseDoubleAlgebra();
+  /** Solver of the adjoint system */
+  BlockTriangularSolver solver = new BlockTriangularSolver();
   /** Maximum number of iterations */
   private int maxIter = 100;
-  /** The Optimizer which has to be an IpOpt object for now */
+  /** The native Ipopt optimizer, used only if use_native_ipopt is true */
   private IpOptOptimizer ipOptOptimizer;
+  /** If false, the pure Java LBFGSBOptimizer is used instead of Ipopt */
+  private boolean use_native_ipopt = false;
 
   public Adjoint(int maxIter) {
     algebra = new SparseDoubleAlgebra();
     dAlg = new DenseDoubleAlgebra();
     this.maxIter = maxIter;
-    ipOptOptimizer = new IpOptOptimizer(this);
   }
 
   public abstract SparseCCDoubleMatrix2D dhdx(T state, double[] control);
@@ -63,21 +66,40 @@ public abstract class Adjoint<T extends JavaSystemState> implements
       gradient_f[i] = temp[i];
   }
 
+  /**
+   * @brief Solves dH/dx^T * lambda = dJ/dx^T
+   * @details dH/dx is block lower triangular with nbTimeBlocks() diagonal
+   *          blocks. It is solved by block back-substitution without forming
+   *          any dense matrix
+   */
   public DoubleMatrix1D adjointVector(T state, double[] control) {
-    // SparseCCDoubleMatrix2D dhdxTranspose = dhdx(state,
-    // control).getTranspose();
-    SparseCCDoubleMatrix2D dhdxTranspose = new SparseCCDoubleMatrix2D(dAlg
-        .transpose(dhdx(state, control))
-        .toArray());
-    SparseDoubleMatrix1D djdx = djdx(state, control);
-    return algebra.solve(dhdxTranspose, djdx);
-
-    // return Dcs_lsolve.cs_lsolve(dhdxTranspose, djdx);
+    return solver.solveTranspose(dhdx(state, control), djdx(state, control),
+        nbTimeBlocks());
+  }
+
+  /**
+   * @brief Number of diagonal blocks of dH/dx
+   * @details When H is causal in time, dH/dx is block lower triangular with
+   *          one block per time step. With 1 block, the whole system is
+   *          solved by a sparse LU decomposition
+   */
+  protected int nbTimeBlocks() {
+    return 1;
   }
 
   public double[] optimize(double[] startPoint) {
 
+    if (!use_native_ipopt) {
+      LBFGSBOptimizer optimizer = new LBFGSBOptimizer(this);
+      optimizer.setMaxIter(maxIter);
+      optimizer.OptimizeNLP();
+      return optimizer.getState();
+    }
+
     int n = getStartingPoint().length;
+    /* The native Ipopt library is only loaded when it is used */
+    if (ipOptOptimizer == null)
+      ipOptOptimizer = new IpOptOptimizer(this);
     // solver.fn = f
     // solver.u0 = startPoint
     ipOptOptimizer.create(n, 0, 0, 0, Ipopt.C_STYLE);
@@ -139,4 +161,12 @@ public abstract class Adjoint<T extends JavaSystemState> implements
   public void setMaxIter(int maxIter) {
     this.maxIter = maxIter;
   }
+
+  public boolean isUse_native_ipopt() {
+    return use_native_ipopt;
+  }
+
+  public void setUse_native_ipopt(boolean use_native_ipopt) {
+    this.use_native_ipopt = use_native_ipopt;
+  }
 }
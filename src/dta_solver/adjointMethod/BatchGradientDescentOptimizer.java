@@ -0,0 +1,20 @@
+package dta_solver.adjointMethod;
+
+/**
+ * Interface for a gradient descent where the cost function can be evaluated
+ * at several points at once, for instance with concurrent forward simulations
+ */
+public interface BatchGradientDescentOptimizer extends
+    GradientDescentOptimizer {
+
+  /**
+   * @brief Evaluates the cost function at all the given points
+   * @details It must give the same results as objective(controls[i]) for
+   *          every i
+   * @param controls
+   *          The points where the cost function is evaluated. They are not
+   *          modified
+   * @return The evaluations of the cost function in the order of controls
+   */
+  public double[] objectives(double[][] controls);
+}
@@ -0,0 +1,161 @@
+package dta_solver.adjointMethod;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.algo.SparseDoubleAlgebra;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+
+/**
+ * @class BlockTriangularSolver
+ * @brief Solves A^T * x = b when A is block lower triangular
+ * @details A is a square sparse matrix stored by columns with nb_blocks
+ *          diagonal blocks of the same size. A^T is then block upper
+ *          triangular and is solved by block back-substitution from the last
+ *          block: the column i of A is the line i of A^T.
+ *          If a diagonal block is lower triangular with a non zero diagonal,
+ *          it is solved by back-substitution. Otherwise, its transpose is
+ *          built as a sparse matrix and solved by a sparse LU decomposition.
+ *          No dense matrix is ever built.
+ */
+public class BlockTriangularSolver {
+
+  private SparseDoubleAlgebra algebra = new SparseDoubleAlgebra();
+
+  /* Number of diagonal blocks solved by LU in the last call */
+  private int nb_lu_blocks = 0;
+
+  /**
+   * @param A
+   *          A square block lower triangular matrix
+   * @param b
+   *          The right hand side
+   * @param nb_blocks
+   *          The number of diagonal blocks of A. It must divide the size of A
+   * @return The solution x of A^T * x = b
+   * @throws IllegalArgumentException
+   *           If the sizes of A, b and nb_blocks do not match
+   * @throws IllegalStateException
+   *           If A is not block lower triangular
+   */
+  public DoubleMatrix1D solveTranspose(SparseCCDoubleMatrix2D A,
+      DoubleMatrix1D b, int nb_blocks) {
+
+    int n = A.rows();
+    if (A.columns() != n || b.size() != n || nb_blocks <= 0
+        || n % nb_blocks != 0) {
+      throw new IllegalArgumentException("[BlockTriangularSolver]Invalid "
+          + "sizes: A is " + A.rows() + "x" + A.columns() + ", b is "
+          + b.size() + " and " + nb_blocks + " blocks");
+    }
+    int m = n / nb_blocks;
+
+    int[] column_pointers = A.getColumnPointers();
+    int[] row_indexes = A.getRowIndexes();
+    double[] values = A.getValues();
+
+    double[] x = new double[n];
+    double[] rhs = new double[m];
+    nb_lu_blocks = 0;
+
+    for (int block = nb_blocks - 1; block >= 0; block--) {
+      int begin = block * m;
+      int end = begin + m;
+
+      /*
+       * We remove the contribution of the already solved blocks and check
+       * whether the diagonal block is lower triangular
+       */
+      boolean triangular = true;
+      for (int i = begin; i < end; i++) {
+        double value = b.getQuick(i);
+        for (int p = column_pointers[i]; p < column_pointers[i + 1]; p++) {
+          int row = row_indexes[p];
+          if (row >= end) {
+            value -= values[p] * x[row];
+          } else if (row < begin) {
+            if (values[p] != 0)
+              throw new IllegalStateException("[BlockTriangularSolver]The "
+                  + "matrix is not block lower triangular: non zero term at ("
+                  + row + ", " + i + ")");
+          } else if (row < i && values[p] != 0) {
+            triangular = false;
+          }
+        }
+        rhs[i - begin] = value;
+      }
+
+      /* Back-substitution on the diagonal block */
+      if (triangular) {
+        for (int i = end - 1; i >= begin; i--) {
+          double value = rhs[i - begin];
+          double diagonal = 0;
+          for (int p = column_pointers[i]; p < column_pointers[i + 1]; p++) {
+            int row = row_indexes[p];
+            if (row == i)
+              diagonal += values[p];
+            else if (row > i && row < end)
+              value -= values[p] * x[row];
+          }
+          if (diagonal == 0) {
+            triangular = false;
+            break;
+          }
+          x[i] = value / diagonal;
+        }
+      }
+
+      if (!triangular) {
+        nb_lu_blocks++;
+        DoubleMatrix1D solution = algebra.solve(
+            transposedDiagonalBlock(A, begin, end),
+            new DenseDoubleMatrix1D(rhs));
+        for (int i = begin; i < end; i++)
+          x[i] = solution.getQuick(i - begin);
+      }
+    }
+
+    return new DenseDoubleMatrix1D(x);
+  }
+
+  /**
+   * @return The transpose of the block [begin, end)x[begin, end) of A
+   */
+  private SparseCCDoubleMatrix2D transposedDiagonalBlock(
+      SparseCCDoubleMatrix2D A, int begin, int end) {
+    int[] column_pointers = A.getColumnPointers();
+    int[] row_indexes = A.getRowIndexes();
+    double[] values = A.getValues();
+
+    int nnz = 0;
+    for (int i = begin; i < end; i++)
+      for (int p = column_pointers[i]; p < column_pointers[i + 1]; p++)
+        if (row_indexes[p] >= begin && row_indexes[p] < end)
+          nnz++;
+
+    int[] rows = new int[nnz];
+    int[] columns = new int[nnz];
+    double[] block_values = new double[nnz];
+    int index = 0;
+    for (int i = begin; i < end; i++)
+      for (int p = column_pointers[i]; p < column_pointers[i + 1]; p++) {
+        int row = row_indexes[p];
+        if (row >= begin && row < end) {
+          rows[index] = i - begin;
+          columns[index] = row - begin;
+          block_values[index] = values[p];
+          index++;
+        }
+      }
+
+    return new SparseCCDoubleMatrix2D(end - begin, end - begin, rows,
+        columns, block_values, false, false, true);
+  }
+
+  /**
+   * @return The number of diagonal blocks that were not triangular in the
+   *         last call to solveTranspose
+   */
+  public int getNb_lu_blocks() {
+    return nb_lu_blocks;
+  }
+}
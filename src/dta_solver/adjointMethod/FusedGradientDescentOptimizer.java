@@ -0,0 +1,22 @@
+package dta_solver.adjointMethod;
+
+/**
+ * Interface for a gradient descent where the cost function and its gradient
+ * can be evaluated together, for instance with one forward simulation and one
+ * adjoint computation
+ */
+public interface FusedGradientDescentOptimizer extends
+    GradientDescentOptimizer {
+
+  /**
+   * @brief Evaluates the cost function and its gradient at the same point
+   * @details It must give the same results as objective(control) and
+   *          gradient(gradient_f, control)
+   * @param gradient_f
+   *          The array that will contain the gradient
+   * @param control
+   *          The point where the cost function and the gradient are computed
+   * @return The evaluation of the cost function at control
+   */
+  public double objectiveAndGradient(double[] gradient_f, double[] control);
+}
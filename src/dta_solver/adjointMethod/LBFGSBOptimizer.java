@@ -0,0 +1,342 @@
+package dta_solver.adjointMethod;
+
+import optimization.LimitedMemoryBFGS;
+
+import dataStructures.Simplex;
+
+/**
+ * @class LBFGSBOptimizer
+ * @brief Pure Java replacement of IpOptOptimizer: a limited-memory
+ *        quasi-Newton method with bounds and linear equality constraints
+ * @details The problem is min f(x) such that lower <= x <= upper and, if
+ *          the function is a SimplexGradientDescentOptimizer, every block
+ *          given by getSimplexBlocks() is in the simplex {x >= 0, sum x = 1}.
+ *          The bounds of the variables in no block are 0 <= x_i <= 1000 as
+ *          in IpOptOptimizer, or 0 <= x_i <= 1 for a
+ *          SimplexGradientDescentOptimizer.
+ *          As in L-BFGS-B, every iteration:
+ *          - computes the active set: the variables at a bound that the
+ *          projected gradient pushes outside,
+ *          - computes the quasi-Newton direction of LimitedMemoryBFGS
+ *          restricted to the free variables and to the sums of the blocks,
+ *          - searches the step on the projected arc x(t) = P(x + t * d) with
+ *          LimitedMemoryBFGS.projectedSearch.
+ *          P is the exact euclidean projection on the feasible set: the
+ *          blocks are projected by Simplex.project and the other variables
+ *          are clipped to their bounds.
+ *          The use is the same as IpOptOptimizer: OptimizeNLP() returns a
+ *          status with the same codes as Ipopt, and getState() the solution.
+ */
+public class LBFGSBOptimizer {
+
+  /* Same return codes as org.coinor.Ipopt */
+  public final static int SOLVE_SUCCEEDED = 0;
+  public final static int SEARCH_DIRECTION_TOO_SMALL = 3;
+  public final static int ITERATION_EXCEEDED = -1;
+
+  /**
+   * The black box giving the initial point, the value and the gradient of the
+   * cost function
+   */
+  private GradientDescentOptimizer gradient_descent;
+
+  /* The function with the projection on the feasible set */
+  private BoundedFunction bounded_function = new BoundedFunction();
+
+  /* Bounds of the variables. They are [0, 1] in the simplex blocks */
+  private double[] lower, upper;
+  /* Simplex blocks {begin, length}. in_block[i] is true in a block */
+  private int[][] blocks;
+  private boolean[] in_block;
+
+  /* Maximum number of iterations */
+  private int max_iter = 100;
+  /* The stopping criteria is || projected gradient ||_2^2 < tolerance */
+  private double tolerance = 1E-8;
+  /* A variable at less than bound_tolerance from a bound is at the bound */
+  private double bound_tolerance = 1E-12;
+
+  /* Pairs (s, y) and search on the projected arc */
+  private LimitedMemoryBFGS lbfgs = new LimitedMemoryBFGS();
+
+  /* Results of the last call to OptimizeNLP() */
+  private double[] x;
+  private double obj_val;
+  private int nb_iterations;
+  private int status;
+
+  public LBFGSBOptimizer(GradientDescentOptimizer gradient_descent) {
+    this.gradient_descent = gradient_descent;
+    int n = gradient_descent.getStartingPoint().length;
+    lower = new double[n];
+    upper = new double[n];
+    in_block = new boolean[n];
+
+    if (gradient_descent instanceof SimplexGradientDescentOptimizer) {
+      blocks = ((SimplexGradientDescentOptimizer) gradient_descent)
+          .getSimplexBlocks();
+      for (int b = 0; b < blocks.length; b++)
+        for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+          in_block[i] = true;
+          upper[i] = 1;
+        }
+      setBounds(0, 1);
+    } else {
+      blocks = new int[0][];
+      setBounds(0, 1000);
+    }
+  }
+
+  /**
+   * @brief Sets the same bounds to all the variables that are in no simplex
+   *        block
+   */
+  public void setBounds(double lower_bound, double upper_bound) {
+    assert lower_bound <= upper_bound;
+    for (int i = 0; i < lower.length; i++)
+      if (!in_block[i]) {
+        lower[i] = lower_bound;
+        upper[i] = upper_bound;
+      }
+  }
+
+  /**
+   * @brief Solves the problem from the starting point of the function
+   * @return The status of the resolution, with the codes of Ipopt
+   */
+  public int OptimizeNLP() {
+    int n = lower.length;
+    lbfgs.clearHistory();
+
+    x = gradient_descent.getStartingPoint().clone();
+    bounded_function.projectControl(x);
+    double[] gradient = new double[n];
+    obj_val = evaluate(gradient, x);
+    double[] projected = new double[n];
+    boolean[] free = new boolean[n];
+
+    status = ITERATION_EXCEEDED;
+    for (nb_iterations = 0; nb_iterations < max_iter; nb_iterations++) {
+      projectedGradient(x, gradient, projected, free);
+      if (LimitedMemoryBFGS.squaredNorm(projected) < tolerance) {
+        status = SOLVE_SUCCEEDED;
+        break;
+      }
+
+      double[] next_x = lbfgs.projectedSearch(x, obj_val, gradient,
+          direction(projected, free), bounded_function);
+      if (next_x == null && !lbfgs.isHistoryEmpty()) {
+        lbfgs.clearHistory();
+        next_x = lbfgs.projectedSearch(x, obj_val, gradient,
+            direction(projected, free), bounded_function);
+      }
+      if (next_x == null) {
+        status = SEARCH_DIRECTION_TOO_SMALL;
+        break;
+      }
+
+      double[] next_gradient = new double[n];
+      obj_val = evaluate(next_gradient, next_x);
+      lbfgs.addPair(x, next_x, gradient, next_gradient);
+      x = next_x;
+      gradient = next_gradient;
+    }
+    return status;
+  }
+
+  /**
+   * @brief Computes the cost and the gradient at point
+   * @return The cost at point
+   */
+  private double evaluate(double[] gradient, double[] point) {
+    if (gradient_descent instanceof FusedGradientDescentOptimizer)
+      return ((FusedGradientDescentOptimizer) gradient_descent)
+          .objectiveAndGradient(gradient, point);
+
+    double result = gradient_descent.objective(point);
+    gradient_descent.gradient(gradient, point);
+    return result;
+  }
+
+  /**
+   * @brief Projects the gradient on the tangent cone of the feasible set at
+   *        point
+   * @details A variable at its lower (resp. upper) bound is fixed when the
+   *          projected gradient is positive (resp. negative) there. In a
+   *          block, the projected gradient of the free variables is the
+   *          gradient minus its mean over the free variables of the block,
+   *          the fixed variables being found iteratively
+   * @param free
+   *          Filled in with true for the variables that are not fixed
+   */
+  private void projectedGradient(double[] point, double[] gradient,
+      double[] projected, boolean[] free) {
+    for (int i = 0; i < point.length; i++) {
+      if (in_block[i])
+        continue;
+      free[i] = !isBlocked(point, i, gradient[i]);
+      projected[i] = free[i] ? gradient[i] : 0;
+    }
+
+    for (int b = 0; b < blocks.length; b++) {
+      int begin = blocks[b][0];
+      int end = begin + blocks[b][1];
+      for (int i = begin; i < end; i++)
+        free[i] = true;
+      double mean;
+      boolean changed;
+      do {
+        mean = freeMean(begin, end, gradient, free);
+        changed = false;
+        for (int i = begin; i < end; i++)
+          if (free[i] && isBlocked(point, i, gradient[i] - mean)) {
+            free[i] = false;
+            changed = true;
+          }
+      } while (changed);
+
+      for (int i = begin; i < end; i++)
+        projected[i] = free[i] ? gradient[i] - mean : 0;
+    }
+  }
+
+  /**
+   * @return True if the variable i is at a bound and a descent along
+   *         -derivative would go out of the bounds
+   */
+  private boolean isBlocked(double[] point, int i, double derivative) {
+    return (derivative > 0 && point[i] <= lower[i] + bound_tolerance)
+        || (derivative < 0 && point[i] >= upper[i] - bound_tolerance);
+  }
+
+  /**
+   * @return The mean of the values of the free variables in [begin, end). 0
+   *         if there are none
+   */
+  private static double freeMean(int begin, int end, double[] values,
+      boolean[] free) {
+    double sum = 0;
+    int nb_free = 0;
+    for (int i = begin; i < end; i++)
+      if (free[i]) {
+        sum += values[i];
+        nb_free++;
+      }
+    if (nb_free == 0)
+      return 0;
+    return sum / nb_free;
+  }
+
+  /**
+   * @return The direction -H * projected given by the two-loop recursion. It
+   *         is zero on the fixed variables and it keeps the sums of the
+   *         blocks
+   */
+  private double[] direction(double[] projected, boolean[] free) {
+    double[] q = lbfgs.direction(projected);
+
+    /* Restriction to the free variables and to the sums of the blocks */
+    for (int i = 0; i < q.length; i++)
+      if (!free[i])
+        q[i] = 0;
+    for (int b = 0; b < blocks.length; b++) {
+      int begin = blocks[b][0];
+      int end = begin + blocks[b][1];
+      double mean = freeMean(begin, end, q, free);
+      for (int i = begin; i < end; i++)
+        if (free[i])
+          q[i] -= mean;
+    }
+
+    /* We keep a descent direction */
+    if (!lbfgs.isHistoryEmpty()
+        && LimitedMemoryBFGS.scalarProduct(q, projected) >= 0) {
+      lbfgs.clearHistory();
+      return direction(projected, free);
+    }
+    return q;
+  }
+
+  /**
+   * @class BoundedFunction
+   * @brief The function whose projectControl is the euclidean projection
+   *        on the feasible set
+   */
+  private class BoundedFunction implements GradientDescentOptimizer {
+
+    @Override
+    public void gradient(double[] gradient_f, double[] control) {
+      gradient_descent.gradient(gradient_f, control);
+    }
+
+    @Override
+    public double objective(double[] control) {
+      return gradient_descent.objective(control);
+    }
+
+    @Override
+    public double[] getStartingPoint() {
+      return gradient_descent.getStartingPoint();
+    }
+
+    /**
+     * @details The simplex blocks are projected by Simplex.project and the
+     *          other variables are clipped to their bounds
+     */
+    @Override
+    public void projectControl(double[] control) {
+      for (int i = 0; i < control.length; i++)
+        if (!in_block[i])
+          control[i] = Math.min(upper[i], Math.max(lower[i], control[i]));
+      for (int b = 0; b < blocks.length; b++)
+        Simplex.project(control, blocks[b][0], blocks[b][1]);
+    }
+  }
+
+  /**
+   * @return The solution found by the last call to OptimizeNLP()
+   */
+  public double[] getState() {
+    return x;
+  }
+
+  /**
+   * @return The cost of the solution found by the last call to OptimizeNLP()
+   */
+  public double getObjVal() {
+    return obj_val;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public int getNb_iterations() {
+    return nb_iterations;
+  }
+
+  public int getMaxIter() {
+    return max_iter;
+  }
+
+  public void setMaxIter(int max_iter) {
+    assert max_iter >= 0;
+    this.max_iter = max_iter;
+  }
+
+  public int getHistory_size() {
+    return lbfgs.getHistory_size();
+  }
+
+  public void setHistory_size(int history_size) {
+    lbfgs.setHistory_size(history_size);
+  }
+
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  public void setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+  }
+}
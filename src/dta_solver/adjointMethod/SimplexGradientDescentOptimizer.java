@@ -0,0 +1,15 @@
+package dta_solver.adjointMethod;
+
+/**
+ * Interface for a gradient descent where the control is made of blocks that
+ * each lie on the simplex {x >= 0, sum x = 1}
+ */
+public interface SimplexGradientDescentOptimizer extends
+    GradientDescentOptimizer {
+
+  /**
+   * @return The blocks of the control. The block b is made of the indexes
+   *         [blocks[b][0], blocks[b][0] + blocks[b][1])
+   */
+  public int[][] getSimplexBlocks();
+}
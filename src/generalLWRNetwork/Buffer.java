@@ -15,12 +15,12 @@ public class Buffer extends Cell {
 
   private Junction next;
 
-  public Buffer() {
-    super();
+  public Buffer(NetworkUIDFactory id) {
+    super(id);
   }
 
-  public Buffer(Junction next) {
-    super();
+  public Buffer(NetworkUIDFactory id, Junction next) {
+    super(id);
     this.next = next;
   }
 
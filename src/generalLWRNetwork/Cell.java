@@ -9,8 +9,8 @@ import java.util.LinkedHashMap;
 public abstract class Cell {
   private int unique_id;
 
-  public Cell() {
-    unique_id = NetworkUIDFactory.getId_cell();
+  public Cell(NetworkUIDFactory id) {
+    unique_id = id.getId_cell();
   }
 
   public int getUniqueId() {
@@ -6,8 +6,8 @@ public class Destination {
 
   Sink sink;
 
-  public Destination(Junction j, String type, LinkedList<Cell> new_cells,
-      LinkedList<Junction> new_junctions) {
+  public Destination(NetworkUIDFactory id, Junction j, String type,
+      LinkedList<Cell> new_cells, LinkedList<Junction> new_junctions) {
     assert j != null;
     assert type != null;
     assert j.getNext() == null : "A destination junction should have no outgoing links";
@@ -18,7 +18,7 @@ public class Destination {
       int nb_incoming_links = j.getPrev().length;
       assert nb_incoming_links > 0 : "The destination " + j.getUniqueId() + " has no incoming links";
 
-      sink = new Sink();
+      sink = new Sink(id);
       new_cells.add(sink);
 
       Cell cell;
@@ -26,7 +26,7 @@ public class Destination {
       for (int i = 0; i < nb_incoming_links - 1; i++) {
         cell = j.getPrev()[i];
 
-        tmp = new Junction(new Cell[] { cell }, new Cell[] { sink });
+        tmp = new Junction(id, new Cell[] { cell }, new Cell[] { sink });
         new_junctions.add(tmp);
         cell.setNext(tmp);
       }
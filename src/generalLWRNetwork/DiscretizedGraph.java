@@ -42,9 +42,13 @@ public class DiscretizedGraph {
   /* Contains the destinations */
   Destination[] destinations;
   int total_nb_junctions = 0, total_nb_cells = 0;
+  /* Unique id generator for the cells and junctions of this graph */
+  private NetworkUIDFactory id_factory = new NetworkUIDFactory();
 
   public IntertemporalSplitRatios split_ratios;
   int nb_paths;
+  /* free_flow_travel_times[c] is the free-flow travel time of path c */
+  private double[] free_flow_travel_times;
 
   public DiscretizedGraph(Graph g, double delta_t, int time_steps) {
     graph_nodes = g.getNodes();
@@ -56,10 +60,6 @@ public class DiscretizedGraph {
     new_junctions = new LinkedList<Junction>();
     node_to_origin = new HashMap<Integer, Origin>();
 
-    /* Reset the unique id generators for cells and junctions */
-    NetworkUIDFactory.resetCell_id();
-    NetworkUIDFactory.resetJunction_id();
-
     /* Discretize all the links */
     link_to_cells = new LinkPair[graph_links.length];
     for (int i = 0; i < graph_links.length; i++) {
@@ -87,7 +87,7 @@ public class DiscretizedGraph {
     int nb_origins = g.getOrigins().length;
     sources = new Origin[nb_origins];
     for (int o = 0; o < nb_origins; o++) {
-      sources[o] = new Origin(junctions[g.getOrigins()[o].id],
+      sources[o] = new Origin(id_factory, junctions[g.getOrigins()[o].id],
           g.getOrigins()[o].type,
           new_cells, new_junctions);
       node_to_origin.put(g.getOrigins()[o].id, sources[o]);
@@ -100,7 +100,8 @@ public class DiscretizedGraph {
     int nb_destinations = g.getDestinations().length;
     destinations = new Destination[nb_destinations];
     for (int d = 0; d < nb_destinations; d++) {
-      destinations[d] = new Destination(junctions[g.getDestinations()[d].id],
+      destinations[d] = new Destination(id_factory,
+          junctions[g.getDestinations()[d].id],
           g.getDestinations()[d].type, new_cells, new_junctions);
     }
 
@@ -141,8 +142,26 @@ public class DiscretizedGraph {
 
     nb_paths = paths.length;
 
-    total_nb_junctions = NetworkUIDFactory.IdJunction() + 1;
-    total_nb_cells = NetworkUIDFactory.IdCell() + 1;
+    free_flow_travel_times = new double[nb_paths];
+    for (int c = 0; c < nb_paths; c++) {
+      Iterator<Integer> links = paths[c].iterator();
+      while (links.hasNext()) {
+        Link link = graph_links[links.next()];
+        free_flow_travel_times[c] += link.l / link.v;
+      }
+    }
+
+    total_nb_junctions = id_factory.IdJunction() + 1;
+    total_nb_cells = id_factory.IdCell() + 1;
+  }
+
+  /**
+   * @return The sum of length / free-flow speed over the links of the path of
+   *         the compliant commodity
+   */
+  public double getFreeFlowTravelTime(int commodity) {
+    assert commodity > 0 : "The commodity 0 is the non-compliant commodity";
+    return free_flow_travel_times[commodity - 1];
   }
 
   /**
@@ -168,7 +187,8 @@ public class DiscretizedGraph {
     Junction current_j = null, previous_j = null;
     int i;
     for (i = 0; i < nb_cell_to_build - 1; i++) {
-      cell = new RoadChunk(v * delta_t, v, w, F_max, jam_density);
+      cell = new RoadChunk(id_factory, v * delta_t, v, w, F_max,
+          jam_density);
       new_cells.add(cell);
       if (i == 0) {
         result.begin = cell;
@@ -176,7 +196,7 @@ public class DiscretizedGraph {
       if (previous_j != null) {
         previous_j.setNext(new Cell[] { cell });
       }
-      current_j = new Junction();
+      current_j = new Junction(id_factory);
       new_junctions.add(current_j);
 
       current_j.setPrev(new Cell[] { cell });
@@ -187,7 +207,7 @@ public class DiscretizedGraph {
       cell.setNext(current_j);
 
     // Last cell (or unique cell) of the link
-    cell = new RoadChunk(v * delta_t, v, w, F_max, jam_density);
+    cell = new RoadChunk(id_factory, v * delta_t, v, w, F_max, jam_density);
     new_cells.add(cell);
     if (i == 0) {
       result.begin = cell;
@@ -206,7 +226,7 @@ public class DiscretizedGraph {
    * @return
    */
   private Junction discretizeJunction(Node node, double delta_t) {
-    Junction result = new Junction();
+    Junction result = new Junction(id_factory);
 
     int nb_incoming = node.incoming_links.size();
     int nb_outgoing = node.outgoing_links.size();
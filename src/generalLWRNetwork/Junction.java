@@ -14,7 +14,8 @@ import dataStructures.PairCells;
 
 /**
  * @brief Represents a junction between cells
- * @details For now we only accept 1*1 junctions
+ * @details The 1xN and 2x1 junctions have their own model. The other NxM
+ *          junctions restrict all their incoming links by the same factor
  * 
  */
 public class Junction {
@@ -24,8 +25,8 @@ public class Junction {
   private Cell[] next;
   private HashMap<Integer, Double> priorities;
 
-  public Junction() {
-    unique_id = NetworkUIDFactory.getId_junctions();
+  public Junction(NetworkUIDFactory id) {
+    unique_id = id.getId_junctions();
     prev = null;
     next = null;
   }
@@ -35,8 +36,9 @@ public class Junction {
    * @param predecessor
    * @param successor
    */
-  public Junction(Cell[] predecessor, Cell[] successor) {
-    unique_id = NetworkUIDFactory.getId_junctions();
+  public Junction(NetworkUIDFactory id, Cell[] predecessor,
+      Cell[] successor) {
+    unique_id = id.getId_junctions();
     this.prev = predecessor.clone();
     this.next = successor.clone();
   }
@@ -404,9 +406,132 @@ public class Junction {
               + out_flow_for_commodity);
         }
       }
+      // Other NxM junctions
     } else {
-      System.out.println("Only 1x1, 1xN and 1x2 junctions are working for now");
-      System.exit(1);
+      solveNxMJunction(p, j_info, junction_sr);
+    }
+  }
+
+  /**
+   * @return The aggregate split ratio beta(i,j) = sum_c rho(i,c) beta(i,j,c) /
+   *         rho(i) of the incoming cell in_info. It is 1 for a merging
+   *         junction
+   */
+  private double aggregateSR(CellInfo in_info, int in_id, int out_id,
+      JunctionSplitRatios junction_sr) {
+    if (isMergingJunction())
+      return 1.0;
+    if (in_info.total_density == 0)
+      return 0.0;
+
+    double result = 0;
+    Iterator<Entry<Integer, Double>> iterator_partial_densities =
+        in_info.partial_densities.entrySet().iterator();
+    Entry<Integer, Double> entry_density;
+    Double beta_ijc;
+    while (iterator_partial_densities.hasNext()) {
+      entry_density = iterator_partial_densities.next();
+      beta_ijc = junction_sr.get(in_id, out_id, entry_density.getKey());
+      if (beta_ijc != null)
+        result += entry_density.getValue() * beta_ijc;
+    }
+    return result / in_info.total_density;
+  }
+
+  /**
+   * @brief Solves a NxM junction that is neither 1xN nor 2x1
+   * @details All the incoming links are restricted by the same factor:
+   *          flow_out(i) = theta * demand(i) with
+   *          theta = min(1, min_j supply(j) / sum_i beta(i,j) demand(i)).
+   *          The priorities are not used. As for the other junctions, the
+   *          out-flow of an incoming link is shared between the commodities
+   *          according to their partial densities.
+   */
+  private void solveNxMJunction(Profile p, JunctionInfo j_info,
+      JunctionSplitRatios junction_sr) {
+
+    /* requested[j] = sum_i beta(i,j) demand(i) */
+    double[] requested = new double[next.length];
+    for (int in = 0; in < prev.length; in++) {
+      CellInfo in_info = p.getCell(prev[in]);
+      for (int out = 0; out < next.length; out++) {
+        double beta_ij = aggregateSR(in_info, prev[in].getUniqueId(),
+            next[out].getUniqueId(), junction_sr);
+        if (beta_ij == 0)
+          continue;
+        j_info.putAggregateSR(prev[in], next[out], beta_ij);
+        requested[out] += beta_ij * in_info.demand;
+      }
+    }
+
+    /* We compute theta and determine if the junction is demand limited */
+    double theta = 1;
+    boolean is_single_minimum = true;
+    int limiting_supply = -1;
+    for (int out = 0; out < next.length; out++) {
+      if (requested[out] == 0)
+        continue;
+      double ratio = p.getCell(next[out]).supply / requested[out];
+      if (ratio < theta) {
+        theta = ratio;
+        is_single_minimum = true;
+        limiting_supply = next[out].getUniqueId();
+      } else if (ratio == theta) {
+        is_single_minimum = false;
+      }
+    }
+
+    if (is_single_minimum) {
+      if (limiting_supply == -1)
+        j_info.set_demand_limited();
+      else
+        j_info.set_supply_limited(limiting_supply);
+    }
+
+    /* Then we compute the partial flow-out and flow-in */
+    for (int in = 0; in < prev.length; in++) {
+      int in_id = prev[in].getUniqueId();
+      CellInfo in_info = p.getCell(prev[in]);
+      double flow = theta * in_info.demand;
+      j_info.putFlowOut(in_id, flow);
+      if (flow == 0)
+        continue;
+
+      Iterator<Entry<Integer, Double>> iterator_partial_densities =
+          in_info.partial_densities.entrySet().iterator();
+      Entry<Integer, Double> entry_density;
+      double flow_out_dividedby_density = flow / in_info.total_density;
+      double out_flow_for_commodity;
+      while (iterator_partial_densities.hasNext()) {
+        entry_density = iterator_partial_densities.next();
+        Integer commodity = entry_density.getKey();
+
+        /* We compute flow_out(i,c,k) */
+        out_flow_for_commodity = flow_out_dividedby_density
+            * entry_density.getValue();
+        in_info.out_flows.put(commodity, out_flow_for_commodity);
+
+        /* We add beta(i,j,c) * flow_out(i,c,k) into flow_in(j,c,k) */
+        for (int out = 0; out < next.length; out++) {
+          double beta_ijc;
+          if (isMergingJunction()) {
+            beta_ijc = 1;
+          } else {
+            Double beta = junction_sr.get(in_id, next[out].getUniqueId(),
+                commodity);
+            if (beta == null)
+              continue;
+            beta_ijc = beta.doubleValue();
+          }
+
+          CellInfo next_info = p.getCell(next[out]);
+          Double in_flow = next_info.in_flows.get(commodity);
+          if (in_flow == null)
+            in_flow = 0.0;
+          next_info.in_flows.put(commodity, in_flow + beta_ijc
+              * out_flow_for_commodity);
+        }
+      }
     }
   }
 }
\ No newline at end of file
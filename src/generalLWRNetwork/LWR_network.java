@@ -1,5 +1,6 @@
 package generalLWRNetwork;
 
+import dataStructures.WorkerPool;
 import generalNetwork.data.demand.Demands;
 import generalNetwork.state.CellInfo;
 import generalNetwork.state.Profile;
@@ -211,55 +212,83 @@ public class LWR_network {
           delta_t);
     }
 
+    /*
+     * The cells and the junctions are solved in parallel: a junction only
+     * writes the out-flows of its incoming links and the in-flows of its
+     * outgoing links, which belong to no other junction
+     */
+    final Profile current = p;
+    final Profile next = next_profile;
+    final double dt = delta_t;
+    final int k = time_step;
+    int nb_cell_tasks = WorkerPool.nbTasks(cells.length);
+
     /* Computation of the demand and supply */
-    double density, demand, supply;
-    for (int cell_id = 0; cell_id < cells.length; cell_id++) {
-      density = p.getCell(cell_id).total_density;
-
-      /*
-       * The demand and the supply depend on the network and the density
-       */
-      demand = getCell(cell_id).getDemand(density, delta_t);
-      supply = getCell(cell_id).getSupply(density);
-      assert demand >= 0 : "Demand (" + demand + ") should be positive" +
-          " at cell " + cell_id + ", time step " + time_step;
-      assert supply >= 0 : "Supply (" + supply + ") should be positive" +
-          " at cell " + cell_id + ", time step " + time_step;
-
-      p.getCell(cell_id).demand = demand;
-      p.getCell(cell_id).supply = supply;
-
-      // We clear the old flows
-      p.getCell(cell_id).clearFlow();
-    }
+    WorkerPool.run(nb_cell_tasks, cells.length, new WorkerPool.RangeTask() {
+      @Override
+      public void run(int task, int begin, int end) {
+        double density, demand, supply;
+        for (int cell_id = begin; cell_id < end; cell_id++) {
+          density = current.getCell(cell_id).total_density;
+
+          /*
+           * The demand and the supply depend on the network and the density
+           */
+          demand = getCell(cell_id).getDemand(density, dt);
+          supply = getCell(cell_id).getSupply(density);
+          assert demand >= 0 : "Demand (" + demand + ") should be positive" +
+              " at cell " + cell_id + ", time step " + k;
+          assert supply >= 0 : "Supply (" + supply + ") should be positive" +
+              " at cell " + cell_id + ", time step " + k;
+
+          current.getCell(cell_id).demand = demand;
+          current.getCell(cell_id).supply = supply;
+
+          // We clear the old flows
+          current.getCell(cell_id).clearFlow();
+        }
+      }
+    });
 
     /*
      * Computation of the flows. The flows should have been cleared BEFORE doing
      * this operation
      */
-    for (int j_id = 0; j_id < junctions.length; j_id++) {
-      /* The JunctionInfo is created in the solveJunction */
-      /* We get the split-ratios for this junction at this time-step */
-      JunctionSplitRatios junction_sr =
-          internal_split_ratios.get(time_step, j_id);
-      junctions[j_id].solveJunction(p, time_step, junction_sr, cells);
-    }
+    WorkerPool.run(WorkerPool.nbTasks(junctions.length), junctions.length,
+        new WorkerPool.RangeTask() {
+          @Override
+          public void run(int task, int begin, int end) {
+            for (int j_id = begin; j_id < end; j_id++) {
+              /* The JunctionInfo is created in the solveJunction */
+              /* We get the split-ratios for this junction at this time-step */
+              JunctionSplitRatios junction_sr =
+                  internal_split_ratios.get(k, j_id);
+              junctions[j_id].solveJunction(current, k, junction_sr, cells);
+            }
+          }
+        });
 
     /* Creation of the new profile with the new densities */
-    LinkedHashMap<Integer, Double> new_densities, densities, in_flows, out_flows;
-    CellInfo cell_info;
-    for (int cell_id = 0; cell_id < cells.length; cell_id++) {
-      cell_info = p.getCell(cell_id);
-      densities = cell_info.partial_densities;
-
-      in_flows = cell_info.in_flows;
-      out_flows = cell_info.out_flows;
-
-      new_densities = getCell(cell_id).getUpdatedDensity(densities,
-          in_flows, out_flows, delta_t);
-
-      next_profile.putCell(cell_id, new CellInfo(new_densities));
-    }
+    WorkerPool.run(nb_cell_tasks, cells.length, new WorkerPool.RangeTask() {
+      @Override
+      public void run(int task, int begin, int end) {
+        LinkedHashMap<Integer, Double> new_densities, densities, in_flows,
+            out_flows;
+        CellInfo cell_info;
+        for (int cell_id = begin; cell_id < end; cell_id++) {
+          cell_info = current.getCell(cell_id);
+          densities = cell_info.partial_densities;
+
+          in_flows = cell_info.in_flows;
+          out_flows = cell_info.out_flows;
+
+          new_densities = getCell(cell_id).getUpdatedDensity(densities,
+              in_flows, out_flows, dt);
+
+          next.putCell(cell_id, new CellInfo(new_densities));
+        }
+      }
+    });
 
     return next_profile;
   }
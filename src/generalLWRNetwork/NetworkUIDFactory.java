@@ -2,37 +2,39 @@ package generalLWRNetwork;
 
 /**
  * @brief Unique ID factory for cells and junctions
+ * @details Every DiscretizedGraph has its own factory, so that several
+ *          networks can be built at the same time by different threads
  */
 public final class NetworkUIDFactory {
 
-  static int id_cell = -1, id_junctions = -1;
+  private int id_cell = -1, id_junctions = -1;
 
-  private NetworkUIDFactory() {
+  public NetworkUIDFactory() {
   }
 
-  static int getId_cell() {
+  int getId_cell() {
     id_cell++;
     return id_cell;
   }
 
-  static int getId_junctions() {
+  int getId_junctions() {
     id_junctions++;
     return id_junctions;
   }
 
-  public static void resetCell_id() {
+  public void resetCell_id() {
     id_cell = -1;
   }
 
-  public static void resetJunction_id() {
+  public void resetJunction_id() {
     id_junctions = -1;
   }
 
-  static int IdCell() {
+  int IdCell() {
     return id_cell;
   }
 
-  static int IdJunction() {
+  int IdJunction() {
     return id_junctions;
   }
-}
\ No newline at end of file
+}
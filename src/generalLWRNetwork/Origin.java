@@ -23,8 +23,8 @@ public class Origin {
     junction = null;
   }
 
-  public Origin(Junction j, String type, LinkedList<Cell> new_cells,
-      LinkedList<Junction> new_junctions) {
+  public Origin(NetworkUIDFactory id, Junction j, String type,
+      LinkedList<Cell> new_cells, LinkedList<Junction> new_junctions) {
     assert j != null;
     assert type != null;
     assert new_cells != null;
@@ -33,7 +33,7 @@ public class Origin {
 
     if (type.equals("SingleBuffer")) {
       entries = new Buffer[1];
-      Buffer b = new Buffer();
+      Buffer b = new Buffer(id);
       entries[0] = b;
       new_cells.add(b);
       b.setNext(j);
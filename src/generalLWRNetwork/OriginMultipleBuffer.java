@@ -7,8 +7,9 @@ class OriginMultipleBuffer extends Origin {
   /* Needed to know how to split the demand in the buffers */
   // private IntertemporalJunctionSplitRatios repartition;
 
-  public OriginMultipleBuffer(Junction j, String type,
-      LinkedList<Cell> new_cells, LinkedList<Junction> new_junctions) {
+  public OriginMultipleBuffer(NetworkUIDFactory id, Junction j,
+      String type, LinkedList<Cell> new_cells,
+      LinkedList<Junction> new_junctions) {
 
     assert j.getNext() != null;
 
@@ -20,16 +21,17 @@ class OriginMultipleBuffer extends Origin {
     Buffer b;
     Junction tmp;
     for (int i = 0; i < nb_outgoing_links - 1; i++) {
-      b = new Buffer();
+      b = new Buffer(id);
       new_cells.add(b);
       entries[i] = b;
 
-      tmp = new Junction(new Cell[] { b }, new Cell[] { j.getNext()[i] });
+      tmp = new Junction(id, new Cell[] { b },
+          new Cell[] { j.getNext()[i] });
       new_junctions.add(tmp);
 
     }
     // We transform the junction in a 1x1 junction for the last road
-    b = new Buffer();
+    b = new Buffer(id);
     new_cells.add(b);
     j.setNext(new Cell[] { j.getNext()[nb_outgoing_links - 1] });
     j.setPrev(new Cell[] { b });
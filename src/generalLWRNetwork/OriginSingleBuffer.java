@@ -4,11 +4,11 @@ import java.util.LinkedList;
 
 class OriginSingleBuffer extends Origin {
 
-  public OriginSingleBuffer(Junction j, String type,
+  public OriginSingleBuffer(NetworkUIDFactory id, Junction j, String type,
       LinkedList<Cell> new_cells, LinkedList<Junction> new_junctions) {
 
     entries = new Buffer[1];
-    Buffer b = new Buffer();
+    Buffer b = new Buffer(id);
     entries[0] = b;
     new_cells.add(b);
 
@@ -34,17 +34,17 @@ public class RoadChunk extends Cell {
     demande_change = F_max / v;
   }
 
-  public RoadChunk(double l, double v, double w, double f_max,
-      double jam_capacity) {
-    super();
+  public RoadChunk(NetworkUIDFactory id, double l, double v, double w,
+      double f_max, double jam_capacity) {
+    super(id);
     build(l, v, w, f_max, jam_capacity);
     this.initial_densities = new LinkedHashMap<Integer, Double>();
   }
 
-  public RoadChunk(double l, double v, double w, double f_max,
-      double jam_capacity,
+  public RoadChunk(NetworkUIDFactory id, double l, double v, double w,
+      double f_max, double jam_capacity,
       LinkedHashMap<Integer, Double> initial_densities) {
-    super();
+    super(id);
     build(l, v, w, f_max, jam_capacity);
 
     this.initial_densities = new LinkedHashMap<Integer, Double>(
@@ -58,7 +58,9 @@ public class RoadChunk extends Cell {
    * @param jam_capacity
    * @param delta_t
    */
-  public RoadChunk(double v, double f_max, double jam_capacity, double delta_t) {
+  public RoadChunk(NetworkUIDFactory id, double v, double f_max,
+      double jam_capacity, double delta_t) {
+    super(id);
     build(v * delta_t, v, v * f_max / (v * jam_capacity - f_max), f_max,
         jam_capacity);
     this.initial_densities = new LinkedHashMap<Integer, Double>();
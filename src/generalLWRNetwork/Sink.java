@@ -13,8 +13,8 @@ import dataStructures.Preprocessor;
  */
 class Sink extends Cell {
 
-  public Sink() {
-    super();
+  public Sink(NetworkUIDFactory id) {
+    super(id);
   }
 
   /**
@@ -8,8 +8,8 @@ class SinkBottleneck extends Sink {
 
   private double bottleneck_capacity;
 
-  public SinkBottleneck(double bottleneck_capacity) {
-    super();
+  public SinkBottleneck(NetworkUIDFactory id, double bottleneck_capacity) {
+    super(id);
     this.bottleneck_capacity = bottleneck_capacity;
   }
 
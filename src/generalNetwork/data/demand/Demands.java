@@ -35,6 +35,32 @@ public class Demands {
     return demands.get(orig)[time_step];
   }
 
+  /**
+   * @brief Shifts the demands by nb_steps time steps
+   * @details The demand at time step k of the result is the demand at time
+   *          step k + nb_steps. The last demand of every origin is repeated at
+   *          the end, and the first one at the beginning if nb_steps is
+   *          negative.
+   * @return The shifted demands. This object is not modified
+   */
+  public Demands shift(int nb_steps) {
+    Demands result = new Demands(demands.size());
+
+    Iterator<Entry<Origin, double[]>> iterator =
+        demands.entrySet().iterator();
+    Entry<Origin, double[]> entry;
+    while (iterator.hasNext()) {
+      entry = iterator.next();
+      double[] demand = entry.getValue();
+      double[] shifted = new double[demand.length];
+      for (int k = 0; k < demand.length; k++)
+        shifted[k] = demand[Math.max(0,
+            Math.min(k + nb_steps, demand.length - 1))];
+      result.put(entry.getKey(), shifted);
+    }
+    return result;
+  }
+
   /**
    * @return The jsonDemand encoding the demands
    */
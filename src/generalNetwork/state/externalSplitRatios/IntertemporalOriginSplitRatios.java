@@ -27,6 +27,17 @@ public class IntertemporalOriginSplitRatios {
     }
   }
 
+  /**
+   * @return A deep copy of the split ratios
+   */
+  public IntertemporalOriginSplitRatios copy() {
+    IntertemporalOriginSplitRatios result =
+        new IntertemporalOriginSplitRatios(split_ratios.length);
+    for (int k = 0; k < split_ratios.length; k++)
+      result.split_ratios[k].putAll(split_ratios[k]);
+    return result;
+  }
+
   public HashMapIntegerDouble get(int time_step) {
     return split_ratios[time_step];
   }
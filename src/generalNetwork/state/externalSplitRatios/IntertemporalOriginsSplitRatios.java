@@ -3,6 +3,8 @@ package generalNetwork.state.externalSplitRatios;
 import generalLWRNetwork.Origin;
 
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
 
 import dataStructures.HashMapIntegerDouble;
 
@@ -73,6 +75,22 @@ public class IntertemporalOriginsSplitRatios {
     return new IntertemporalOriginsSplitRatios(total_time_step, origins, alpha);
   }
 
+  /**
+   * @return A deep copy of the split ratios for all origins
+   */
+  public IntertemporalOriginsSplitRatios copy() {
+    IntertemporalOriginsSplitRatios result = new IntertemporalOriginsSplitRatios(
+        origins_split_ratios.size());
+    Iterator<Entry<Origin, IntertemporalOriginSplitRatios>> it =
+        origins_split_ratios.entrySet().iterator();
+    Entry<Origin, IntertemporalOriginSplitRatios> entry;
+    while (it.hasNext()) {
+      entry = it.next();
+      result.origins_split_ratios.put(entry.getKey(), entry.getValue().copy());
+    }
+    return result;
+  }
+
   public HashMapIntegerDouble get(Origin origin, int time_step) {
     return origins_split_ratios.get(origin).get(time_step);
   }
@@ -18,6 +18,8 @@ import java.util.Formatter;
 
 import org.jfree.chart.JFreeChart;
 
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.Rectangle;
@@ -93,6 +95,33 @@ public class InputOutput {
     formatter.close();
   }
 
+  /**
+   * @brief Writes a sparse matrix in the Matrix Market coordinate format
+   * @details The indices are 1-based and the entries are written column by
+   *          column. Explicit zeros of the structure are written.
+   */
+  public static void sparseMatrixToFile(SparseCCDoubleMatrix2D matrix,
+      String file_name) {
+    int[] column_pointers = matrix.getColumnPointers();
+    int[] row_indexes = matrix.getRowIndexes();
+    double[] values = matrix.getValues();
+    int nnz = column_pointers[matrix.columns()];
+
+    BufferedWriter writer = BufferedWriter(file_name);
+    try {
+      writer.write("%%MatrixMarket matrix coordinate real general\n");
+      writer.write(matrix.rows() + " " + matrix.columns() + " " + nnz + "\n");
+      for (int j = 0; j < matrix.columns(); j++)
+        for (int p = column_pointers[j]; p < column_pointers[j + 1]; p++)
+          writer.write((row_indexes[p] + 1) + " " + (j + 1) + " "
+              + values[p] + "\n");
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      close(writer);
+    }
+  }
+
   /**
    * @brief Returns the writer associated to a file
    * @param file_name
@@ -0,0 +1,68 @@
+package jUnit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+/**
+ * @class RecordingOptimizer
+ * @brief SOPC_Optimizer that keeps a copy of every evaluated control
+ */
+public class RecordingOptimizer extends SOPC_Optimizer {
+
+  public List<double[]> evaluated = new ArrayList<double[]>();
+
+  public RecordingOptimizer(String graph) {
+    super(new Simulator("graphs/" + graph + ".json", "graphs/" + graph
+        + "Data.json", 1, false));
+  }
+
+  @Override
+  public double objective(double[] control) {
+    evaluated.add(control.clone());
+    return super.objective(control);
+  }
+
+  @Override
+  public double objectiveAndGradient(double[] gradient_f, double[] control) {
+    evaluated.add(control.clone());
+    return super.objectiveAndGradient(gradient_f, control);
+  }
+
+  @Override
+  public double[] objectives(double[][] controls) {
+    for (int i = 0; i < controls.length; i++)
+      evaluated.add(controls[i].clone());
+    return super.objectives(controls);
+  }
+
+  /**
+   * @return The smallest split ratio of the control. The sum of the split
+   *         ratios of every simplex block must be 1
+   */
+  public double minimum(double[] control) {
+    int[][] blocks = getSimplexBlocks();
+    double minimum = Double.POSITIVE_INFINITY;
+    for (int b = 0; b < blocks.length; b++) {
+      double sum = 0;
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+        sum += control[i];
+        minimum = Math.min(minimum, control[i]);
+      }
+      assert Math.abs(sum - 1) < 1E-9 : "Sum of the block " + b + ": " + sum;
+    }
+    return minimum;
+  }
+
+  /**
+   * @return True if all the evaluated controls are on the simplices
+   */
+  public boolean feasible() {
+    for (double[] control : evaluated)
+      if (minimum(control) < 0)
+        return false;
+    return true;
+  }
+}
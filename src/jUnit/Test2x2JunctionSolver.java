@@ -3,6 +3,7 @@ package jUnit;
 import static org.junit.Assert.*;
 import generalLWRNetwork.Cell;
 import generalLWRNetwork.Junction;
+import generalLWRNetwork.NetworkUIDFactory;
 import generalLWRNetwork.RoadChunk;
 import generalNetwork.state.Profile;
 import generalNetwork.state.internalSplitRatios.JunctionSplitRatios;
@@ -35,13 +36,16 @@ public class Test2x2JunctionSolver {
   public static void build(double delta_t) {
     discretization = new Discretization(delta_t, 1);
 
+    NetworkUIDFactory id = new NetworkUIDFactory();
+
     // Constructing the 2x1 junction
-    RoadChunk rc1 = new RoadChunk(3.0, 3.0, 3.0, delta_t);
-    RoadChunk rc2 = new RoadChunk(2.0, 2.0, 2.0, delta_t);
+    RoadChunk rc1 = new RoadChunk(id, 3.0, 3.0, 3.0, delta_t);
+    RoadChunk rc2 = new RoadChunk(id, 2.0, 2.0, 2.0, delta_t);
 
-    RoadChunk rc3 = new RoadChunk(2.5, 2.5, 2.0, delta_t);
+    RoadChunk rc3 = new RoadChunk(id, 2.5, 2.5, 2.0, delta_t);
 
-    junction2x1 = new Junction(new Cell[] { rc1, rc2 }, new Cell[] { rc3 });
+    junction2x1 = new Junction(id, new Cell[] { rc1, rc2 },
+        new Cell[] { rc3 });
     HashMap<Integer, Double> priorities = new HashMap<Integer, Double>(2);
     priorities.put(rc1.getUniqueId(), 0.7);
     priorities.put(rc2.getUniqueId(), 0.3);
@@ -0,0 +1,100 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+import generalNetwork.state.State;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+/**
+ * @brief Compares the gradients given by the different storages of the
+ *        adjoint vector
+ */
+public class TestAdjointStorage {
+
+  static String[] graphs = { "ReportExample", "ComplexNetwork",
+      "PathWithPriorities", "TwoParallelPath", "parallelPath" };
+
+  private static SOPC_Optimizer newOptimizer(String graph) {
+    Simulator simulator = new Simulator("graphs/" + graph + ".json",
+        "graphs/" + graph + "Data.json", 1, false);
+    return new SOPC_Optimizer(simulator);
+  }
+
+  /**
+   * @return A random point of the simplices of the optimizer
+   */
+  static double[] randomControl(SOPC_Optimizer optimizer, Random random) {
+    double[] control = optimizer.getStartingPoint();
+    int[][] blocks = optimizer.getSimplexBlocks();
+    for (int b = 0; b < blocks.length; b++) {
+      double sum = 0;
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+        control[i] = random.nextDouble();
+        sum += control[i];
+      }
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+        control[i] /= sum;
+    }
+    return control;
+  }
+
+  /**
+   * @brief The compact adjoint gives the gradient dH/dU^T * lambda computed
+   *        with lambda in the layout of the state vector X
+   */
+  @Test
+  public void testCompactLayout() {
+    Random random = new Random(0);
+    DenseDoubleAlgebra algebra = new DenseDoubleAlgebra();
+    for (int g = 0; g < graphs.length; g++) {
+      SOPC_Optimizer optimizer = newOptimizer(graphs[g]);
+      optimizer.setTwoSliceAdjoint(false);
+      /* The second control reuses the structure of dH/dU */
+      for (int trial = 0; trial < 2; trial++) {
+        double[] control = randomControl(optimizer, random);
+        State state = optimizer.forwardSimulate(control);
+
+        DoubleMatrix1D lambda =
+            optimizer.lambdaByAdjointMethod(state, control);
+        double[] expected = algebra.mult(
+            optimizer.dhdu(state, control).getTranspose(), lambda).toArray();
+        assertArrayEquals(graphs[g], expected,
+            optimizer.gradientByAdjointMethod(state, control), 0);
+      }
+    }
+  }
+
+  /**
+   * @brief The adjoint stored on two time slices gives the gradient of the
+   *        adjoint stored for all time steps, also when the sweep stops
+   *        before the first time step
+   */
+  @Test
+  public void testTwoSlices() {
+    Random random = new Random(1);
+    for (int g = 0; g < graphs.length; g++) {
+      SOPC_Optimizer optimizer = newOptimizer(graphs[g]);
+      double[] control = randomControl(optimizer, random);
+      State state = optimizer.forwardSimulate(control);
+      int first_step = state.profiles.length / 2;
+
+      optimizer.setTwoSliceAdjoint(false);
+      double[] expected = optimizer.gradientByAdjointMethod(state, control);
+      double[] expected_suffix =
+          optimizer.gradientByAdjointMethod(state, control, first_step);
+
+      optimizer.setTwoSliceAdjoint(true);
+      assertArrayEquals(graphs[g], expected,
+          optimizer.gradientByAdjointMethod(state, control), 0);
+      assertArrayEquals(graphs[g], expected_suffix,
+          optimizer.gradientByAdjointMethod(state, control, first_step), 0);
+    }
+  }
+}
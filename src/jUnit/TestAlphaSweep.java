@@ -0,0 +1,137 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import optimization.GradientDescent;
+import optimization.GradientDescentMethod;
+import dataStructures.WorkerPool;
+import dta_solver.AlphaSweepOptimizer;
+import dta_solver.AnytimeOptimizer;
+import dta_solver.Budget;
+import dta_solver.MultiStartOptimizer;
+import dta_solver.Network;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+public class TestAlphaSweep {
+
+  private static String network_file = "graphs/ReportExample.json";
+  private static String data_file = "graphs/ReportExampleData.json";
+
+  private static MultiStartOptimizer.DescentFactory factory =
+      new MultiStartOptimizer.DescentFactory() {
+        @Override
+        public GradientDescentMethod newDescent() {
+          return new GradientDescent(5);
+        }
+      };
+
+  private static AlphaSweepOptimizer.Result[] sweep(Network network,
+      double[] alphas, int nb_threads,
+      AlphaSweepOptimizer.ResultListener listener) {
+    return sweep(network, alphas, nb_threads, 2, listener);
+  }
+
+  private static AlphaSweepOptimizer.Result[] sweep(Network network,
+      double[] alphas, int nb_threads, int nb_chains,
+      AlphaSweepOptimizer.ResultListener listener) {
+    AlphaSweepOptimizer sweep =
+        new AlphaSweepOptimizer(network, factory, alphas);
+    sweep.setNb_chains(nb_chains);
+    sweep.setListener(listener);
+    int previous_nb_threads = WorkerPool.getNb_threads();
+    WorkerPool.setNb_threads(nb_threads);
+    try {
+      return sweep.optimize();
+    } finally {
+      WorkerPool.setNb_threads(previous_nb_threads);
+    }
+  }
+
+  /**
+   * @brief The results do not depend on the number of threads and are all
+   *        given to the listener
+   */
+  @Test
+  public void testThreads() {
+    Network network = new Network(network_file, data_file, 0.5, false);
+    double[] alphas = { 0.9, 0.3, 0.7, 0.5, 1 };
+
+    final List<Double> solved = new ArrayList<Double>();
+    AlphaSweepOptimizer.ResultListener listener =
+        new AlphaSweepOptimizer.ResultListener() {
+          @Override
+          public void solved(AlphaSweepOptimizer.Result result) {
+            solved.add(result.alpha);
+          }
+        };
+
+    AlphaSweepOptimizer.Result[] sequential = sweep(network, alphas, 1,
+        null);
+    AlphaSweepOptimizer.Result[] parallel = sweep(network, alphas, 3,
+        listener);
+    assertEquals(alphas.length, solved.size());
+    for (int i = 0; i < alphas.length; i++) {
+      assertTrue(solved.contains(alphas[i]));
+      assertEquals(alphas[i], parallel[i].alpha, 0);
+      assertEquals(sequential[i].cost, parallel[i].cost, 0);
+      assertArrayEquals(sequential[i].control, parallel[i].control, 0);
+      assertEquals(sequential[i].nb_gradients, parallel[i].nb_gradients);
+      assertTrue(parallel[i].nb_gradients > 0);
+    }
+  }
+
+  /**
+   * @brief The first value of a chain is the solution of a network loaded
+   *        with this value, and the next ones start from the solution of
+   *        their neighbour
+   */
+  @Test
+  public void testChains() {
+    Network network = new Network(network_file, data_file, 0.5, false);
+    double[] alphas = { 0.8, 0.4, 0.6, 0.2 };
+    AlphaSweepOptimizer.Result[] results = sweep(network, alphas, 2, null);
+
+    /* The chains are { 0.2, 0.4 } and { 0.6, 0.8 } */
+    SOPC_Optimizer first = new SOPC_Optimizer(new Simulator(network_file,
+        data_file, 0.6, false));
+    AnytimeOptimizer descent = new AnytimeOptimizer(first,
+        factory.newDescent());
+    double[] control = descent.optimize(new Budget(0, 0));
+    assertEquals(descent.getBest_cost(), results[2].cost, 0);
+    assertArrayEquals(control, results[2].control, 0);
+
+    SOPC_Optimizer next = new SOPC_Optimizer(new Simulator(network_file,
+        data_file, 0.8, false));
+    next.setStartingPoint(control);
+    descent = new AnytimeOptimizer(next, factory.newDescent());
+    control = descent.optimize(new Budget(0, 0));
+    assertEquals(descent.getBest_cost(), results[0].cost, 0);
+    assertArrayEquals(control, results[0].control, 0);
+  }
+
+  /**
+   * @brief By default, there is one chain per thread and every chain has at
+   *        least two values
+   */
+  @Test
+  public void testDefaultChains() {
+    Network network = new Network(network_file, data_file, 0.5, false);
+    double[] alphas = { 0.8, 0.4, 0.6, 0.2 };
+    int[][] threads_and_chains = { { 1, 1 }, { 4, 2 } };
+    for (int i = 0; i < threads_and_chains.length; i++) {
+      int nb_threads = threads_and_chains[i][0];
+      AlphaSweepOptimizer.Result[] expected = sweep(network, alphas,
+          nb_threads, threads_and_chains[i][1], null);
+      AlphaSweepOptimizer.Result[] results = sweep(network, alphas,
+          nb_threads, 0, null);
+      for (int a = 0; a < alphas.length; a++)
+        assertArrayEquals(expected[a].control, results[a].control, 0);
+    }
+  }
+}
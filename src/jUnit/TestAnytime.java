@@ -0,0 +1,87 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import optimization.GradientDescent;
+import dta_solver.AnytimeOptimizer;
+import dta_solver.Budget;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+public class TestAnytime {
+
+  private static SOPC_Optimizer newOptimizer() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    return new SOPC_Optimizer(simulator);
+  }
+
+  /**
+   * @brief The descent stops at the maximum number of simulations and the
+   *        best feasible control is returned with its cost
+   */
+  @Test
+  public void testSimulationBudget() {
+    SOPC_Optimizer optimizer = newOptimizer();
+    double initial_cost = optimizer.objective(optimizer.getStartingPoint());
+    optimizer.getStateCache().clear();
+
+    AnytimeOptimizer anytime = new AnytimeOptimizer(optimizer,
+        new GradientDescent(1000));
+    double[] control = anytime.optimize(new Budget(0, 10));
+
+    assertEquals(Budget.StopReason.SIMULATIONS, anytime.getStop_reason());
+    assertEquals(10, anytime.getNb_simulations());
+    assertNull(optimizer.getBudget());
+    assertTrue(anytime.getBest_cost() < initial_cost);
+    assertEquals(optimizer.objective(control), anytime.getBest_cost(), 0);
+    assertTrue(anytime.getConvergence() > 0);
+
+    int[][] blocks = optimizer.getSimplexBlocks();
+    for (int b = 0; b < blocks.length; b++) {
+      double sum = 0;
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+        assertTrue(control[i] >= 0);
+        sum += control[i];
+      }
+      assertEquals(1, sum, 1E-9);
+    }
+  }
+
+  /**
+   * @brief Without limit, the result is the one of the descent alone
+   */
+  @Test
+  public void testNoLimit() {
+    SOPC_Optimizer optimizer = newOptimizer();
+    double expected = optimizer.objective(new GradientDescent(5)
+        .solve(optimizer));
+
+    optimizer = newOptimizer();
+    AnytimeOptimizer anytime = new AnytimeOptimizer(optimizer,
+        new GradientDescent(5));
+    anytime.optimize(new Budget(0, 0));
+    assertEquals(Budget.StopReason.FINISHED, anytime.getStop_reason());
+    assertTrue(anytime.getBest_cost() <= expected);
+  }
+
+  /**
+   * @brief A cancelled budget stops the descent before any simulation
+   */
+  @Test
+  public void testCancel() {
+    SOPC_Optimizer optimizer = newOptimizer();
+    Budget budget = new Budget(60000, 0);
+    budget.cancel();
+
+    AnytimeOptimizer anytime = new AnytimeOptimizer(optimizer,
+        new GradientDescent(10));
+    double[] control = anytime.optimize(budget);
+    assertEquals(Budget.StopReason.CANCELLED, anytime.getStop_reason());
+    assertEquals(0, anytime.getNb_simulations());
+    assertTrue(Double.isNaN(anytime.getBest_cost()));
+    assertArrayEquals(optimizer.getStartingPoint(), control, 0);
+  }
+}
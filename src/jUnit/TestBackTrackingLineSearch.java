@@ -0,0 +1,64 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+import optimization.BackTrackingLineSearch;
+
+public class TestBackTrackingLineSearch {
+
+  /**
+   * @brief Moves a split ratio whose projected gradient is positive to
+   *        almost 0
+   * @param gradient
+   *          Filled in with the projected gradient at the returned control
+   * @return A control of the simplices with a coordinate at 1E-15 and a
+   *         positive gradient on it
+   */
+  static double[] almostOnFace(SOPC_Optimizer optimizer, double[] gradient) {
+    Random random = new Random(0);
+    int[][] blocks = optimizer.getSimplexBlocks();
+    while (true) {
+      double[] control = TestAdjointStorage.randomControl(optimizer, random);
+      optimizer.gradient(gradient, control);
+      for (int b = 0; b < blocks.length; b++)
+        for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+          if (gradient[i] <= 0)
+            continue;
+          double[] candidate = control.clone();
+          double others = 1 - control[i];
+          for (int j = blocks[b][0]; j < blocks[b][0] + blocks[b][1]; j++)
+            candidate[j] *= (1 - 1E-15) / others;
+          candidate[i] = 1E-15;
+          optimizer.gradient(gradient, candidate);
+          if (gradient[i] > 0)
+            return candidate;
+        }
+    }
+  }
+
+  /**
+   * @brief A split ratio close to 0 that the gradient decreases does not
+   *        stop the search
+   */
+  @Test
+  public void testAlmostOnFace() {
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(new Simulator(
+        "graphs/ReportExample.json", "graphs/ReportExampleData.json", 1,
+        false));
+    double[] gradient = new double[optimizer.getStartingPoint().length];
+    double[] control = almostOnFace(optimizer, gradient);
+    double cost = optimizer.objective(control);
+
+    double[] result = new BackTrackingLineSearch().lineSearch(control, cost,
+        gradient, optimizer);
+    assertTrue(optimizer.objective(result) < cost);
+    for (int i = 0; i < result.length; i++)
+      assertTrue(result[i] >= 0);
+  }
+}
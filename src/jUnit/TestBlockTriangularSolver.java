@@ -0,0 +1,87 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import dta_solver.adjointMethod.BlockTriangularSolver;
+
+public class TestBlockTriangularSolver {
+
+  static int nb_blocks = 4;
+  static int block_size = 5;
+
+  /**
+   * @brief Builds a random block lower triangular matrix
+   * @details The diagonal block 1 is full so that it has to be solved by LU.
+   *          The other diagonal blocks are lower triangular.
+   */
+  private static DenseDoubleMatrix2D build(Random random) {
+    int n = nb_blocks * block_size;
+    DenseDoubleMatrix2D A = new DenseDoubleMatrix2D(n, n);
+    for (int i = 0; i < n; i++) {
+      int block = i / block_size;
+      for (int j = 0; j <= i; j++) {
+        if (i == j)
+          A.setQuick(i, j, -1 - random.nextDouble());
+        else if (random.nextDouble() < 0.3)
+          A.setQuick(i, j, random.nextDouble());
+      }
+      if (block == 1)
+        for (int j = i + 1; j < (block + 1) * block_size; j++)
+          A.setQuick(i, j, 0.1 * random.nextDouble());
+    }
+    return A;
+  }
+
+  @Test
+  public void test() {
+    Random random = new Random(42);
+    DenseDoubleMatrix2D A = build(random);
+    int n = A.rows();
+    DoubleMatrix1D b = new DenseDoubleMatrix1D(n);
+    for (int i = 0; i < n; i++)
+      b.setQuick(i, random.nextDouble());
+
+    BlockTriangularSolver solver = new BlockTriangularSolver();
+    DenseDoubleAlgebra algebra = new DenseDoubleAlgebra();
+    DoubleMatrix1D expected = algebra.solve(algebra.transpose(A), b);
+
+    SparseCCDoubleMatrix2D sparse_A = new SparseCCDoubleMatrix2D(A.toArray());
+    DoubleMatrix1D result = solver.solveTranspose(sparse_A, b, nb_blocks);
+    assertEquals(1, solver.getNb_lu_blocks());
+    for (int i = 0; i < n; i++)
+      assertEquals(expected.getQuick(i), result.getQuick(i), 1E-10);
+
+    /* With only one block, the whole system is solved by LU */
+    result = solver.solveTranspose(sparse_A, b, 1);
+    assertEquals(1, solver.getNb_lu_blocks());
+    for (int i = 0; i < n; i++)
+      assertEquals(expected.getQuick(i), result.getQuick(i), 1E-10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSizes() {
+    DenseDoubleMatrix2D A = build(new Random(42));
+    new BlockTriangularSolver().solveTranspose(
+        new SparseCCDoubleMatrix2D(A.toArray()),
+        new DenseDoubleMatrix1D(A.rows() - 1), nb_blocks);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNotBlockTriangular() {
+    DenseDoubleMatrix2D A = build(new Random(42));
+    /* A term above the diagonal blocks */
+    A.setQuick(0, A.columns() - 1, 1);
+    new BlockTriangularSolver().solveTranspose(
+        new SparseCCDoubleMatrix2D(A.toArray()),
+        new DenseDoubleMatrix1D(A.rows()), nb_blocks);
+  }
+}
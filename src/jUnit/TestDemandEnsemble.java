@@ -0,0 +1,89 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import generalNetwork.state.State;
+
+import org.junit.Test;
+
+import dataStructures.StreamingStatistics;
+import dataStructures.WorkerPool;
+import dta_solver.DemandEnsemble;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+public class TestDemandEnsemble {
+
+  private static SOPC_Optimizer newOptimizer() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    return new SOPC_Optimizer(simulator);
+  }
+
+  private static DemandEnsemble newEnsemble(SOPC_Optimizer optimizer) {
+    double[] control = optimizer.getStartingPoint();
+    control[0] = 0.3;
+    control[1] = 0.7;
+    DemandEnsemble ensemble = new DemandEnsemble(optimizer, control);
+    ensemble.setNoise(0.2);
+    ensemble.setMax_shift(2);
+    ensemble.setBatch_size(7);
+    return ensemble;
+  }
+
+  /**
+   * @brief Without perturbation, every member is the nominal simulation
+   */
+  @Test
+  public void testNominal() {
+    SOPC_Optimizer optimizer = newOptimizer();
+    DemandEnsemble ensemble = newEnsemble(optimizer);
+    ensemble.setNoise(0);
+    ensemble.setMax_shift(0);
+    StreamingStatistics objective = ensemble.run(10);
+
+    double[] control = optimizer.getStartingPoint();
+    control[0] = 0.3;
+    control[1] = 0.7;
+    State nominal = optimizer.forwardSimulate(control);
+    double cost = optimizer.objective(nominal, control);
+    assertEquals(10, objective.getCount());
+    assertEquals(cost, objective.getMean(), 1E-12);
+    assertEquals(0, objective.getVariance(), 1E-20);
+    assertEquals(cost, objective.getQuantile(1), 1E-12);
+    for (int k = 0; k < nominal.profiles.length; k++)
+      assertEquals(nominal.profiles[k].getCell(0).total_density,
+          ensemble.getDensity(k, 0).getMax(), 0);
+  }
+
+  /**
+   * @brief The statistics do not depend on the number of threads nor on the
+   *        number of runs used to add the members
+   */
+  @Test
+  public void testThreads() {
+    DemandEnsemble sequential = newEnsemble(newOptimizer());
+    int previous_nb_threads = WorkerPool.getNb_threads();
+    DemandEnsemble parallel = newEnsemble(newOptimizer());
+    WorkerPool.setNb_threads(1);
+    try {
+      sequential.run(20);
+      WorkerPool.setNb_threads(3);
+      parallel.run(12);
+      parallel.run(8);
+    } finally {
+      WorkerPool.setNb_threads(previous_nb_threads);
+    }
+
+    assertEquals(20, parallel.getNb_members());
+    StreamingStatistics expected = sequential.getObjective();
+    StreamingStatistics result = parallel.getObjective();
+    assertTrue(expected.getVariance() > 0);
+    assertEquals(expected.getMean(), result.getMean(), 0);
+    assertEquals(expected.getVariance(), result.getVariance(), 0);
+    for (int q = 0; q < 3; q++)
+      assertEquals(expected.getQuantile(q), result.getQuantile(q), 0);
+    assertEquals(sequential.getDensity(5, 0).getMean(),
+        parallel.getDensity(5, 0).getMean(), 0);
+  }
+}
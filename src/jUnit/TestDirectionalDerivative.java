@@ -0,0 +1,85 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+import generalNetwork.state.State;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dataStructures.WorkerPool;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+/**
+ * @brief Compares the directional derivative given by the forward sweep with
+ *        the scalar product of the gradient given by the adjoint method and
+ *        the direction
+ */
+public class TestDirectionalDerivative {
+
+  /* The 2x2 junction network also has a 2x1 junction */
+  static String[] files = { "graphs/ReportExample",
+      "JUnitTests/2x2JunctionNetwork" };
+
+  /**
+   * @return A random direction tangent to the simplices of the optimizer
+   */
+  private static double[] tangentDirection(SOPC_Optimizer optimizer,
+      Random random) {
+    double[] direction = new double[optimizer.getStartingPoint().length];
+    int[][] blocks = optimizer.getSimplexBlocks();
+    for (int b = 0; b < blocks.length; b++) {
+      double sum = 0;
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+        direction[i] = random.nextGaussian();
+        sum += direction[i];
+      }
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+        direction[i] -= sum / blocks[b][1];
+    }
+    return direction;
+  }
+
+  @Test
+  public void testDirectionalDerivative() {
+    int[] nb_threads = { 1, 4 };
+    int previous_nb_threads = WorkerPool.getNb_threads();
+    int previous_min_items = WorkerPool.getMin_items_per_task();
+    WorkerPool.setMin_items_per_task(1);
+    try {
+      Random random = new Random(0);
+      for (int f = 0; f < files.length; f++) {
+        SOPC_Optimizer optimizer = new SOPC_Optimizer(new Simulator(
+            files[f] + ".json", files[f] + "Data.json", 1, false));
+        for (int trial = 0; trial < 3; trial++) {
+          double[] control =
+              TestAdjointStorage.randomControl(optimizer, random);
+          State state = optimizer.forwardSimulate(control);
+          double[] gradient = optimizer.gradientByAdjointMethod(state,
+              control);
+
+          for (int d = 0; d < 3; d++) {
+            double[] direction = tangentDirection(optimizer, random);
+            double expected = 0;
+            double scale = 0;
+            for (int i = 0; i < control.length; i++) {
+              expected += gradient[i] * direction[i];
+              scale += Math.abs(gradient[i] * direction[i]);
+            }
+
+            for (int t = 0; t < nb_threads.length; t++) {
+              WorkerPool.setNb_threads(nb_threads[t]);
+              assertEquals(files[f] + " on " + nb_threads[t] + " threads",
+                  expected, optimizer.directionalDerivative(control,
+                      direction), 1E-10 * Math.max(1, scale));
+            }
+          }
+        }
+      }
+    } finally {
+      WorkerPool.setNb_threads(previous_nb_threads);
+      WorkerPool.setMin_items_per_task(previous_min_items);
+    }
+  }
+}
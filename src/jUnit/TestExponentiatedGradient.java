@@ -0,0 +1,71 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dta_solver.adjointMethod.GradientDescentOptimizer;
+import optimization.ExponentiatedGradient;
+
+public class TestExponentiatedGradient {
+
+  /**
+   * @brief Starting from vertices of the simplices, every evaluated control
+   *        is strictly inside the simplices, the first trial changes no
+   *        logarithm of a split ratio by more than 1 and the cost decreases
+   */
+  @Test
+  public void testDescent() {
+    RecordingOptimizer function = new RecordingOptimizer("ReportExample");
+    double[] start = function.getStartingPoint();
+    int[][] blocks = function.getSimplexBlocks();
+    for (int b = 0; b < blocks.length; b++)
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+        start[i] = i == blocks[b][0] ? 1 : 0;
+    function.setStartingPoint(start);
+    double initial_cost = function.objective(start);
+    function.evaluated.clear();
+
+    ExponentiatedGradient descent = new ExponentiatedGradient(20);
+    descent.setVerbose(false);
+    double[] control = descent.solve(function);
+
+    for (double[] evaluated : function.evaluated)
+      assertTrue(function.minimum(evaluated) > 0);
+
+    /* The first evaluation is the moved starting point */
+    double[] first = function.evaluated.get(0);
+    double[] trial = function.evaluated.get(1);
+    for (int i = 0; i < first.length; i++)
+      assertTrue(Math.abs(Math.log(trial[i] / first[i])) <= 1 + 1E-12);
+
+    double[] costs = descent.getTTT();
+    for (int i = 1; i < costs.length; i++)
+      assertTrue(costs[i] <= costs[i - 1]);
+    assertTrue(costs[costs.length - 1] < initial_cost);
+    assertEquals(costs[costs.length - 1], function.objective(control), 0);
+  }
+
+  /**
+   * @brief The mirror descent needs the simplex blocks of the control
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoSimplex() {
+    new ExponentiatedGradient(1).solve(new GradientDescentOptimizer() {
+      public void gradient(double[] gradient_f, double[] control) {
+        gradient_f[0] = 2 * control[0];
+      }
+
+      public double objective(double[] u) {
+        return u[0] * u[0];
+      }
+
+      public double[] getStartingPoint() {
+        return new double[] { 1 };
+      }
+
+      public void projectControl(double[] control) {
+      }
+    });
+  }
+}
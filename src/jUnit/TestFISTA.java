@@ -0,0 +1,74 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import optimization.FISTA;
+
+public class TestFISTA {
+
+  /**
+   * @class IterateRecorder
+   * @brief Keeps the cost of the iterates x_k of FISTA
+   * @details FISTA evaluates the cost and the gradient together only at the
+   *          extrapolated points y_k, and the cost alone at the starting
+   *          point and at the trial points x_{k+1}. The last trial point
+   *          before an evaluation of the gradient is the accepted iterate.
+   */
+  private static class IterateRecorder extends RecordingOptimizer {
+    List<Double> iterate_costs = new ArrayList<Double>();
+    double last_cost;
+
+    IterateRecorder(String graph) {
+      super(graph);
+    }
+
+    @Override
+    public double objective(double[] control) {
+      last_cost = super.objective(control);
+      return last_cost;
+    }
+
+    @Override
+    public double objectiveAndGradient(double[] gradient_f,
+        double[] control) {
+      iterate_costs.add(last_cost);
+      return super.objectiveAndGradient(gradient_f, control);
+    }
+  }
+
+  /**
+   * @brief The best cost never increases, the best point is feasible and the
+   *        momentum is restarted every time the cost of the iterates goes
+   *        up
+   */
+  @Test
+  public void testDescent() {
+    IterateRecorder function = new IterateRecorder("ReportExample");
+    double initial_cost = function.objective(function.getStartingPoint());
+    FISTA descent = new FISTA(30);
+    descent.setVerbose(false);
+    double[] best = descent.solve(function);
+
+    double[] costs = descent.getTTT();
+    assertEquals(initial_cost, costs[0], 0);
+    for (int i = 1; i < costs.length; i++)
+      assertTrue(costs[i] <= costs[i - 1]);
+    assertTrue(costs[costs.length - 1] < initial_cost);
+    assertEquals(costs[costs.length - 1], function.objective(best), 0);
+    assertTrue(function.minimum(best) >= 0);
+    assertTrue(function.feasible());
+
+    int nb_increases = 0;
+    List<Double> iterates = function.iterate_costs;
+    for (int k = 1; k < iterates.size(); k++)
+      if (iterates.get(k) > iterates.get(k - 1))
+        nb_increases++;
+    assertTrue(nb_increases > 0);
+    assertTrue(descent.getNb_restarts() >= nb_increases);
+  }
+}
@@ -0,0 +1,100 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+import generalNetwork.state.State;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dataStructures.WorkerPool;
+import dta_solver.SO_OptimizerByFiniteDifferences;
+import dta_solver.Simulator;
+
+/**
+ * @brief Tests the gradient of SO_OptimizerByFiniteDifferences
+ */
+public class TestFiniteDifferences {
+
+  private static SO_OptimizerByFiniteDifferences newOptimizer(String file) {
+    return new SO_OptimizerByFiniteDifferences(new Simulator(file + ".json",
+        file + "Data.json", 1, false));
+  }
+
+  /**
+   * @return A random point of the simplices at a distance of at least half
+   *         the uniform split ratios from their faces, so that the probes
+   *         stay feasible
+   */
+  private static double[] interiorControl(SO_OptimizerByFiniteDifferences
+      optimizer, Random random) {
+    double[] control = TestAdjointStorage.randomControl(optimizer, random);
+    int[][] blocks = optimizer.getSimplexBlocks();
+    for (int b = 0; b < blocks.length; b++)
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+        control[i] = 0.5 * control[i] + 0.5 / blocks[b][1];
+    return control;
+  }
+
+  /**
+   * @brief The gradient computed on several threads is the sequential one,
+   *        for forward and central differences
+   */
+  @Test
+  public void testParallel() {
+    String[] files = { "graphs/ReportExample",
+        "JUnitTests/2x2JunctionNetwork" };
+    Random random = new Random(0);
+    int previous_nb_threads = WorkerPool.getNb_threads();
+    WorkerPool.setNb_threads(4);
+    try {
+      for (int f = 0; f < files.length; f++) {
+        SO_OptimizerByFiniteDifferences optimizer = newOptimizer(files[f]);
+        double[] control = interiorControl(optimizer, random);
+        for (int central = 0; central < 2; central++) {
+          optimizer.setCentral_differences(central == 1);
+          double[] sequential = new double[control.length];
+          optimizer.setParallel(false);
+          optimizer.notProjectedGradient(sequential, control);
+          double[] parallel = new double[control.length];
+          optimizer.setParallel(true);
+          optimizer.notProjectedGradient(parallel, control);
+          assertArrayEquals(files[f], sequential, parallel, 0);
+        }
+      }
+    } finally {
+      WorkerPool.setNb_threads(previous_nb_threads);
+    }
+  }
+
+  /**
+   * @brief Central differences converge to the gradient given by the adjoint
+   *        method in O(h^2)
+   * @details The network has no kink around the tested controls
+   */
+  @Test
+  public void testCentralDifferences() {
+    SO_OptimizerByFiniteDifferences optimizer =
+        newOptimizer("JUnitTests/2x2JunctionNetwork");
+    optimizer.setCentral_differences(true);
+    Random random = new Random(1);
+    for (int trial = 0; trial < 3; trial++) {
+      double[] control = interiorControl(optimizer, random);
+      State state = optimizer.forwardSimulate(control);
+      double[] adjoint = optimizer.gradientByAdjointMethod(state, control);
+
+      double[] errors = new double[2];
+      double h = 1E-2;
+      for (int e = 0; e < errors.length; e++) {
+        optimizer.setDeviation(h / (1 << e));
+        double[] gradient = new double[control.length];
+        optimizer.notProjectedGradient(gradient, control);
+        for (int i = 0; i < control.length; i++)
+          errors[e] = Math.max(errors[e], Math.abs(gradient[i] - adjoint[i]));
+      }
+      assertTrue(errors[0] < 10 * h * h);
+      /* Halving the step divides the error by 4 */
+      assertEquals(4, errors[0] / errors[1], 0.5);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+import dta_solver.adjointMethod.LBFGSBOptimizer;
+import dta_solver.adjointMethod.SimplexGradientDescentOptimizer;
+
+public class TestLBFGSBOptimizer {
+
+  static double epsilon = 1E-6;
+
+  /**
+   * @brief The minimum of ||x - a||^2 on two simplices is the projection of a
+   *        on the simplices. The last variable is in no simplex and is only
+   *        bounded by 1
+   */
+  @Test
+  public void testQuadraticOnSimplices() {
+    final double[] a = { 0.8, 0.6, -0.3, 2, 0.1, 0.1, 5 };
+    SimplexGradientDescentOptimizer function =
+        new SimplexGradientDescentOptimizer() {
+          @Override
+          public void gradient(double[] gradient_f, double[] control) {
+            for (int i = 0; i < a.length; i++)
+              gradient_f[i] = 2 * (control[i] - a[i]);
+          }
+
+          @Override
+          public double objective(double[] control) {
+            double result = 0;
+            for (int i = 0; i < a.length; i++)
+              result += (control[i] - a[i]) * (control[i] - a[i]);
+            return result;
+          }
+
+          @Override
+          public double[] getStartingPoint() {
+            return new double[] { 1, 0, 0, 0, 0, 1, 0.5 };
+          }
+
+          @Override
+          public void projectControl(double[] control) {
+          }
+
+          @Override
+          public int[][] getSimplexBlocks() {
+            return new int[][] { { 0, 3 }, { 3, 3 } };
+          }
+        };
+
+    LBFGSBOptimizer optimizer = new LBFGSBOptimizer(function);
+    optimizer.setMaxIter(100);
+    assertEquals(LBFGSBOptimizer.SOLVE_SUCCEEDED, optimizer.OptimizeNLP());
+
+    double[] expected = { 0.6, 0.4, 0, 1, 0, 0, 1 };
+    assertArrayEquals(expected, optimizer.getState(), epsilon);
+    assertEquals(function.objective(optimizer.getState()),
+        optimizer.getObjVal(), 1E-12);
+  }
+
+  /**
+   * @brief On a network, the solution is feasible and better than the
+   *        starting point
+   */
+  @Test
+  public void testNetwork() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    SOPC_Optimizer function = new SOPC_Optimizer(simulator);
+    double initial_cost = function.objective(function.getStartingPoint());
+
+    LBFGSBOptimizer optimizer = new LBFGSBOptimizer(function);
+    optimizer.setMaxIter(20);
+    optimizer.OptimizeNLP();
+    double[] control = optimizer.getState();
+    assertTrue(optimizer.getObjVal() < initial_cost);
+    assertEquals(function.objective(control), optimizer.getObjVal(), 1E-12);
+
+    int[][] blocks = function.getSimplexBlocks();
+    for (int b = 0; b < blocks.length; b++) {
+      double sum = 0;
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+        assertTrue(control[i] >= 0 && control[i] <= 1);
+        sum += control[i];
+      }
+      assertEquals(1, sum, 1E-12);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dataStructures.WorkerPool;
+import dta_solver.AnytimeOptimizer;
+import dta_solver.Budget;
+import dta_solver.MultiStartOptimizer;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+import optimization.GradientDescentMethod;
+import optimization.ProjectedLBFGS;
+
+public class TestMultiStart {
+
+  private static MultiStartOptimizer.DescentFactory factory =
+      new MultiStartOptimizer.DescentFactory() {
+        @Override
+        public GradientDescentMethod newDescent() {
+          GradientDescentMethod descent = new ProjectedLBFGS();
+          descent.setVerbose(false);
+          return descent;
+        }
+      };
+
+  private static MultiStartOptimizer run(int nb_threads) {
+    int previous_nb_threads = WorkerPool.getNb_threads();
+    WorkerPool.setNb_threads(nb_threads);
+    try {
+      Simulator simulator = new Simulator("graphs/ReportExample.json",
+          "graphs/ReportExampleData.json", 1, false);
+      MultiStartOptimizer optimizer =
+          new MultiStartOptimizer(simulator, factory, 4);
+      optimizer.setMax_iterations(20);
+      optimizer.setRound_iterations(5);
+      optimizer.optimize();
+      return optimizer;
+    } finally {
+      WorkerPool.setNb_threads(previous_nb_threads);
+    }
+  }
+
+  /**
+   * @brief The concurrent starts give the results of the sequential ones
+   */
+  @Test
+  public void testDeterministic() {
+    MultiStartOptimizer sequential = run(1);
+    MultiStartOptimizer parallel = run(3);
+
+    assertArrayEquals(sequential.getCosts(), parallel.getCosts(), 0);
+    assertArrayEquals(sequential.getIterations(), parallel.getIterations());
+    for (int s = 0; s < 4; s++)
+      assertArrayEquals(sequential.getControls()[s],
+          parallel.getControls()[s], 0);
+
+    double[] costs = parallel.getCosts();
+    for (int s = 0; s < costs.length; s++)
+      assertTrue(costs[parallel.getBest_start()] <= costs[s]);
+
+    /* Some starts are stopped after a few rounds */
+    int min_iterations = Integer.MAX_VALUE;
+    for (int s = 0; s < 4; s++)
+      min_iterations = Math.min(min_iterations, parallel.getIterations()[s]);
+    assertTrue(min_iterations < 20);
+  }
+
+  /**
+   * @brief A start is one descent that is not restarted at every round
+   */
+  @Test
+  public void testRoundsKeepTheDescent() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    MultiStartOptimizer multi_start =
+        new MultiStartOptimizer(simulator, factory, 1);
+    multi_start.setMax_iterations(20);
+    multi_start.setRound_iterations(3);
+    double[] control = multi_start.optimize();
+
+    /* The only start is the uniform split ratios */
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator.workspace());
+    double[] uniform = optimizer.getStartingPoint();
+    int[][] blocks = optimizer.getSimplexBlocks();
+    for (int b = 0; b < blocks.length; b++)
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+        uniform[i] = 1.0 / blocks[b][1];
+    optimizer.setStartingPoint(uniform);
+    GradientDescentMethod descent = factory.newDescent();
+    descent.setMaxIterations(20);
+    AnytimeOptimizer expected = new AnytimeOptimizer(optimizer, descent);
+    expected.optimize(new Budget(0, 0));
+
+    assertEquals(expected.getBest_cost(), multi_start.getCosts()[0], 0);
+    assertArrayEquals(expected.getBest_control(), control, 0);
+    assertEquals(expected.getNb_gradients(), multi_start.getIterations()[0]);
+  }
+}
@@ -0,0 +1,131 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import generalLWRNetwork.Cell;
+import generalLWRNetwork.Junction;
+import generalNetwork.data.demand.Demands;
+import generalNetwork.state.State;
+
+import org.junit.Test;
+
+import dataStructures.WorkerPool;
+import dta_solver.Network;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+public class TestNetworkWorkspaces {
+
+  private static String network_file = "graphs/ReportExample.json";
+  private static String data_file = "graphs/ReportExampleData.json";
+
+  /**
+   * @brief Simulators built on one network share it and simulate as a
+   *        simulator that loads its own network
+   */
+  @Test
+  public void testSharedNetwork() {
+    Network network = new Network(network_file, data_file, 1, false);
+    SOPC_Optimizer first = new SOPC_Optimizer(new Simulator(network));
+    SOPC_Optimizer second = new SOPC_Optimizer(new Simulator(network));
+    SOPC_Optimizer loaded = new SOPC_Optimizer(new Simulator(network_file,
+        data_file, 1, false));
+
+    double[] control = loaded.getStartingPoint();
+    control[0] = 0.3;
+    control[1] = 0.7;
+    assertEquals(loaded.objective(control), first.objective(control), 0);
+    assertEquals(loaded.objective(control), second.objective(control), 0);
+  }
+
+  /**
+   * @brief The concurrent simulations of several scenarios give the states
+   *        of the simulator with their demands, and do not modify it
+   */
+  @Test
+  public void testScenarios() {
+    Simulator simulator = new Simulator(network_file, data_file, 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+    String initial_splits = simulator.splits.toString();
+    Demands demands = simulator.origin_demands;
+
+    int nb_scenarios = 4;
+    double[][] controls = new double[nb_scenarios][];
+    Demands[] scenario_demands = new Demands[nb_scenarios];
+    for (int s = 0; s < nb_scenarios; s++) {
+      controls[s] = optimizer.getStartingPoint();
+      controls[s][0] = 0.1 * (s + 1);
+      controls[s][1] = 1 - 0.1 * (s + 1);
+      scenario_demands[s] = demands.shift(s);
+    }
+
+    State[] states;
+    int previous_nb_threads = WorkerPool.getNb_threads();
+    WorkerPool.setNb_threads(3);
+    try {
+      states = optimizer.simulate(controls, scenario_demands);
+    } finally {
+      WorkerPool.setNb_threads(previous_nb_threads);
+    }
+    assertEquals(initial_splits, simulator.splits.toString());
+    assertEquals(0, optimizer.getStateCache().size());
+
+    for (int s = 0; s < nb_scenarios; s++) {
+      simulator.origin_demands = scenario_demands[s];
+      optimizer.getStateCache().clear();
+      State expected = optimizer.forwardSimulate(controls[s]);
+      assertEquals(optimizer.objective(expected, controls[s]),
+          optimizer.objective(states[s], controls[s]), 0);
+      for (int k = 0; k < expected.profiles.length; k++)
+        assertEquals(expected.profiles[k].getCell(0).total_density,
+            states[s].profiles[k].getCell(0).total_density, 0);
+    }
+  }
+
+  /**
+   * @brief Networks loaded concurrently have the ids and the simulations of
+   *        the networks loaded one after the other
+   */
+  @Test
+  public void testConcurrentLoading() {
+    String[] graphs = { "ReportExample", "TwoParallelPath", "ComplexNetwork",
+        "ReportExample", "parallelPath", "TwoParallelPath" };
+    String[] network_files = new String[graphs.length];
+    String[] data_files = new String[graphs.length];
+    for (int i = 0; i < graphs.length; i++) {
+      network_files[i] = "graphs/" + graphs[i] + ".json";
+      data_files[i] = "graphs/" + graphs[i] + "Data.json";
+    }
+
+    Network[] networks;
+    int previous_nb_threads = WorkerPool.getNb_threads();
+    WorkerPool.setNb_threads(3);
+    try {
+      networks = Network.loadAll(network_files, data_files, 1);
+    } finally {
+      WorkerPool.setNb_threads(previous_nb_threads);
+    }
+
+    for (int i = 0; i < graphs.length; i++) {
+      Network expected = new Network(network_files[i], data_files[i], 1,
+          false);
+      Cell[] cells = networks[i].getLwr_network().getCells();
+      Junction[] junctions = networks[i].getLwr_network().getJunctions();
+      assertEquals(expected.getLwr_network().getCells().length, cells.length);
+      assertEquals(expected.getLwr_network().getJunctions().length,
+          junctions.length);
+      for (int c = 0; c < cells.length; c++)
+        assertEquals(c, cells[c].getUniqueId());
+      for (int j = 0; j < junctions.length; j++)
+        assertEquals(j, junctions[j].getUniqueId());
+
+      SOPC_Optimizer optimizer =
+          new SOPC_Optimizer(new Simulator(networks[i]));
+      SOPC_Optimizer expected_optimizer =
+          new SOPC_Optimizer(new Simulator(expected));
+      double[] control = optimizer.getStartingPoint();
+      assertEquals(expected_optimizer.objective(control),
+          optimizer.objective(control), 0);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+import generalLWRNetwork.Junction;
+import generalNetwork.state.State;
+
+import org.junit.Test;
+
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+/**
+ * @brief Compares the gradient given by the adjoint method with finite
+ *        differences on networks with NxM junctions that are neither 1xN nor
+ *        2x1
+ */
+public class TestNxMJunctionAdjoint {
+
+  static double epsilon = 1E-7;
+  static double precision = 1E-5;
+
+  /**
+   * @return The number of (time step, junction) where a NxM junction solved
+   *         by Junction.solveNxMJunction is limited by the supply of one of
+   *         its outgoing cells
+   */
+  private static int nbSupplyLimited(Simulator simulator, State state) {
+    Junction[] junctions = simulator.lwr_network.getJunctions();
+    int T = simulator.time_discretization.getNb_steps();
+    int result = 0;
+    for (int j = 0; j < junctions.length; j++) {
+      int nb_prev = junctions[j].getPrev().length;
+      int nb_next = junctions[j].getNext().length;
+      if (nb_prev == 1 || (nb_prev == 2 && nb_next == 1))
+        continue;
+      for (int k = 0; k < T; k++)
+        if (state.get(k).getJunction(j).is_supply_limited())
+          result++;
+    }
+    return result;
+  }
+
+  private static void check(String network, String data) {
+    Simulator simulator = new Simulator(network, data, 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+
+    double[] control = optimizer.getControl();
+    State state = optimizer.forwardSimulate(control);
+    /* The supply limited branch and its derivatives have to be tested */
+    assertTrue(network + " is never supply limited",
+        nbSupplyLimited(simulator, state) > 0);
+    double[] gradient = optimizer.gradientByAdjointMethod(state, control);
+
+    for (int i = 0; i < control.length; i++) {
+      double[] plus = control.clone();
+      double[] minus = control.clone();
+      plus[i] += epsilon;
+      minus[i] -= epsilon;
+      double finite_difference = (optimizer.objective(plus)
+          - optimizer.objective(minus)) / (2 * epsilon);
+      assertEquals(finite_difference, gradient[i], precision);
+    }
+  }
+
+  @Test
+  public void test2x2() {
+    check("JUnitTests/2x2JunctionNetwork.json",
+        "JUnitTests/2x2JunctionNetworkData.json");
+  }
+
+  @Test
+  public void test3x1() {
+    check("JUnitTests/3x1JunctionNetwork.json",
+        "JUnitTests/3x1JunctionNetworkData.json");
+  }
+}
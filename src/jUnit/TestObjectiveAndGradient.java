@@ -0,0 +1,64 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+import dta_solver.StateCache;
+
+/**
+ * @brief Compares objectiveAndGradient() with separate calls to objective()
+ *        and gradient()
+ */
+public class TestObjectiveAndGradient {
+
+  static String[] graphs = { "ReportExample", "ComplexNetwork",
+      "PathWithPriorities" };
+
+  private static SOPC_Optimizer newOptimizer(String graph) {
+    Simulator simulator = new Simulator("graphs/" + graph + ".json",
+        "graphs/" + graph + "Data.json", 1, false);
+    return new SOPC_Optimizer(simulator);
+  }
+
+  @Test
+  public void testFused() {
+    Random random = new Random(0);
+    for (int g = 0; g < graphs.length; g++) {
+      /* The reference does not store any state */
+      SOPC_Optimizer reference = newOptimizer(graphs[g]);
+      reference.getStateCache().setMax_footprint(0);
+      SOPC_Optimizer optimizer = newOptimizer(graphs[g]);
+      StateCache cache = optimizer.getStateCache();
+
+      for (int trial = 0; trial < 2; trial++) {
+        double[] control = TestAdjointStorage.randomControl(optimizer, random);
+        double expected_objective = reference.objective(control);
+        double[] expected_gradient = new double[control.length];
+        reference.gradient(expected_gradient, control);
+
+        /* Cold cache: the control is simulated once */
+        cache.clear();
+        cache.resetCounters();
+        double[] gradient = new double[control.length];
+        double objective = optimizer.objectiveAndGradient(gradient, control);
+        assertEquals(graphs[g], expected_objective, objective, 0);
+        assertArrayEquals(graphs[g], expected_gradient, gradient, 0);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        /* Warm cache: the stored state is used */
+        gradient = new double[control.length];
+        objective = optimizer.objectiveAndGradient(gradient, control);
+        assertEquals(graphs[g], expected_objective, objective, 0);
+        assertArrayEquals(graphs[g], expected_gradient, gradient, 0);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+      }
+    }
+  }
+}
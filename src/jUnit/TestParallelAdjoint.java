@@ -0,0 +1,62 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+import generalNetwork.state.State;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dataStructures.WorkerPool;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+/**
+ * @brief Compares the simulation and the adjoint computed sequentially and
+ *        on several threads
+ * @details Every loop is split in tasks of one item so that the junctions
+ *          of all the types are solved in parallel.
+ */
+public class TestParallelAdjoint {
+
+  static String[] files = { "graphs/ReportExample", "graphs/ComplexNetwork",
+      "JUnitTests/2x1PriorityNetwork", "JUnitTests/2x2JunctionNetwork" };
+
+  private static double[] gradient(SOPC_Optimizer optimizer,
+      double[] control, int nb_threads, double[] objective) {
+    WorkerPool.setNb_threads(nb_threads);
+    /* The state must be simulated with nb_threads */
+    optimizer.getStateCache().clear();
+    State state = optimizer.forwardSimulate(control);
+    objective[0] = optimizer.objective(state, control);
+    return optimizer.gradientByAdjointMethod(state, control);
+  }
+
+  @Test
+  public void testThreads() {
+    int previous_nb_threads = WorkerPool.getNb_threads();
+    int previous_min_items = WorkerPool.getMin_items_per_task();
+    WorkerPool.setMin_items_per_task(1);
+    try {
+      Random random = new Random(0);
+      for (int f = 0; f < files.length; f++) {
+        SOPC_Optimizer optimizer = new SOPC_Optimizer(new Simulator(
+            files[f] + ".json", files[f] + "Data.json", 1, false));
+        double[] control = TestAdjointStorage.randomControl(optimizer, random);
+
+        double[] sequential_objective = new double[1];
+        double[] sequential = gradient(optimizer, control, 1,
+            sequential_objective);
+        double[] parallel_objective = new double[1];
+        double[] parallel = gradient(optimizer, control, 4,
+            parallel_objective);
+        assertEquals(files[f], sequential_objective[0],
+            parallel_objective[0], 0);
+        assertArrayEquals(files[f], sequential, parallel, 0);
+      }
+    } finally {
+      WorkerPool.setNb_threads(previous_nb_threads);
+      WorkerPool.setMin_items_per_task(previous_min_items);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dataStructures.WorkerPool;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+import optimization.BackTrackingLineSearch;
+import optimization.ParallelBackTrackingLineSearch;
+
+/**
+ * @brief The parallel line search must give the point of the sequential one
+ */
+public class TestParallelLineSearch {
+
+  @Test
+  public void testSameStep() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+
+    double[] control = optimizer.getStartingPoint();
+    double[] gradient = new double[control.length];
+    double cost = optimizer.objectiveAndGradient(gradient, control);
+
+    double[] expected = new BackTrackingLineSearch().lineSearch(control, cost,
+        gradient, optimizer);
+    assertTrue(optimizer.objective(expected) < cost);
+
+    int nb_threads = WorkerPool.getNb_threads();
+    WorkerPool.setNb_threads(3);
+    try {
+      for (int width = 1; width <= 5; width++) {
+        /* The states of the sequential search must not be reused */
+        optimizer.getStateCache().clear();
+        ParallelBackTrackingLineSearch search =
+            new ParallelBackTrackingLineSearch();
+        search.setBatch_width(width);
+        double[] result = search.lineSearch(control, cost, gradient,
+            optimizer);
+        assertArrayEquals(expected, result, 0);
+      }
+    } finally {
+      WorkerPool.setNb_threads(nb_threads);
+    }
+  }
+
+  /**
+   * @brief A split ratio close to 0 that the gradient decreases does not
+   *        stop the search
+   */
+  @Test
+  public void testAlmostOnFace() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+    double[] gradient = new double[optimizer.getStartingPoint().length];
+    double[] control =
+        TestBackTrackingLineSearch.almostOnFace(optimizer, gradient);
+    double cost = optimizer.objective(control);
+
+    int nb_threads = WorkerPool.getNb_threads();
+    WorkerPool.setNb_threads(4);
+    try {
+      ParallelBackTrackingLineSearch search =
+          new ParallelBackTrackingLineSearch();
+      double[] result = search.lineSearch(control, cost, gradient, optimizer);
+      assertTrue(optimizer.objective(result) < cost);
+      for (int i = 0; i < result.length; i++)
+        assertTrue(result[i] >= 0);
+    } finally {
+      WorkerPool.setNb_threads(nb_threads);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+import generalLWRNetwork.Junction;
+import generalNetwork.state.JunctionInfo;
+import generalNetwork.state.State;
+
+import org.junit.Test;
+
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+/**
+ * @brief Compares the gradient given by the adjoint method with finite
+ *        differences on a 2x1 junction that is supply limited and does not
+ *        respect its priorities
+ * @details The incoming link with the highest priority has a small demand,
+ *          which is fully served, and the other link gets the remaining
+ *          supply. The cells of the two incoming links have different lengths
+ *          so that their adjoint variables differ.
+ */
+public class TestPriorityJunctionAdjoint {
+
+  static double epsilon = 1E-7;
+  static double precision = 1E-5;
+
+  @Test
+  public void testPriorityNotRespected() {
+    Simulator simulator = new Simulator(
+        "JUnitTests/2x1PriorityNetwork.json",
+        "JUnitTests/2x1PriorityNetworkData.json", 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+
+    double[] control = optimizer.getControl();
+    State state = optimizer.forwardSimulate(control);
+
+    /* The junction is in the tested regime at some time steps */
+    Junction[] junctions = simulator.lwr_network.getJunctions();
+    int nb_violations = 0;
+    for (int k = 0; k < state.profiles.length - 1; k++)
+      for (int j = 0; j < junctions.length; j++) {
+        if (junctions[j].getPrev().length != 2
+            || junctions[j].getNext().length != 1)
+          continue;
+        JunctionInfo info = state.get(k).getJunction(j);
+        if (info.is_supply_limited() && info.getPriority_2x1_demand() != -1)
+          nb_violations++;
+      }
+    assertTrue(nb_violations > 0);
+
+    double[] gradient = optimizer.gradientByAdjointMethod(state, control);
+    for (int i = 0; i < control.length; i++) {
+      double[] plus = control.clone();
+      double[] minus = control.clone();
+      plus[i] += epsilon;
+      minus[i] -= epsilon;
+      double finite_difference = (optimizer.objective(plus)
+          - optimizer.objective(minus)) / (2 * epsilon);
+      assertEquals(finite_difference, gradient[i], precision);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import optimization.ParallelBackTrackingLineSearch;
+import optimization.ProjectedLBFGS;
+import optimization.WolfeLineSearch;
+
+public class TestProjectedLBFGS {
+
+  private static void checkDescent(int history_size) {
+    RecordingOptimizer function = new RecordingOptimizer("ReportExample");
+    double initial_cost = function.objective(function.getStartingPoint());
+    ProjectedLBFGS descent = new ProjectedLBFGS(20, history_size);
+    descent.setVerbose(false);
+    double[] control = descent.solve(function);
+
+    double[] costs = descent.getTTT();
+    assertEquals(initial_cost, costs[0], 0);
+    for (int i = 1; i < costs.length; i++)
+      assertTrue(costs[i] <= costs[i - 1]);
+    assertTrue(costs[costs.length - 1] < initial_cost);
+    assertEquals(costs[costs.length - 1], function.objective(control), 0);
+    assertTrue(function.minimum(control) >= 0);
+    assertTrue(function.feasible());
+  }
+
+  /**
+   * @brief The cost decreases at every iteration and the evaluated controls
+   *        stay on the simplices
+   */
+  @Test
+  public void testDescent() {
+    checkDescent(8);
+  }
+
+  @Test
+  public void testOnePair() {
+    checkDescent(1);
+  }
+
+  /**
+   * @brief Starting from vertices of the simplices, the Wolfe line search
+   *        always finds a decrease along the quasi-Newton direction
+   * @details The direction decreases split ratios at 0 that the search must
+   *          not consider
+   */
+  @Test
+  public void testWolfeOnFace() {
+    RecordingOptimizer function = new RecordingOptimizer("ComplexNetwork");
+    double[] start = function.getStartingPoint();
+    int[][] blocks = function.getSimplexBlocks();
+    for (int b = 0; b < blocks.length; b++)
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+        start[i] = i == blocks[b][0] ? 1 : 0;
+    function.setStartingPoint(start);
+
+    ProjectedLBFGS descent = new ProjectedLBFGS(20);
+    descent.setVerbose(false);
+    descent.setLineSearch(new WolfeLineSearch());
+    descent.solve(function);
+
+    assertEquals(0, descent.getNb_resets());
+    double[] costs = descent.getTTT();
+    for (int i = 1; i < costs.length; i++)
+      assertTrue(costs[i] <= costs[i - 1]);
+    assertTrue(costs[costs.length - 1] < costs[0]);
+    assertTrue(function.feasible());
+  }
+
+  /**
+   * @brief The line searches along -g cannot follow the quasi-Newton
+   *        direction
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedLineSearch() {
+    new ProjectedLBFGS().setLineSearch(new ParallelBackTrackingLineSearch());
+  }
+}
@@ -0,0 +1,104 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+import generalNetwork.state.State;
+
+import org.junit.Test;
+
+import dta_solver.RecedingHorizonOptimizer;
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+import optimization.GradientDescent;
+
+public class TestRecedingHorizon {
+
+  static double epsilon = 1E-10;
+  static double fd_step = 1E-7;
+  static double precision = 1E-5;
+
+  /**
+   * @brief Starting from the state reached after some time steps with the
+   *        shifted demands and control gives the end of the first simulation
+   */
+  @Test
+  public void testWarmStartSimulation() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+    int T = simulator.time_discretization.getNb_steps();
+    int elapsed = 3;
+
+    double[] control = optimizer.getControl();
+    State state = optimizer.forwardSimulate(control);
+
+    simulator.setInitialProfiles(state.profiles[elapsed - 1],
+        state.profiles[elapsed]);
+    simulator.origin_demands = simulator.origin_demands.shift(elapsed);
+    optimizer.getStateCache().clear();
+    int block_size = control.length / T;
+    double[] shifted = new double[control.length];
+    for (int k = 0; k < T; k++)
+      System.arraycopy(control, Math.min(k + elapsed, T - 1) * block_size,
+          shifted, k * block_size, block_size);
+    State warm_state = optimizer.forwardSimulate(shifted);
+
+    int nb_cells = simulator.lwr_network.getNb_Cells();
+    for (int k = 0; k < T - elapsed; k++)
+      for (int cell = 0; cell < nb_cells; cell++)
+        assertEquals(state.profiles[k + elapsed].getCell(cell).total_density,
+            warm_state.profiles[k].getCell(cell).total_density, epsilon);
+  }
+
+  /**
+   * @brief The adjoint gradient stays exact when the network does not start
+   *        empty
+   */
+  @Test
+  public void testWarmStartGradient() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+    int elapsed = 2;
+
+    State state = optimizer.forwardSimulate(optimizer.getControl());
+    simulator.setInitialProfiles(state.profiles[elapsed - 1],
+        state.profiles[elapsed]);
+    optimizer.getStateCache().clear();
+
+    double[] control = optimizer.getControl();
+    double[] gradient = optimizer.gradientByAdjointMethod(
+        optimizer.forwardSimulate(control), control);
+    for (int i = 0; i < control.length; i++) {
+      double[] plus = control.clone();
+      double[] minus = control.clone();
+      plus[i] += fd_step;
+      minus[i] -= fd_step;
+      double finite_difference = (optimizer.objective(plus)
+          - optimizer.objective(minus)) / (2 * fd_step);
+      assertEquals(finite_difference, gradient[i], precision);
+    }
+  }
+
+  private static RecedingHorizonOptimizer newRecedingHorizon() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    GradientDescent descent = new GradientDescent();
+    descent.setVerbose(false);
+    return new RecedingHorizonOptimizer(simulator, descent, 1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAdvanceBeforeOptimize() {
+    newRecedingHorizon().advance(1, null);
+  }
+
+  /**
+   * @brief The elapsed time steps are checked also without assertions
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testElapsedOutOfRange() {
+    RecedingHorizonOptimizer receding_horizon = newRecedingHorizon();
+    receding_horizon.optimize();
+    receding_horizon.advance(1000, null);
+  }
+}
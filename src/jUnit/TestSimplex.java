@@ -0,0 +1,91 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dataStructures.Simplex;
+
+public class TestSimplex {
+
+  static double epsilon = 1E-12;
+
+  @Test
+  public void testProject() {
+    double[] v = new double[] { 7.0, 0.5, 0.8, -0.2, 7.0 };
+    Simplex.project(v, 1, 3);
+    assertArrayEquals(new double[] { 7.0, 0.35, 0.65, 0.0, 7.0 }, v, epsilon);
+
+    /* A point of the simplex is not modified */
+    v = new double[] { 0.2, 0.3, 0.5 };
+    Simplex.project(v, 0, 3);
+    assertArrayEquals(new double[] { 0.2, 0.3, 0.5 }, v, epsilon);
+
+    v = new double[] { 3.0, 0.0, 0.0 };
+    Simplex.project(v, 0, 3);
+    assertArrayEquals(new double[] { 1.0, 0.0, 0.0 }, v, epsilon);
+  }
+
+  /**
+   * @brief The projection is closer to the point than random points of the
+   *        simplex
+   */
+  @Test
+  public void testProjectIsClosest() {
+    Random random = new Random(42);
+    int n = 5;
+    for (int test = 0; test < 100; test++) {
+      double[] v = new double[n];
+      for (int i = 0; i < n; i++)
+        v[i] = 4 * random.nextDouble() - 2;
+      double[] p = v.clone();
+      Simplex.project(p, 0, n);
+
+      double sum = 0;
+      for (int i = 0; i < n; i++) {
+        assertTrue(p[i] >= 0);
+        sum += p[i];
+      }
+      assertEquals(1.0, sum, epsilon);
+
+      for (int other = 0; other < 10; other++) {
+        double[] q = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+          q[i] = random.nextDouble();
+          total += q[i];
+        }
+        double distance_p = 0, distance_q = 0;
+        for (int i = 0; i < n; i++) {
+          q[i] /= total;
+          distance_p += (v[i] - p[i]) * (v[i] - p[i]);
+          distance_q += (v[i] - q[i]) * (v[i] - q[i]);
+        }
+        assertTrue(distance_p <= distance_q + epsilon);
+      }
+    }
+  }
+
+  @Test
+  public void testProjectGradient() {
+    double[] gradient = new double[] { 1.0, 2.0, 3.0 };
+    double[] result = new double[3];
+
+    /* Without active bound, the average is removed */
+    Simplex.projectGradient(result, gradient,
+        new double[] { 0.2, 0.3, 0.5 }, 0, 3);
+    assertArrayEquals(new double[] { -1.0, 0.0, 1.0 }, result, epsilon);
+
+    /* The last split ratio is at 0 and the descent would make it negative */
+    Simplex.projectGradient(result, gradient,
+        new double[] { 0.5, 0.5, 0.0 }, 0, 3);
+    assertArrayEquals(new double[] { -0.5, 0.5, 0.0 }, result, epsilon);
+
+    /* The first split ratio is at 0 but the descent makes it grow */
+    Simplex.projectGradient(result, gradient,
+        new double[] { 0.0, 0.5, 0.5 }, 0, 3);
+    assertArrayEquals(new double[] { -1.0, 0.0, 1.0 }, result, epsilon);
+  }
+}
@@ -0,0 +1,52 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import dataStructures.SparseMatrixBuilder;
+
+public class TestSparseMatrixBuilder {
+
+  private static void fill(SparseMatrixBuilder builder, double value) {
+    builder.begin();
+    builder.set(2, 1, value);
+    builder.set(0, 1, 2.0);
+    builder.set(1, 0, 3.0);
+    /* The last value set is kept */
+    builder.set(2, 1, -value);
+    builder.set(3, 3, 0.0);
+  }
+
+  @Test
+  public void test() {
+    SparseMatrixBuilder builder = new SparseMatrixBuilder(4, 4);
+
+    fill(builder, 1.0);
+    SparseCCDoubleMatrix2D matrix = builder.build();
+    assertEquals(1, builder.getNb_compressions());
+    assertEquals(-1.0, matrix.getQuick(2, 1), 0);
+    assertEquals(2.0, matrix.getQuick(0, 1), 0);
+    assertEquals(3.0, matrix.getQuick(1, 0), 0);
+    assertEquals(0.0, matrix.getQuick(3, 3), 0);
+    assertEquals(0.0, matrix.getQuick(0, 0), 0);
+    /* The explicit zero is kept in the structure */
+    assertEquals(4, matrix.getColumnPointers()[4]);
+
+    /* Same structure: only the values are refilled */
+    fill(builder, 5.0);
+    SparseCCDoubleMatrix2D second = builder.build();
+    assertEquals(1, builder.getNb_compressions());
+    assertEquals(-5.0, second.getQuick(2, 1), 0);
+    assertEquals(-1.0, matrix.getQuick(2, 1), 0);
+
+    /* New structure */
+    fill(builder, 5.0);
+    builder.set(0, 3, 4.0);
+    second = builder.build();
+    assertEquals(2, builder.getNb_compressions());
+    assertEquals(4.0, second.getQuick(0, 3), 0);
+    assertEquals(-5.0, second.getQuick(2, 1), 0);
+  }
+}
@@ -0,0 +1,120 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+import generalNetwork.state.State;
+
+import org.junit.Test;
+
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+import dta_solver.StateCache;
+
+public class TestStateCache {
+
+  private static String network_file = "graphs/ReportExample.json";
+  private static String data_file = "graphs/ReportExampleData.json";
+
+  private static double[][] controls = { { 0.5, 0.5 }, { 0.2, 0.8 },
+      { 0.9, 0.1 } };
+
+  private static State newState() {
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(new Simulator(network_file,
+        data_file, 1, false));
+    return optimizer.forwardSimulate(optimizer.getControl());
+  }
+
+  /* Estimated footprint of an entry */
+  private static long entryFootprint(State state) {
+    return StateCache.footprint(state) + 8 * controls[0].length;
+  }
+
+  @Test
+  public void testCounters() {
+    State state = newState();
+    StateCache cache = new StateCache(10 * entryFootprint(state));
+    assertNull(cache.get(controls[0]));
+    cache.put(controls[0], state);
+    assertSame(state, cache.get(controls[0].clone()));
+    assertNull(cache.get(controls[1]));
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    cache.resetCounters();
+    assertEquals(0, cache.getHits());
+    assertEquals(0, cache.getMisses());
+  }
+
+  /**
+   * @brief The least recently used states are removed when the footprint is
+   *        larger than the maximum
+   */
+  @Test
+  public void testEviction() {
+    State state = newState();
+    long entry = entryFootprint(state);
+    StateCache cache = new StateCache(2 * entry);
+    cache.put(controls[0], state);
+    cache.put(controls[1], state);
+    assertEquals(2 * entry, cache.getFootprint());
+
+    /* controls[1] becomes the least recently used */
+    assertNotNull(cache.get(controls[0]));
+    cache.put(controls[2], state);
+    assertEquals(2, cache.size());
+    assertEquals(2 * entry, cache.getFootprint());
+    assertNull(cache.get(controls[1]));
+    assertNotNull(cache.get(controls[0]));
+    assertNotNull(cache.get(controls[2]));
+
+    /* Storing a control again does not count it twice */
+    cache.put(controls[2], state);
+    assertEquals(2, cache.size());
+    assertEquals(2 * entry, cache.getFootprint());
+  }
+
+  @Test
+  public void testSetMax_footprint() {
+    State state = newState();
+    long entry = entryFootprint(state);
+    StateCache cache = new StateCache(3 * entry);
+    for (int i = 0; i < controls.length; i++)
+      cache.put(controls[i], state);
+    assertEquals(3, cache.size());
+
+    cache.setMax_footprint(entry);
+    assertEquals(1, cache.size());
+    assertEquals(entry, cache.getFootprint());
+    assertNotNull(cache.get(controls[2]));
+
+    /* 0 disables the cache */
+    cache.setMax_footprint(0);
+    assertEquals(0, cache.size());
+    cache.put(controls[0], state);
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getFootprint());
+  }
+
+  /**
+   * @brief The states stored by the optimizer are dropped when the initial
+   *        profiles or the demands of the simulator change
+   */
+  @Test
+  public void testStaleStates() {
+    Simulator simulator = new Simulator(network_file, data_file, 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+    double[] control = optimizer.getControl();
+    State state = optimizer.forwardSimulate(control);
+    assertSame(state, optimizer.forwardSimulate(control));
+
+    simulator.setInitialProfiles(state.profiles[0], state.profiles[1]);
+    assertEquals(0, optimizer.getStateCache().size());
+    State restarted = optimizer.forwardSimulate(control);
+    assertNotSame(state, restarted);
+    assertEquals(state.profiles[1].getCell(0).total_density,
+        restarted.profiles[0].getCell(0).total_density, 0);
+
+    simulator.origin_demands = simulator.origin_demands.shift(1);
+    assertEquals(0, optimizer.getStateCache().size());
+    assertNotSame(restarted, optimizer.forwardSimulate(control));
+  }
+}
@@ -0,0 +1,70 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dataStructures.StreamingStatistics;
+
+public class TestStreamingStatistics {
+
+  private static double[] probabilities = { 0.05, 0.5, 0.95 };
+
+  /**
+   * @brief The mean and the variance are the ones computed with all the
+   *        values and the quantiles are close to the exact ones
+   */
+  @Test
+  public void testMoments() {
+    Random random = new Random(0);
+    int n = 20000;
+    double[] values = new double[n];
+    StreamingStatistics statistics = new StreamingStatistics(probabilities);
+    for (int i = 0; i < n; i++) {
+      values[i] = 10 + 2 * random.nextGaussian();
+      statistics.add(values[i]);
+    }
+
+    double mean = 0;
+    for (int i = 0; i < n; i++)
+      mean += values[i];
+    mean /= n;
+    double variance = 0;
+    for (int i = 0; i < n; i++)
+      variance += (values[i] - mean) * (values[i] - mean);
+    variance /= n - 1;
+
+    assertEquals(n, statistics.getCount());
+    assertEquals(mean, statistics.getMean(), 1E-10);
+    assertEquals(variance, statistics.getVariance(), 1E-8);
+
+    Arrays.sort(values);
+    assertEquals(values[0], statistics.getMin(), 0);
+    assertEquals(values[n - 1], statistics.getMax(), 0);
+    for (int q = 0; q < probabilities.length; q++)
+      assertEquals(values[(int) (probabilities[q] * (n - 1))],
+          statistics.getQuantile(q), 0.05);
+  }
+
+  /**
+   * @brief The quantiles of at most five values are exact
+   */
+  @Test
+  public void testFewValues() {
+    StreamingStatistics statistics = new StreamingStatistics(probabilities);
+    assertTrue(Double.isNaN(statistics.getMean()));
+    assertTrue(Double.isNaN(statistics.getQuantile(0)));
+
+    double[] values = { 4, 1, 3, 0, 2 };
+    for (int i = 0; i < values.length; i++)
+      statistics.add(values[i]);
+    assertEquals(2, statistics.getMean(), 0);
+    assertEquals(2.5, statistics.getVariance(), 0);
+    assertEquals(0.2, statistics.getQuantile(0), 1E-12);
+    assertEquals(2, statistics.getQuantile(1), 0);
+    assertEquals(3.8, statistics.getQuantile(2), 1E-12);
+  }
+}
@@ -0,0 +1,69 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+import generalNetwork.state.State;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+
+/**
+ * @brief Simulating only the time steps after a change of the control gives
+ *        the full simulation
+ */
+public class TestSuffixSimulation {
+
+  @Test
+  public void testSuffix() {
+    Simulator simulator = new Simulator("graphs/ComplexNetwork.json",
+        "graphs/ComplexNetworkData.json", 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+    int T = simulator.time_discretization.getNb_steps();
+    int nb_cells = simulator.lwr_network.getNb_Cells();
+    int[][] blocks = optimizer.getSimplexBlocks();
+    int block_size = optimizer.getControl().length / T;
+    Random random = new Random(7);
+
+    double[] control = optimizer.getControl();
+    State prefix = optimizer.forwardSimulate(control);
+
+    int[] first_steps = new int[] { 1, T / 2, T - 1 };
+    for (int first_step : first_steps) {
+      /* New random split ratios from first_step on */
+      double[] modified = control.clone();
+      for (int b = 0; b < blocks.length; b++) {
+        if (blocks[b][0] < first_step * block_size)
+          continue;
+        double sum = 0;
+        for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+          modified[i] = random.nextDouble() + 0.1;
+          sum += modified[i];
+        }
+        for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++)
+          modified[i] /= sum;
+      }
+
+      optimizer.getStateCache().clear();
+      State suffix = optimizer.forwardSimulateFrom(prefix, first_step,
+          modified);
+      double[] suffix_gradient = optimizer.gradientByAdjointMethod(suffix,
+          modified, first_step);
+      optimizer.getStateCache().clear();
+      State full = optimizer.forwardSimulate(modified);
+      double[] full_gradient = optimizer.gradientByAdjointMethod(full,
+          modified);
+
+      for (int k = 0; k < T; k++)
+        for (int cell = 0; cell < nb_cells; cell++)
+          assertEquals(full.profiles[k].getCell(cell).total_density,
+              suffix.profiles[k].getCell(cell).total_density, 0);
+      assertEquals(optimizer.objective(full, modified),
+          optimizer.objective(suffix, modified), 0);
+      for (int i = first_step * block_size; i < control.length; i++)
+        assertEquals(full_gradient[i], suffix_gradient[i], 0);
+    }
+  }
+}
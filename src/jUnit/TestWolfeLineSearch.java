@@ -0,0 +1,96 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dta_solver.SOPC_Optimizer;
+import dta_solver.Simulator;
+import dta_solver.adjointMethod.GradientDescentOptimizer;
+import optimization.GradientDescent;
+import optimization.WolfeLineSearch;
+
+public class TestWolfeLineSearch {
+
+  static double epsilon = 1E-12;
+
+  /**
+   * @brief The accepted step satisfies the strong Wolfe conditions and the
+   *        returned cost and gradient are the ones of the accepted point
+   */
+  @Test
+  public void testWolfeConditions() {
+    Simulator simulator = new Simulator("graphs/ReportExample.json",
+        "graphs/ReportExampleData.json", 1, false);
+    SOPC_Optimizer optimizer = new SOPC_Optimizer(simulator);
+
+    double[] control = optimizer.getStartingPoint();
+    double[] gradient = new double[control.length];
+    double cost = optimizer.objectiveAndGradient(gradient, control);
+
+    double c1 = 1E-4, c2 = 0.9;
+    WolfeLineSearch.Result result = new WolfeLineSearch(c1, c2).search(
+        control, cost, gradient, optimizer);
+    assertTrue(result.wolfe);
+    assertTrue(result.step > 0);
+    assertTrue(result.nb_trials >= 1);
+
+    double[] expected_gradient = new double[control.length];
+    double expected_cost = optimizer.objectiveAndGradient(expected_gradient,
+        result.point);
+    assertEquals(expected_cost, result.value, epsilon);
+    assertArrayEquals(expected_gradient, result.gradient, epsilon);
+
+    double slope = 0, final_slope = 0;
+    for (int i = 0; i < control.length; i++) {
+      slope -= gradient[i] * gradient[i];
+      final_slope -= result.gradient[i] * gradient[i];
+      assertEquals(control[i] - result.step * gradient[i], result.point[i],
+          epsilon);
+    }
+    assertTrue(result.value <= cost + c1 * result.step * slope);
+    assertTrue(Math.abs(final_slope) <= -c2 * slope);
+  }
+
+  /**
+   * @brief A gradient descent stops at the first line search that finds no
+   *        decrease instead of repeating it from the same point
+   */
+  @Test
+  public void testFailedSearch() {
+    /* f(x) = x at x = 0: -gradient leaves [0, 1] so the largest step is 0 */
+    GradientDescentOptimizer function = new GradientDescentOptimizer() {
+      public void gradient(double[] gradient_f, double[] control) {
+        gradient_f[0] = 1;
+      }
+
+      public double objective(double[] u) {
+        return u[0];
+      }
+
+      public double[] getStartingPoint() {
+        return new double[] { 0 };
+      }
+
+      public void projectControl(double[] control) {
+      }
+    };
+
+    final int[] nb_searches = new int[1];
+    GradientDescent descent = new GradientDescent(10);
+    descent.setVerbose(false);
+    descent.setLineSearch(new WolfeLineSearch() {
+      @Override
+      public Result search(double[] initial_point, double initial_value,
+          double[] gradient, GradientDescentOptimizer function) {
+        nb_searches[0]++;
+        return super.search(initial_point, initial_value, gradient,
+            function);
+      }
+    });
+
+    double[] control = descent.solve(function);
+    assertEquals(1, nb_searches[0]);
+    assertEquals(0, control[0], 0);
+  }
+}
@@ -0,0 +1,74 @@
+package jUnit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import dataStructures.WorkerPool;
+
+public class TestWorkerPool {
+
+  /**
+   * @brief Changing the number of threads while another thread runs parallel
+   *        calls does not make these calls fail
+   */
+  @Test
+  public void testSetNb_threadsDuringRun() throws InterruptedException {
+    int previous_nb_threads = WorkerPool.getNb_threads();
+    final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for (int t = 0; t < 8; t++) {
+      final int value = t;
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          Thread.yield();
+          return value;
+        }
+      });
+    }
+
+    final Throwable[] failure = new Throwable[1];
+    final boolean[] done = new boolean[1];
+    Thread runner = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < 2000; i++) {
+            List<Integer> results = WorkerPool.invokeAll(tasks);
+            for (int t = 0; t < tasks.size(); t++)
+              assertEquals(t, results.get(t).intValue());
+          }
+        } catch (Throwable e) {
+          failure[0] = e;
+        }
+        synchronized (done) {
+          done[0] = true;
+        }
+      }
+    };
+
+    try {
+      WorkerPool.setNb_threads(2);
+      runner.start();
+      int nb = 2;
+      while (true) {
+        synchronized (done) {
+          if (done[0])
+            break;
+        }
+        nb = nb == 2 ? 3 : 2;
+        WorkerPool.setNb_threads(nb);
+        Thread.yield();
+      }
+      runner.join();
+    } finally {
+      WorkerPool.setNb_threads(previous_nb_threads);
+    }
+    if (failure[0] != null)
+      throw new AssertionError(failure[0]);
+  }
+}
@@ -8,6 +8,8 @@ public class BackTrackingLineSearch implements LineSearchMethod {
   private double alpha;
   /* Beta must be in [0,1] (0.1 for crude search, 0.8 for less crude search) */
   private double beta;
+  /* The search stops when t is smaller than min_step times the first step */
+  private double min_step = 1E-10;
 
   public BackTrackingLineSearch(double alpha, double beta) {
     super();
@@ -15,55 +17,71 @@ public class BackTrackingLineSearch implements LineSearchMethod {
     this.beta = beta;
   }
 
+  /**
+   * @details The cost is only piecewise smooth so the sufficient decrease
+   *          condition is kept weak
+   */
   public BackTrackingLineSearch() {
-    this(0.3, 0.90);
+    this(1E-4, 0.90);
     // this(0.25, 0.4);
   }
 
   @Override
   public double[] lineSearch(double[] initial_point, double[] gradient,
       GradientDescentOptimizer function) {
+    return lineSearch(initial_point, function.objective(initial_point),
+        gradient, function);
+  }
 
-    /* We compute the direction which is the opposite of the gradient */
-    double[] direction = new double[initial_point.length];
-    for (int i = 0; i < gradient.length; i++)
-      direction[i] = -gradient[i];
-
-    /* We initialize t such that the first point remain in the feasible set */
-    double t = 1;
-    for (int i = 0; i < initial_point.length; i++)
-      if (direction[i] > 0)
-        t = Math.min(t, (1 - initial_point[i]) / direction[i]);
-      else if (direction[i] < 0)
-        t = Math.min(t, (-initial_point[i] / direction[i]));
-    t *= 0.9999999999;
-    double initial_value = function.objective(initial_point);
-
-    assert t >= 0 : "Negative factor in backtracking line search";
+  @Override
+  public double[] lineSearch(double[] initial_point, double initial_value,
+      double[] gradient, GradientDescentOptimizer function) {
 
+    /*
+     * The points are searched on the projected arc P(x - t * gradient) so
+     * they are always feasible. The projection handles the coordinates that
+     * reach a bound
+     */
+    double first_step = firstStep(gradient);
+    double t = first_step;
     double[] temporary_position = new double[initial_point.length];
-    for (int i = 0; i < temporary_position.length; i++)
-      temporary_position[i] = initial_point[i] + t * direction[i];
-
-    double common_value = alpha * scalarProduct(direction, gradient);
-    /* In case that the t *= 0.9999999999; is not efficient */
-    function.projectControl(temporary_position);
-    double temporary_value = function.objective(temporary_position);
+    double[] step = new double[initial_point.length];
+    while (t > min_step * first_step) {
+      for (int i = 0; i < temporary_position.length; i++)
+        temporary_position[i] = initial_point[i] - t * gradient[i];
+      function.projectControl(temporary_position);
+      for (int i = 0; i < step.length; i++)
+        step[i] = temporary_position[i] - initial_point[i];
 
-    while (temporary_value > initial_value + t * common_value) {
+      /* A projected step that is not a descent direction is not evaluated */
+      double decrease = scalarProduct(gradient, step);
+      if (decrease < 0
+          && function.objective(temporary_position) <= initial_value + alpha
+              * decrease)
+        return temporary_position;
       t = t * beta;
-      for (int i = 0; i < temporary_position.length; i++)
-        temporary_position[i] = initial_point[i] + t * direction[i];
-      temporary_value = function.objective(temporary_position);
     }
 
-    return temporary_position;
+    /* No decrease has been found */
+    return initial_point.clone();
+  }
+
+  /**
+   * @return The largest t <= 1 such that x - t * gradient moves no coordinate
+   *         by more than 1, the diameter of the simplices. Larger steps are
+   *         projected on the same vertices
+   */
+  static double firstStep(double[] gradient) {
+    double max_gradient = 1;
+    for (int i = 0; i < gradient.length; i++)
+      max_gradient = Math.max(max_gradient, Math.abs(gradient[i]));
+    return 1 / max_gradient;
   }
 
   private double scalarProduct(double[] gradient, double[] direction) {
     double result = 0;
     for (int i = 0; i < gradient.length; i++)
-      result += gradient[i] + direction[i];
+      result += gradient[i] * direction[i];
     return result;
   }
 }
\ No newline at end of file
@@ -0,0 +1,228 @@
+package optimization;
+
+import dta_solver.adjointMethod.FusedGradientDescentOptimizer;
+import dta_solver.adjointMethod.GradientDescentOptimizer;
+import dta_solver.adjointMethod.SimplexGradientDescentOptimizer;
+
+/**
+ * @class ExponentiatedGradient
+ * @brief Mirror descent with the entropy on the simplex blocks of the control
+ * @details Every block is updated by x_i <- x_i exp(-eta g_i) / Z where Z
+ *          normalizes the block. The iterates are always strictly inside the
+ *          simplices so projectControl is never used.
+ *          The step eta is searched by backtracking: it is divided by
+ *          decrease_factor until f(x+) <= f(x) + armijo * g.(x+ - x) and it is
+ *          multiplied by increase_factor at the beginning of every iteration.
+ */
+public class ExponentiatedGradient extends GradientDescentMethod {
+
+  /* The stopping criteria is || dJ/dx ||_2^2 < gradient_condition */
+  private double gradient_condition = 10E-5;
+  /*
+   * Initial step. If it is 0, the first step changes no logarithm of a split
+   * ratio by more than 1
+   */
+  private double initial_step = 0;
+  private double increase_factor = 2;
+  private double decrease_factor = 2;
+  /* Sufficient decrease factor of the accepted steps */
+  private double armijo = 1E-4;
+  /* Maximum number of decreases of the step in one iteration */
+  private int max_backtracks = 40;
+  /* Share of the uniform split ratios mixed in a starting point on a face */
+  private double interior_mix = 1E-3;
+
+  /* Cost at every iteration of the last descent */
+  private double[] TTT;
+
+  public ExponentiatedGradient() {
+    super();
+  }
+
+  public ExponentiatedGradient(int maxIterations) {
+    super(maxIterations);
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           If the function is not a SimplexGradientDescentOptimizer
+   */
+  @Override
+  public double[] solve(GradientDescentOptimizer function) {
+    if (!(function instanceof SimplexGradientDescentOptimizer))
+      throw new IllegalArgumentException("[ExponentiatedGradient] The "
+          + "function must be a SimplexGradientDescentOptimizer");
+    int[][] blocks = ((SimplexGradientDescentOptimizer) function)
+        .getSimplexBlocks();
+
+    double[] control = function.getStartingPoint();
+    int n = control.length;
+    moveInside(control, blocks);
+    double[] gradient = new double[n];
+    double[] next_control = new double[n];
+    TTT = new double[maxIterations + 1];
+
+    System.out.println(
+        "\n************************************\n" +
+            " Exponentiated gradient launched \n" +
+            "************************************\n");
+
+    FusedGradientDescentOptimizer fused_function = null;
+    if (function instanceof FusedGradientDescentOptimizer)
+      fused_function = (FusedGradientDescentOptimizer) function;
+
+    double step = initial_step;
+    int iteration;
+    double cost = 0;
+    for (iteration = 1; iteration <= maxIterations; iteration++) {
+      /* The state of control has already been simulated */
+      if (fused_function != null)
+        cost = fused_function.objectiveAndGradient(gradient, control);
+      else {
+        cost = function.objective(control);
+        function.gradient(gradient, control);
+      }
+      TTT[iteration - 1] = cost;
+      if (verbose) {
+        System.out.print("Iteration " + iteration + " | Cost: "
+            + cost + " | step: " + step + "\n");
+      }
+
+      double norm = 0;
+      for (int i = 0; i < n; i++)
+        norm += gradient[i] * gradient[i];
+      double spread = maxSpread(gradient, blocks);
+      if (norm < gradient_condition || spread == 0) {
+        System.out.println("Stopping exponentiated gradient because of "
+            + "nearly null gradient");
+        break;
+      }
+
+      /*
+       * The logarithm of a split ratio changes by at most step times the
+       * spread of the gradient on its block
+       */
+      if (step == 0)
+        step = decrease_factor / spread;
+      else
+        step *= increase_factor;
+
+      boolean accepted = false;
+      for (int trial = 0; trial < max_backtracks && !accepted; trial++) {
+        step /= decrease_factor;
+        multiplicativeUpdate(next_control, control, gradient, step, blocks);
+
+        double decrease = 0;
+        for (int i = 0; i < n; i++)
+          decrease += gradient[i] * (next_control[i] - control[i]);
+        accepted = decrease < 0
+            && function.objective(next_control) <= cost + armijo * decrease;
+      }
+      if (!accepted) {
+        System.out.println("Stopping exponentiated gradient because no "
+            + "decrease was found");
+        break;
+      }
+
+      double[] tmp = control;
+      control = next_control;
+      next_control = tmp;
+    }
+
+    if (iteration > maxIterations)
+      cost = function.objective(control);
+    for (int i = Math.min(iteration, maxIterations); i <= maxIterations; i++)
+      TTT[i] = cost;
+
+    return control;
+  }
+
+  /**
+   * @return The largest difference between two components of the gradient
+   *         on a same block
+   */
+  private static double maxSpread(double[] gradient, int[][] blocks) {
+    double result = 0;
+    for (int b = 0; b < blocks.length; b++) {
+      double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+      for (int i = blocks[b][0]; i < blocks[b][0] + blocks[b][1]; i++) {
+        min = Math.min(min, gradient[i]);
+        max = Math.max(max, gradient[i]);
+      }
+      result = Math.max(result, max - min);
+    }
+    return result;
+  }
+
+  /**
+   * @brief result = control * exp(-step * gradient) normalized on every block
+   * @details The exponents are shifted by their maximum on the block so that
+   *          they do not overflow
+   */
+  private static void multiplicativeUpdate(double[] result, double[] control,
+      double[] gradient, double step, int[][] blocks) {
+    for (int b = 0; b < blocks.length; b++) {
+      int begin = blocks[b][0];
+      int end = begin + blocks[b][1];
+
+      double min_gradient = Double.POSITIVE_INFINITY;
+      for (int i = begin; i < end; i++)
+        min_gradient = Math.min(min_gradient, gradient[i]);
+
+      double sum = 0;
+      for (int i = begin; i < end; i++) {
+        result[i] = control[i] * Math.exp(-step * (gradient[i] - min_gradient));
+        sum += result[i];
+      }
+      for (int i = begin; i < end; i++)
+        result[i] /= sum;
+    }
+  }
+
+  /**
+   * @brief Mixes the blocks that have a zero split ratio with the uniform
+   *        split ratios
+   * @details A split ratio at 0 would stay at 0 with multiplicative updates
+   */
+  private void moveInside(double[] control, int[][] blocks) {
+    for (int b = 0; b < blocks.length; b++) {
+      int begin = blocks[b][0];
+      int end = begin + blocks[b][1];
+
+      boolean on_face = false;
+      for (int i = begin; i < end; i++)
+        if (control[i] <= 0)
+          on_face = true;
+      if (!on_face)
+        continue;
+
+      for (int i = begin; i < end; i++)
+        control[i] = (1 - interior_mix) * Math.max(control[i], 0)
+            + interior_mix / blocks[b][1];
+    }
+  }
+
+  /**
+   * @return The cost at every iteration of the last descent
+   */
+  public double[] getTTT() {
+    return TTT;
+  }
+
+  public double getGradient_condition() {
+    return gradient_condition;
+  }
+
+  public void setGradient_condition(double gradient_condition) {
+    this.gradient_condition = gradient_condition;
+  }
+
+  public double getInitial_step() {
+    return initial_step;
+  }
+
+  public void setInitial_step(double initial_step) {
+    assert initial_step >= 0 : "The step must be positive";
+    this.initial_step = initial_step;
+  }
+}
@@ -0,0 +1,204 @@
+package optimization;
+
+import dta_solver.adjointMethod.FusedGradientDescentOptimizer;
+import dta_solver.adjointMethod.GradientDescentOptimizer;
+
+/**
+ * @class FISTA
+ * @brief Accelerated projected gradient descent with adaptive restart
+ * @details At every iteration, x_{k+1} = P(y_k - g(y_k) / L) where P is
+ *          projectControl and y_k = P(x_k + (t_{k-1} - 1) / t_k * (x_k -
+ *          x_{k-1})) is the extrapolated point.
+ *          The Lipschitz constant L is estimated by backtracking: it is
+ *          multiplied by increase_factor until
+ *          f(x_{k+1}) <= f(y_k) + armijo * g.(x_{k+1} - y_k)
+ *          and it is divided by decrease_factor at the beginning of every
+ *          iteration so that it can follow the local curvature. The usual
+ *          quadratic upper bound is not used: the total travel time is only
+ *          piecewise smooth and the bound makes L grow without limit at the
+ *          kinks.
+ *          The momentum is restarted when the cost increases or when the
+ *          gradient and the last step form an acute angle.
+ *          The best point found is returned.
+ */
+public class FISTA extends GradientDescentMethod {
+
+  /* The stopping criteria is || dJ/dx ||_2^2 < gradient_condition */
+  private double gradient_condition = 10E-5;
+  /*
+   * Initial estimation of the Lipschitz constant. If it is 0, it is deduced
+   * from the first gradient
+   */
+  private double initial_lipschitz = 0;
+  private double increase_factor = 2;
+  private double decrease_factor = 2;
+  /* Sufficient decrease factor of the accepted steps */
+  private double armijo = 1E-4;
+  /* Maximum number of increases of L in one iteration */
+  private int max_backtracks = 40;
+
+  /* Cost at every iteration of the last descent */
+  private double[] TTT;
+  /* Number of restarts of the momentum in the last descent */
+  private int nb_restarts;
+
+  public FISTA() {
+    super();
+  }
+
+  public FISTA(int maxIterations) {
+    super(maxIterations);
+  }
+
+  @Override
+  public double[] solve(GradientDescentOptimizer function) {
+    int n = function.getStartingPoint().length;
+    double[] x = function.getStartingPoint();
+    double[] y = x.clone();
+    double[] gradient = new double[n];
+    double[] next_x = new double[n];
+    TTT = new double[maxIterations + 1];
+    nb_restarts = 0;
+
+    System.out.println(
+        "\n******************************\n" +
+            " FISTA descent launched \n" +
+            "******************************\n");
+
+    FusedGradientDescentOptimizer fused_function = null;
+    if (function instanceof FusedGradientDescentOptimizer)
+      fused_function = (FusedGradientDescentOptimizer) function;
+
+    double lipschitz = initial_lipschitz;
+    double momentum = 1;
+    double cost = function.objective(x);
+    double[] best = x.clone();
+    double best_cost = cost;
+
+    int iteration;
+    for (iteration = 1; iteration <= maxIterations; iteration++) {
+      TTT[iteration - 1] = best_cost;
+      if (verbose) {
+        System.out.print("Iteration " + iteration + " | Cost: "
+            + cost + " | L: " + lipschitz + "\n");
+      }
+
+      double y_cost;
+      if (fused_function != null)
+        y_cost = fused_function.objectiveAndGradient(gradient, y);
+      else {
+        y_cost = function.objective(y);
+        function.gradient(gradient, y);
+      }
+
+      if (squaredNorm(gradient) < gradient_condition) {
+        System.out.println("Stopping FISTA because of nearly null gradient");
+        break;
+      }
+
+      /*
+       * By default, the first step moves no coordinate by more than 1/4
+       * before the projection
+       */
+      if (lipschitz == 0) {
+        for (int i = 0; i < n; i++)
+          lipschitz = Math.max(lipschitz, 4 * Math.abs(gradient[i]));
+        lipschitz *= decrease_factor;
+      }
+
+      /* Backtracking on the Lipschitz constant */
+      lipschitz /= decrease_factor;
+      double next_cost = Double.POSITIVE_INFINITY;
+      boolean accepted = false;
+      for (int trial = 0; trial < max_backtracks && !accepted; trial++) {
+        for (int i = 0; i < n; i++)
+          next_x[i] = y[i] - gradient[i] / lipschitz;
+        function.projectControl(next_x);
+
+        double decrease = 0;
+        for (int i = 0; i < n; i++)
+          decrease += gradient[i] * (next_x[i] - y[i]);
+        if (decrease < 0) {
+          next_cost = function.objective(next_x);
+          accepted = next_cost <= y_cost + armijo * decrease;
+        }
+        if (!accepted)
+          lipschitz *= increase_factor;
+      }
+      if (!accepted) {
+        System.out.println("Stopping FISTA because no step was accepted");
+        break;
+      }
+
+      /* Adaptive restart */
+      double angle = 0;
+      for (int i = 0; i < n; i++)
+        angle += gradient[i] * (next_x[i] - x[i]);
+      if (next_cost > cost || angle > 0) {
+        nb_restarts++;
+        momentum = 1;
+      }
+
+      double next_momentum = (1 + Math.sqrt(1 + 4 * momentum * momentum)) / 2;
+      double factor = (momentum - 1) / next_momentum;
+      for (int i = 0; i < n; i++)
+        y[i] = next_x[i] + factor * (next_x[i] - x[i]);
+      if (factor != 0)
+        function.projectControl(y);
+
+      double[] tmp = x;
+      x = next_x;
+      next_x = tmp;
+      cost = next_cost;
+      momentum = next_momentum;
+
+      if (cost < best_cost) {
+        best_cost = cost;
+        System.arraycopy(x, 0, best, 0, n);
+      }
+    }
+
+    for (int i = Math.min(iteration, maxIterations); i <= maxIterations; i++)
+      TTT[i] = best_cost;
+
+    return best;
+  }
+
+  private static double squaredNorm(double[] a) {
+    double result = 0;
+    for (int i = 0; i < a.length; i++)
+      result += a[i] * a[i];
+    return result;
+  }
+
+  /**
+   * @return The best cost at every iteration of the last descent
+   */
+  public double[] getTTT() {
+    return TTT;
+  }
+
+  /**
+   * @return The number of restarts of the momentum in the last descent
+   */
+  public int getNb_restarts() {
+    return nb_restarts;
+  }
+
+  public double getGradient_condition() {
+    return gradient_condition;
+  }
+
+  public void setGradient_condition(double gradient_condition) {
+    this.gradient_condition = gradient_condition;
+  }
+
+  public double getInitial_lipschitz() {
+    return initial_lipschitz;
+  }
+
+  public void setInitial_lipschitz(double initial_lipschitz) {
+    assert initial_lipschitz >= 0 : "The Lipschitz constant must be positive";
+    this.initial_lipschitz = initial_lipschitz;
+  }
+}
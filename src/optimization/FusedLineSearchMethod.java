@@ -0,0 +1,37 @@
+package optimization;
+
+import dta_solver.adjointMethod.GradientDescentOptimizer;
+
+/**
+ * @class FusedLineSearchMethod
+ * @brief Line search that gives back the cost and the gradient at the
+ *        accepted point
+ * @details A descent using it does not evaluate the function again at the
+ *          beginning of the next iteration.
+ */
+public interface FusedLineSearchMethod extends LineSearchMethod {
+
+  /**
+   * @class Result
+   * @brief Accepted point of a line search with its cost and gradient
+   */
+  public static class Result {
+    /* Accepted point. It is a copy of the initial point if no decrease */
+    public double[] point;
+    /* Cost at point */
+    public double value;
+    /* Gradient at point */
+    public double[] gradient;
+    /* Accepted step. It is 0 if no decrease has been found */
+    public double step;
+  }
+
+  /**
+   * @brief Line search along -gradient
+   * @param initial_value
+   *          The evaluation of the cost function at initial_point
+   * @return The accepted point with its cost and its gradient
+   */
+  public Result search(double[] initial_point, double initial_value,
+      double[] gradient, GradientDescentOptimizer function);
+}
@@ -12,6 +12,7 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
+import dta_solver.adjointMethod.FusedGradientDescentOptimizer;
 import dta_solver.adjointMethod.GradientDescentOptimizer;
 
 public class GradientDescent extends GradientDescentMethod {
@@ -42,8 +43,26 @@ public class GradientDescent extends GradientDescentMethod {
         "\n***************************\n" +
             " Gradient descent launched \n" +
             "***************************\n");
+    /* The cost and the gradient are computed together when possible */
+    FusedGradientDescentOptimizer fused_function = null;
+    if (function instanceof FusedGradientDescentOptimizer)
+      fused_function = (FusedGradientDescentOptimizer) function;
+
+    /* Some line searches give the cost and the gradient at their point */
+    FusedLineSearchMethod fused_search = null;
+    if (lineSearch instanceof FusedLineSearchMethod)
+      fused_search = (FusedLineSearchMethod) lineSearch;
+    FusedLineSearchMethod.Result last_search = null;
+
     for (int iteration = 1; iteration <= maxIterations; iteration++) {
-      double cost = function.objective(control);
+      double cost;
+      if (last_search != null) {
+        cost = last_search.value;
+        gradient = last_search.gradient;
+      } else if (fused_function != null)
+        cost = fused_function.objectiveAndGradient(gradient, control);
+      else
+        cost = function.objective(control);
       TTT[iteration - 1] = cost;
 
       if (verbose) {
@@ -53,8 +72,19 @@ public class GradientDescent extends GradientDescentMethod {
 
       /* Line search */
       /* Update x = x * t * delta_x; and J(x) */
-      function.gradient(gradient, control);
-      control = lineSearch.lineSearch(control, gradient, function);
+      if (fused_function == null && last_search == null)
+        function.gradient(gradient, control);
+      if (fused_search != null) {
+        last_search = fused_search.search(control, cost, gradient, function);
+        /* The same search would fail again from the same point */
+        if (last_search.step == 0) {
+          System.out.println("Stopping gradient descent because the line "
+              + "search found no decrease");
+          break;
+        }
+        control = last_search.point;
+      } else
+        control = lineSearch.lineSearch(control, cost, gradient, function);
 
       /* Stopping condition */
       if (stoppingTest(gradient)) {
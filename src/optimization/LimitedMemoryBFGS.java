@@ -0,0 +1,166 @@
+package optimization;
+
+import java.util.LinkedList;
+
+import dta_solver.adjointMethod.GradientDescentOptimizer;
+
+/**
+ * @class LimitedMemoryBFGS
+ * @brief Quasi-Newton steps shared by the L-BFGS descents
+ * @details The inverse Hessian is approximated from the last history_size
+ *          pairs (s, y) = (x_{k+1} - x_k, g_{k+1} - g_k) and applied by the
+ *          two-loop recursion. The step is searched on the projected arc
+ *          x(t) = P(x + t * d), where P is the projectControl of the
+ *          function, with a backtracking on the Armijo condition
+ *          f(x(t)) <= f(x) + armijo * g.(x(t) - x).
+ */
+public class LimitedMemoryBFGS {
+
+  /* Number of pairs (s, y) kept to approximate the inverse Hessian */
+  private int history_size = 8;
+  /* Sufficient decrease and backtracking factors of the line search */
+  private double armijo = 1E-4;
+  private double beta = 0.5;
+  private int max_backtracks = 30;
+
+  /* History of the pairs (s, y) and of rho = 1 / (y.s), the last is first */
+  private LinkedList<double[]> s_history = new LinkedList<double[]>();
+  private LinkedList<double[]> y_history = new LinkedList<double[]>();
+  private LinkedList<Double> rho_history = new LinkedList<Double>();
+
+  public LimitedMemoryBFGS() {
+    super();
+  }
+
+  public LimitedMemoryBFGS(int history_size) {
+    super();
+    setHistory_size(history_size);
+  }
+
+  /**
+   * @return The direction -H * gradient given by the two-loop recursion.
+   *         Without history, it is -gradient with a length of at most 1
+   */
+  public double[] direction(double[] gradient) {
+    int n = gradient.length;
+    double[] q = new double[n];
+    for (int i = 0; i < n; i++)
+      q[i] = -gradient[i];
+
+    int m = s_history.size();
+    double[] alphas = new double[m];
+    for (int j = 0; j < m; j++) {
+      alphas[j] = rho_history.get(j) * scalarProduct(s_history.get(j), q);
+      axpy(-alphas[j], y_history.get(j), q);
+    }
+
+    /* Initial Hessian gamma * I with gamma = s.y / y.y of the last pair */
+    double gamma;
+    if (m > 0) {
+      double[] y = y_history.getFirst();
+      gamma = 1 / (rho_history.getFirst() * squaredNorm(y));
+    } else {
+      gamma = 1 / Math.max(1, Math.sqrt(squaredNorm(gradient)));
+    }
+    for (int i = 0; i < n; i++)
+      q[i] *= gamma;
+
+    for (int j = m - 1; j >= 0; j--) {
+      double b = rho_history.get(j) * scalarProduct(y_history.get(j), q);
+      axpy(alphas[j] - b, s_history.get(j), q);
+    }
+    return q;
+  }
+
+  /**
+   * @brief Backtracking on the projected arc P(x + t * direction)
+   * @return The first point that satisfies the Armijo condition or null if
+   *         there is none after max_backtracks trials
+   */
+  public double[] projectedSearch(double[] control, double cost,
+      double[] gradient, double[] direction,
+      GradientDescentOptimizer function) {
+    double t = 1;
+    double[] point = new double[control.length];
+    for (int trial = 0; trial < max_backtracks; trial++, t *= beta) {
+      for (int i = 0; i < point.length; i++)
+        point[i] = control[i] + t * direction[i];
+      function.projectControl(point);
+
+      double decrease = 0;
+      for (int i = 0; i < point.length; i++)
+        decrease += gradient[i] * (point[i] - control[i]);
+      if (decrease >= 0)
+        continue;
+
+      if (function.objective(point) <= cost + armijo * decrease)
+        return point;
+    }
+    return null;
+  }
+
+  /**
+   * @brief Adds the pair (s, y) if it satisfies the curvature condition
+   * @details A pair with a negligible s.y compared to y.y would give a
+   *          meaningless scaling of the initial Hessian and is also dropped
+   */
+  public void addPair(double[] control, double[] next_control,
+      double[] gradient, double[] next_gradient) {
+    int n = control.length;
+    double[] s = new double[n];
+    double[] y = new double[n];
+    for (int i = 0; i < n; i++) {
+      s[i] = next_control[i] - control[i];
+      y[i] = next_gradient[i] - gradient[i];
+    }
+    double sy = scalarProduct(s, y);
+    double yy = squaredNorm(y);
+    if (sy <= 1E-10 * Math.sqrt(squaredNorm(s) * yy) || sy <= 1E-10 * yy)
+      return;
+
+    s_history.addFirst(s);
+    y_history.addFirst(y);
+    rho_history.addFirst(1 / sy);
+    if (s_history.size() > history_size) {
+      s_history.removeLast();
+      y_history.removeLast();
+      rho_history.removeLast();
+    }
+  }
+
+  public void clearHistory() {
+    s_history.clear();
+    y_history.clear();
+    rho_history.clear();
+  }
+
+  public boolean isHistoryEmpty() {
+    return s_history.isEmpty();
+  }
+
+  public static double scalarProduct(double[] a, double[] b) {
+    double result = 0;
+    for (int i = 0; i < a.length; i++)
+      result += a[i] * b[i];
+    return result;
+  }
+
+  public static double squaredNorm(double[] a) {
+    return scalarProduct(a, a);
+  }
+
+  /* y += a * x */
+  private static void axpy(double a, double[] x, double[] y) {
+    for (int i = 0; i < x.length; i++)
+      y[i] += a * x[i];
+  }
+
+  public int getHistory_size() {
+    return history_size;
+  }
+
+  public void setHistory_size(int history_size) {
+    assert history_size > 0 : "The history must keep at least one pair";
+    this.history_size = history_size;
+  }
+}
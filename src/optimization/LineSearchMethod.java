@@ -15,4 +15,13 @@ public interface LineSearchMethod {
    */
   public double[] lineSearch(double[] initial_point, double[] init_gradient,
       GradientDescentOptimizer function);
+
+  /**
+   * @brief Line search algorithm when the cost at the initial point is
+   *        already known
+   * @param initial_value
+   *          The evaluation of the cost function at initial_point
+   */
+  public double[] lineSearch(double[] initial_point, double initial_value,
+      double[] init_gradient, GradientDescentOptimizer function);
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package optimization;
+
+import dataStructures.WorkerPool;
+import dta_solver.adjointMethod.BatchGradientDescentOptimizer;
+import dta_solver.adjointMethod.GradientDescentOptimizer;
+
+/**
+ * @class ParallelBackTrackingLineSearch
+ * @brief Backtracking line search that evaluates several steps at once
+ * @details The steps t, beta * t, beta^2 * t... of BackTrackingLineSearch are
+ *          evaluated by batches of batch_width with
+ *          BatchGradientDescentOptimizer.objectives. The largest step of a
+ *          batch that satisfies the Armijo condition is returned, so the
+ *          result is the same as the one of BackTrackingLineSearch.
+ *          When the function cannot evaluate batches or when the batch width
+ *          is 1, the sequential BackTrackingLineSearch is used.
+ */
+public class ParallelBackTrackingLineSearch implements LineSearchMethod {
+
+  /* Alpha must be in [0, 0.5] (typically between 0.1 and 0.3) */
+  private double alpha;
+  /* Beta must be in [0,1] (0.1 for crude search, 0.8 for less crude search) */
+  private double beta;
+  /* The search stops when t is smaller than min_step times the first step */
+  private double min_step = 1E-10;
+  /*
+   * Number of steps evaluated together. If it is 0, it is the number of
+   * threads of the WorkerPool
+   */
+  private int batch_width = 0;
+
+  private BackTrackingLineSearch sequential_search;
+
+  public ParallelBackTrackingLineSearch(double alpha, double beta) {
+    super();
+    this.alpha = alpha;
+    this.beta = beta;
+    sequential_search = new BackTrackingLineSearch(alpha, beta);
+  }
+
+  public ParallelBackTrackingLineSearch() {
+    this(1E-4, 0.90);
+  }
+
+  @Override
+  public double[] lineSearch(double[] initial_point, double[] gradient,
+      GradientDescentOptimizer function) {
+    return lineSearch(initial_point, function.objective(initial_point),
+        gradient, function);
+  }
+
+  @Override
+  public double[] lineSearch(double[] initial_point, double initial_value,
+      double[] gradient, GradientDescentOptimizer function) {
+
+    int width = batch_width;
+    if (width == 0)
+      width = WorkerPool.getNb_threads();
+    if (width <= 1 || !(function instanceof BatchGradientDescentOptimizer))
+      return sequential_search.lineSearch(initial_point, initial_value,
+          gradient, function);
+    BatchGradientDescentOptimizer batch_function =
+        (BatchGradientDescentOptimizer) function;
+
+    int n = initial_point.length;
+    double[][] candidates = new double[width][n];
+    double[] decreases = new double[width];
+    double first_step = BackTrackingLineSearch.firstStep(gradient);
+    double t = first_step;
+    while (t > min_step * first_step) {
+      /* Candidates of the batch that are descent steps */
+      int nb_candidates = 0;
+      for (int b = 0; b < width && t > min_step * first_step; b++, t *= beta) {
+        double[] candidate = candidates[nb_candidates];
+        for (int i = 0; i < n; i++)
+          candidate[i] = initial_point[i] - t * gradient[i];
+        function.projectControl(candidate);
+
+        double decrease = 0;
+        for (int i = 0; i < n; i++)
+          decrease += gradient[i] * (candidate[i] - initial_point[i]);
+        /* A projected step that is not a descent direction is not evaluated */
+        if (decrease < 0)
+          decreases[nb_candidates++] = decrease;
+      }
+      if (nb_candidates == 0)
+        continue;
+
+      double[][] batch = candidates;
+      if (nb_candidates < width) {
+        batch = new double[nb_candidates][];
+        System.arraycopy(candidates, 0, batch, 0, nb_candidates);
+      }
+      double[] values = batch_function.objectives(batch);
+
+      /* The candidates are ordered by decreasing step */
+      for (int c = 0; c < nb_candidates; c++)
+        if (values[c] <= initial_value + alpha * decreases[c])
+          return batch[c];
+    }
+
+    /* No decrease has been found */
+    return initial_point.clone();
+  }
+
+  public int getBatch_width() {
+    return batch_width;
+  }
+
+  /**
+   * @param batch_width
+   *          Number of steps evaluated together. 0 uses the number of threads
+   *          of the WorkerPool and 1 gives the sequential search
+   */
+  public void setBatch_width(int batch_width) {
+    assert batch_width >= 0 : "The batch width must be positive";
+    this.batch_width = batch_width;
+  }
+}
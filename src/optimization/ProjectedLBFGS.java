@@ -0,0 +1,259 @@
+package optimization;
+
+import dta_solver.adjointMethod.FusedGradientDescentOptimizer;
+import dta_solver.adjointMethod.GradientDescentOptimizer;
+import dta_solver.adjointMethod.SimplexGradientDescentOptimizer;
+
+/**
+ * @class ProjectedLBFGS
+ * @brief Limited-memory BFGS descent for a control constrained by
+ *        projectControl
+ * @details The direction and the search on the projected arc are the ones
+ *          of LimitedMemoryBFGS.
+ *          If the line search is set to a WolfeLineSearch, it is used
+ *          instead along the segment x + t * d and the cost and the gradient
+ *          it computed at the accepted point are reused. The components of d
+ *          that leave the simplices at a split ratio at 0 are removed first,
+ *          otherwise the segment would be reduced to x. The other line
+ *          searches only search along -g and cannot be used.
+ *          When no decrease is found along the quasi-Newton direction, the
+ *          history is cleared and the search is done again along -g.
+ */
+public class ProjectedLBFGS extends GradientDescentMethod {
+
+  /* Pairs (s, y) and search on the projected arc */
+  private LimitedMemoryBFGS lbfgs = new LimitedMemoryBFGS();
+  /* The stopping criteria is || dJ/dx ||_2^2 < gradient_condition */
+  private double gradient_condition = 10E-5;
+  /*
+   * Split ratios below it are on a bound for the Wolfe line search. The
+   * trial points at the largest step can leave rounding errors there
+   */
+  private static final double ACTIVE_TOLERANCE = 1E-12;
+
+  /* Cost at every iteration of the last descent */
+  private double[] TTT;
+
+  /* Result of the last search if it has been done by a WolfeLineSearch */
+  private WolfeLineSearch.Result wolfe_result;
+  /*
+   * Number of times no decrease was found along the quasi-Newton direction
+   * in the last descent
+   */
+  private int nb_resets;
+
+  public ProjectedLBFGS() {
+    super();
+  }
+
+  public ProjectedLBFGS(int maxIterations) {
+    super(maxIterations);
+  }
+
+  public ProjectedLBFGS(int maxIterations, int history_size) {
+    super(maxIterations);
+    setHistory_size(history_size);
+  }
+
+  @Override
+  public double[] solve(GradientDescentOptimizer function) {
+    double[] control = function.getStartingPoint();
+    double[] gradient = new double[control.length];
+    TTT = new double[maxIterations + 1];
+    nb_resets = 0;
+    lbfgs.clearHistory();
+
+    System.out.println(
+        "\n******************************\n" +
+            " Projected L-BFGS launched \n" +
+            "******************************\n");
+
+    double cost;
+    if (function instanceof FusedGradientDescentOptimizer)
+      cost = ((FusedGradientDescentOptimizer) function).objectiveAndGradient(
+          gradient, control);
+    else {
+      cost = function.objective(control);
+      function.gradient(gradient, control);
+    }
+
+    int iteration;
+    for (iteration = 1; iteration <= maxIterations; iteration++) {
+      TTT[iteration - 1] = cost;
+      if (verbose) {
+        System.out.print("Iteration " + iteration + " | Cost: "
+            + cost + "\n");
+      }
+
+      if (LimitedMemoryBFGS.squaredNorm(gradient) < gradient_condition) {
+        System.out.println("Stopping L-BFGS because of nearly null gradient");
+        break;
+      }
+
+      double[] direction = direction(gradient);
+      double[] next_control = search(control, cost, gradient, direction,
+          function);
+      if (next_control == null && !lbfgs.isHistoryEmpty()) {
+        nb_resets++;
+        lbfgs.clearHistory();
+        direction = direction(gradient);
+        next_control = search(control, cost, gradient, direction, function);
+      }
+      if (next_control == null) {
+        System.out.println("Stopping L-BFGS because no decrease was found");
+        break;
+      }
+
+      double next_cost;
+      double[] next_gradient;
+      if (wolfe_result != null) {
+        next_cost = wolfe_result.value;
+        next_gradient = wolfe_result.gradient;
+      } else {
+        /* The state of next_control has just been simulated */
+        next_cost = function.objective(next_control);
+        next_gradient = new double[gradient.length];
+        function.gradient(next_gradient, next_control);
+      }
+
+      lbfgs.addPair(control, next_control, gradient, next_gradient);
+      control = next_control;
+      gradient = next_gradient;
+      cost = next_cost;
+    }
+
+    for (int i = Math.min(iteration, maxIterations); i <= maxIterations; i++)
+      TTT[i] = cost;
+
+    return control;
+  }
+
+  /**
+   * @param lineSearch
+   *          A WolfeLineSearch, or null for the backtracking on the projected
+   *          arc
+   * @throws IllegalArgumentException
+   *           For the other line searches, that cannot follow the
+   *           quasi-Newton direction
+   */
+  @Override
+  public void setLineSearch(LineSearchMethod lineSearch) {
+    if (lineSearch != null && !(lineSearch instanceof WolfeLineSearch))
+      throw new IllegalArgumentException("[ProjectedLBFGS] Unsupported line "
+          + "search " + lineSearch.getClass().getSimpleName()
+          + ": only a WolfeLineSearch or the projected backtracking");
+    this.lineSearch = lineSearch;
+  }
+
+  /**
+   * @return The direction -H * gradient given by the two-loop recursion. The
+   *         history is cleared if it does not give a descent direction
+   */
+  private double[] direction(double[] gradient) {
+    double[] q = lbfgs.direction(gradient);
+    if (!lbfgs.isHistoryEmpty()
+        && LimitedMemoryBFGS.scalarProduct(q, gradient) >= 0) {
+      lbfgs.clearHistory();
+      return lbfgs.direction(gradient);
+    }
+    return q;
+  }
+
+  /**
+   * @brief Searches the next point along the direction
+   * @details If the line search is a WolfeLineSearch, it is used along the
+   *          segment x + t * direction and it gives the cost and the gradient
+   *          at the returned point in wolfe_result. Otherwise the projected
+   *          arc is searched by backtracking
+   * @return The next point or null if no decrease has been found
+   */
+  private double[] search(double[] control, double cost, double[] gradient,
+      double[] direction, GradientDescentOptimizer function) {
+    wolfe_result = null;
+    if (lineSearch == null)
+      return lbfgs.projectedSearch(control, cost, gradient, direction,
+          function);
+    if (!(lineSearch instanceof WolfeLineSearch))
+      throw new IllegalStateException("[ProjectedLBFGS] Unsupported line "
+          + "search " + lineSearch.getClass().getSimpleName());
+
+    if (function instanceof SimplexGradientDescentOptimizer)
+      removeActiveBounds(direction, control,
+          ((SimplexGradientDescentOptimizer) function).getSimplexBlocks());
+
+    wolfe_result = ((WolfeLineSearch) lineSearch).search(control, cost,
+        gradient, direction, function);
+    if (wolfe_result.step == 0)
+      return null;
+    return wolfe_result.point;
+  }
+
+  /**
+   * @brief Makes the direction feasible at control on every simplex block
+   * @details The components that would make a split ratio at 0 (up to
+   *          ACTIVE_TOLERANCE) negative are set to 0 and the other components
+   *          of the block are shifted so that their sum stays 0, until no
+   *          other split ratio at 0 gets a negative component
+   */
+  private static void removeActiveBounds(double[] direction,
+      double[] control, int[][] blocks) {
+    for (int b = 0; b < blocks.length; b++) {
+      int begin = blocks[b][0];
+      int end = begin + blocks[b][1];
+      boolean[] fixed = new boolean[blocks[b][1]];
+      int nb_free = blocks[b][1];
+
+      while (nb_free > 0) {
+        boolean changed = false;
+        for (int i = begin; i < end; i++)
+          if (!fixed[i - begin] && control[i] <= ACTIVE_TOLERANCE
+              && direction[i] < 0) {
+            fixed[i - begin] = true;
+            direction[i] = 0;
+            nb_free--;
+            changed = true;
+          }
+        if (!changed || nb_free == 0)
+          break;
+
+        double sum = 0;
+        for (int i = begin; i < end; i++)
+          sum += direction[i];
+        for (int i = begin; i < end; i++)
+          if (!fixed[i - begin])
+            direction[i] -= sum / nb_free;
+      }
+    }
+  }
+
+  /**
+   * @return The cost at every iteration of the last descent
+   */
+  public double[] getTTT() {
+    return TTT;
+  }
+
+  /**
+   * @return The number of times the history was cleared in the last descent
+   *         because no decrease was found along the quasi-Newton direction
+   */
+  public int getNb_resets() {
+    return nb_resets;
+  }
+
+  public int getHistory_size() {
+    return lbfgs.getHistory_size();
+  }
+
+  public void setHistory_size(int history_size) {
+    lbfgs.setHistory_size(history_size);
+  }
+
+  public double getGradient_condition() {
+    return gradient_condition;
+  }
+
+  public void setGradient_condition(double gradient_condition) {
+    this.gradient_condition = gradient_condition;
+  }
+}
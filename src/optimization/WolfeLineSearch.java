@@ -0,0 +1,265 @@
+package optimization;
+
+import dta_solver.adjointMethod.FusedGradientDescentOptimizer;
+import dta_solver.adjointMethod.GradientDescentOptimizer;
+
+/**
+ * @class WolfeLineSearch
+ * @brief Line search for a step satisfying the strong Wolfe conditions
+ * @details The step t along the direction d is accepted when
+ *          phi(t) <= phi(0) + c1 * t * phi'(0) and |phi'(t)| <= c2 * |phi'(0)|
+ *          where phi(t) = f(x + t * d). The objective and the gradient are
+ *          computed together at every trial point so that phi'(t) is exact
+ *          and the gradient at the accepted point is given back to the
+ *          descent.
+ *          The steps are bracketed then the bracket is reduced with the
+ *          minimizer of the cubic interpolating phi and phi' at its ends
+ *          (Nocedal and Wright, algorithms 3.5 and 3.6).
+ *          The step is bounded by the first point where a coordinate of
+ *          x + t * d reaches 0 or 1, so that the trial points are feasible
+ *          without projection. At this bound, the sufficient decrease
+ *          condition alone is required.
+ */
+public class WolfeLineSearch implements FusedLineSearchMethod {
+
+  /**
+   * @class Result
+   * @brief Accepted point of a Wolfe line search with its cost and gradient
+   */
+  public static class Result extends FusedLineSearchMethod.Result {
+    /* Number of evaluations of the cost and of the gradient */
+    public int nb_trials;
+    /* True if the step satisfies the strong Wolfe conditions */
+    public boolean wolfe;
+  }
+
+  /* Sufficient decrease factor */
+  private double c1 = 1E-4;
+  /* Curvature factor. c1 < c2 < 1 */
+  private double c2 = 0.9;
+  /* Maximum number of evaluations in one search */
+  private int max_trials = 20;
+  /* Factor of the increase of the step before a bracket is found */
+  private double expansion = 2;
+
+  /* Evaluation at a trial point */
+  private static class Trial {
+    double step;
+    double[] point;
+    double value;
+    double[] gradient;
+    /* phi'(step) */
+    double slope;
+  }
+
+  public WolfeLineSearch() {
+    super();
+  }
+
+  public WolfeLineSearch(double c1, double c2) {
+    super();
+    assert 0 < c1 && c1 < c2 && c2 < 1 : "We must have 0 < c1 < c2 < 1";
+    this.c1 = c1;
+    this.c2 = c2;
+  }
+
+  @Override
+  public double[] lineSearch(double[] initial_point, double[] gradient,
+      GradientDescentOptimizer function) {
+    return lineSearch(initial_point, function.objective(initial_point),
+        gradient, function);
+  }
+
+  @Override
+  public double[] lineSearch(double[] initial_point, double initial_value,
+      double[] gradient, GradientDescentOptimizer function) {
+    return search(initial_point, initial_value, gradient, function).point;
+  }
+
+  /**
+   * @brief Line search along -gradient
+   */
+  @Override
+  public Result search(double[] initial_point, double initial_value,
+      double[] gradient, GradientDescentOptimizer function) {
+    double[] direction = new double[gradient.length];
+    for (int i = 0; i < gradient.length; i++)
+      direction[i] = -gradient[i];
+    return search(initial_point, initial_value, gradient, direction,
+        function);
+  }
+
+  /**
+   * @brief Line search along a descent direction
+   * @param direction
+   *          The direction of search. It must keep the sum of the split
+   *          ratios of every block constant and must not decrease the split
+   *          ratios at 0, otherwise the largest step is 0
+   */
+  public Result search(double[] initial_point, double initial_value,
+      double[] gradient, double[] direction,
+      GradientDescentOptimizer function) {
+
+    Trial initial = new Trial();
+    initial.step = 0;
+    initial.point = initial_point;
+    initial.value = initial_value;
+    initial.gradient = gradient;
+    initial.slope = scalarProduct(gradient, direction);
+
+    Result result = new Result();
+    if (initial.slope >= 0)
+      return result(result, initial, false);
+
+    double max_step = maxStep(initial_point, direction);
+    if (max_step <= 0)
+      return result(result, initial, false);
+
+    /* Bracketing phase */
+    Trial previous = initial;
+    double t = Math.min(1, max_step);
+    while (result.nb_trials < max_trials) {
+      Trial trial = evaluate(t, initial_point, direction, function);
+      result.nb_trials++;
+
+      if (!sufficientDecrease(trial, initial)
+          || (previous != initial && trial.value >= previous.value))
+        return zoom(result, initial, previous, trial, initial_point,
+            direction, function);
+      if (curvature(trial, initial))
+        return result(result, trial, true);
+      if (trial.slope >= 0)
+        return zoom(result, initial, trial, previous, initial_point,
+            direction, function);
+      if (t >= max_step)
+        return result(result, trial, false);
+
+      previous = trial;
+      t = Math.min(expansion * t, max_step);
+    }
+    return result(result, previous, false);
+  }
+
+  /**
+   * @brief Reduces the bracket between low and high
+   * @details low is the trial with the lowest cost that satisfies the
+   *          sufficient decrease and phi'(low) * (high - low) < 0
+   */
+  private Result zoom(Result result, Trial initial, Trial low, Trial high,
+      double[] initial_point, double[] direction,
+      GradientDescentOptimizer function) {
+    while (result.nb_trials < max_trials) {
+      double t = cubicMinimizer(low, high);
+      Trial trial = evaluate(t, initial_point, direction, function);
+      result.nb_trials++;
+
+      if (!sufficientDecrease(trial, initial) || trial.value >= low.value) {
+        high = trial;
+      } else {
+        if (curvature(trial, initial))
+          return result(result, trial, true);
+        if (trial.slope * (high.step - low.step) >= 0)
+          high = low;
+        low = trial;
+      }
+    }
+    return result(result, low, false);
+  }
+
+  /**
+   * @return The minimizer of the cubic interpolating the values and the
+   *         slopes at a and b, kept at least 10% of the interval away from a
+   *         and b. The middle of the interval is used when the cubic has no
+   *         minimizer
+   */
+  private static double cubicMinimizer(Trial a, Trial b) {
+    double d1 = a.slope + b.slope - 3 * (a.value - b.value)
+        / (a.step - b.step);
+    double discriminant = d1 * d1 - a.slope * b.slope;
+    double t = (a.step + b.step) / 2;
+    if (discriminant >= 0) {
+      double d2 = Math.signum(b.step - a.step) * Math.sqrt(discriminant);
+      double candidate = b.step - (b.step - a.step)
+          * (b.slope + d2 - d1) / (b.slope - a.slope + 2 * d2);
+      if (!Double.isNaN(candidate) && !Double.isInfinite(candidate))
+        t = candidate;
+    }
+
+    double lower = Math.min(a.step, b.step);
+    double upper = Math.max(a.step, b.step);
+    double margin = 0.1 * (upper - lower);
+    return Math.min(Math.max(t, lower + margin), upper - margin);
+  }
+
+  private boolean sufficientDecrease(Trial trial, Trial initial) {
+    return trial.value <= initial.value + c1 * trial.step * initial.slope;
+  }
+
+  private boolean curvature(Trial trial, Trial initial) {
+    return Math.abs(trial.slope) <= -c2 * initial.slope;
+  }
+
+  private Trial evaluate(double t, double[] initial_point, double[] direction,
+      GradientDescentOptimizer function) {
+    Trial trial = new Trial();
+    trial.step = t;
+    trial.point = new double[initial_point.length];
+    for (int i = 0; i < initial_point.length; i++)
+      trial.point[i] = Math.max(0, initial_point[i] + t * direction[i]);
+    trial.gradient = new double[initial_point.length];
+    if (function instanceof FusedGradientDescentOptimizer)
+      trial.value = ((FusedGradientDescentOptimizer) function)
+          .objectiveAndGradient(trial.gradient, trial.point);
+    else {
+      trial.value = function.objective(trial.point);
+      function.gradient(trial.gradient, trial.point);
+    }
+    trial.slope = scalarProduct(trial.gradient, direction);
+    return trial;
+  }
+
+  /**
+   * @brief Fills in the result with the trial. The initial point is copied
+   *        if there is no decrease
+   */
+  private static Result result(Result result, Trial trial, boolean wolfe) {
+    result.point = trial.point;
+    if (trial.step == 0)
+      result.point = trial.point.clone();
+    result.value = trial.value;
+    result.gradient = trial.gradient;
+    result.step = trial.step;
+    result.wolfe = wolfe;
+    return result;
+  }
+
+  /**
+   * @return The first t of the half line x + t * d where a coordinate
+   *         reaches 0 or 1
+   */
+  private static double maxStep(double[] point, double[] direction) {
+    double t = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < point.length; i++)
+      if (direction[i] < 0)
+        t = Math.min(t, point[i] / -direction[i]);
+      else if (direction[i] > 0)
+        t = Math.min(t, (1 - point[i]) / direction[i]);
+    return t;
+  }
+
+  private static double scalarProduct(double[] a, double[] b) {
+    double result = 0;
+    for (int i = 0; i < a.length; i++)
+      result += a[i] * b[i];
+    return result;
+  }
+
+  public int getMax_trials() {
+    return max_trials;
+  }
+
+  public void setMax_trials(int max_trials) {
+    assert max_trials > 0 : "At least one trial must be allowed";
+    this.max_trials = max_trials;
+  }
+}